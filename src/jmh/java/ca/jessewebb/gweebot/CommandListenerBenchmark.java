@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pircbotx.Channel;
+import org.pircbotx.Configuration;
+import org.pircbotx.PircBotX;
+import org.pircbotx.User;
+import org.pircbotx.hooks.events.MessageEvent;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandListenerBenchmark {
+    private static final String CHANNEL = "#benchmark";
+    private static final String USER = "benchmarker";
+
+    private CommandListener throttledListener;
+    private CommandListener unthrottledListener;
+    private OutboundDispatcher unthrottledDispatcher;
+    private MessageEvent<PircBotX> chatEvent;
+    private MessageEvent<PircBotX> commandEvent;
+    private MessageEvent<PircBotX> unknownCommandEvent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        PircBotX bot = new PircBotX(new Configuration.Builder<PircBotX>()
+                .setName(USER)
+                .setServerHostname("localhost")
+                .setListenerManager(new BoundedListenerManager(1, 1, OverflowPolicy.BLOCK))
+                .buildConfiguration());
+        Channel channel = bot.getUserChannelDao().getChannel(CHANNEL);
+        User user = bot.getUserChannelDao().getUser(USER);
+        chatEvent = new MessageEvent<PircBotX>(bot, channel, user, "just some ordinary chat in the channel");
+        commandEvent = new MessageEvent<PircBotX>(bot, channel, user, "!version please");
+        unknownCommandEvent = new MessageEvent<PircBotX>(bot, channel, user, "!nothing here");
+
+        throttledListener = new CommandListener(buildDispatcher(), new BotMetrics());
+
+        CommandRegistry registry = new CommandRegistry();
+        registry.register(new TimeCommand());
+        registry.register(new VersionCommand());
+        CommandThrottler unthrottled = new CommandThrottler(new CommandThrottlerConfiguration(), new SystemClock());
+        unthrottledDispatcher = buildDispatcher();
+        unthrottledListener = new CommandListener(registry, unthrottled, unthrottledDispatcher, new BotMetrics());
+    }
+
+    @Benchmark
+    public void nonCommandMessage() throws Exception {
+        throttledListener.onMessage(chatEvent);
+    }
+
+    @Benchmark
+    public void unrecognizedCommandMessage() throws Exception {
+        throttledListener.onMessage(unknownCommandEvent);
+    }
+
+    @Benchmark
+    public void throttledCommandMessage() throws Exception {
+        throttledListener.onMessage(commandEvent);
+    }
+
+    @Benchmark
+    public boolean answeredCommandMessage() throws Exception {
+        unthrottledListener.onMessage(commandEvent);
+        return unthrottledDispatcher.dispatchNext();
+    }
+
+    private static OutboundDispatcher buildDispatcher() {
+        OutboundDispatcherConfiguration configuration = new OutboundDispatcherConfiguration();
+        configuration.setPeriodMillis(0l);
+        OutboundSender sender = new OutboundSender() {
+            @Override
+            public void send(String channel, CommandResponse response) {
+            }
+        };
+        return new OutboundDispatcher(sender, new SystemClock(), configuration);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommandResponseBenchmark {
+    private TimeCommand timeCommand;
+    private VersionCommand versionCommand;
+    private CommandInvocation timeInvocation;
+    private CommandInvocation versionInvocation;
+
+    @Setup
+    public void setUp() {
+        timeCommand = new TimeCommand();
+        versionCommand = new VersionCommand();
+        timeInvocation = new CommandInvocation("#benchmark", "benchmarker", TimeCommand.NAME, TimeCommand.NAME.length());
+        versionInvocation = new CommandInvocation("#benchmark", "benchmarker", VersionCommand.NAME, VersionCommand.NAME.length());
+    }
+
+    @Benchmark
+    public CommandResponse timeResponse() {
+        return timeCommand.execute(timeInvocation);
+    }
+
+    @Benchmark
+    public CommandResponse versionResponse() {
+        return versionCommand.execute(versionInvocation);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommandThrottlerBenchmark {
+    private static final String COMMAND = TimeCommand.NAME;
+    private static final String CHANNEL = "#benchmark";
+    private static final String USER = "benchmarker";
+    private static final String OTHER_USER = "bystander";
+
+    private CommandThrottler commandThrottler;
+    private int commandId;
+
+    @Setup
+    public void setUp() {
+        CommandThrottlerConfiguration configuration = new CommandThrottlerConfiguration();
+        configuration.addCommandThrottle(COMMAND, 10000l);
+        configuration.addCommandPolicy(COMMAND, ThrottleScope.USER, ThrottlePolicy.cooldown(30000l));
+        commandThrottler = new CommandThrottler(configuration, new SystemClock());
+        commandId = commandThrottler.getCommandId(COMMAND);
+        commandThrottler.tryAcquire(commandId, CHANNEL, USER);
+    }
+
+    @Benchmark
+    public boolean throttleCommand() {
+        return commandThrottler.throttleCommand(COMMAND);
+    }
+
+    @Benchmark
+    public void trackCommandUsage() {
+        commandThrottler.trackCommandUsage(COMMAND);
+    }
+
+    @Benchmark
+    public boolean tryAcquire() {
+        return commandThrottler.tryAcquire(commandId, CHANNEL, USER);
+    }
+
+    // The user's own cooldown is free but the global one is not, so each call takes and refunds the user slot.
+    @Benchmark
+    public boolean tryAcquireRefunded() {
+        return commandThrottler.tryAcquire(commandId, CHANNEL, OTHER_USER);
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler and 1, 2, 4, ... threads up to the number of cores (or the count given
+     * as the first argument), all sharing one throttler, to show how the checks scale under contention.
+     */
+    public static void main(String[] args) throws RunnerException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            new Runner(new OptionsBuilder()
+                    .include(CommandThrottlerBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .build()).run();
+            if (threads >= maxThreads) break;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class BotMetrics implements BotMetricsMBean {
+    public static final String OBJECT_NAME = "ca.jessewebb.gweebot:type=BotMetrics";
+
+    private static final String PREFIX = "gweebot_";
+
+    private final AtomicLong messagesSeen;
+    private final AtomicLong commandsRecognized;
+    private final AtomicLong commandsThrottled;
+    private final AtomicLong commandsAnswered;
+    private final AtomicLong commandsUnrecognized;
+    private final AtomicLong commandsFlooded;
+    private final AtomicLong repliesSent;
+    private final AtomicLong connectionsLost;
+    private final AtomicLong connectionAttemptsFailed;
+    private final ConcurrentMap<String, CommandCounters> commandCounters;
+    private final LatencyHistogram replyLatency;
+    private final CopyOnWriteArrayList<Gauge> gauges;
+
+    public BotMetrics() {
+        messagesSeen = new AtomicLong();
+        commandsRecognized = new AtomicLong();
+        commandsThrottled = new AtomicLong();
+        commandsAnswered = new AtomicLong();
+        commandsUnrecognized = new AtomicLong();
+        commandsFlooded = new AtomicLong();
+        repliesSent = new AtomicLong();
+        connectionsLost = new AtomicLong();
+        connectionAttemptsFailed = new AtomicLong();
+        commandCounters = new ConcurrentHashMap<String, CommandCounters>();
+        replyLatency = new LatencyHistogram();
+        gauges = new CopyOnWriteArrayList<Gauge>();
+    }
+
+    public void messageSeen() {
+        messagesSeen.incrementAndGet();
+    }
+
+    public void commandRecognized(String command) {
+        commandsRecognized.incrementAndGet();
+        getCommandCounters(command).recognized.incrementAndGet();
+    }
+
+    public void commandThrottled(String command) {
+        commandsThrottled.incrementAndGet();
+        getCommandCounters(command).throttled.incrementAndGet();
+    }
+
+    public void commandAnswered(String command) {
+        commandsAnswered.incrementAndGet();
+        getCommandCounters(command).answered.incrementAndGet();
+    }
+
+    public void commandUnrecognized() {
+        commandsUnrecognized.incrementAndGet();
+    }
+
+    public void commandFlooded() {
+        commandsFlooded.incrementAndGet();
+    }
+
+    public void connectionLost() {
+        connectionsLost.incrementAndGet();
+    }
+
+    public void connectionAttemptFailed() {
+        connectionAttemptsFailed.incrementAndGet();
+    }
+
+    public void replySent(long latencyMillis) {
+        repliesSent.incrementAndGet();
+        replyLatency.record(latencyMillis);
+    }
+
+    public void addGauge(String name, String help, MetricsGauge gauge) {
+        if (name == null) throw new IllegalArgumentException("name must not be null");
+        if (gauge == null) throw new IllegalArgumentException("gauge must not be null");
+        gauges.add(new Gauge(name, help, "gauge", gauge));
+    }
+
+    /**
+     * Publishes a count kept elsewhere as a counter, so rate() and increase() handle restarts.
+     */
+    public void addCounter(String name, String help, final MetricsCounter counter) {
+        if (name == null) throw new IllegalArgumentException("name must not be null");
+        if (!name.endsWith("_total")) throw new IllegalArgumentException("counter name must end with _total");
+        if (counter == null) throw new IllegalArgumentException("counter must not be null");
+        gauges.add(new Gauge(name, help, "counter", new MetricsGauge() {
+            @Override
+            public long getValue() {
+                return counter.getValue();
+            }
+        }));
+    }
+
+    public void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) server.registerMBean(this, name);
+    }
+
+    @Override
+    public long getMessagesSeen() {
+        return messagesSeen.get();
+    }
+
+    @Override
+    public long getCommandsRecognized() {
+        return commandsRecognized.get();
+    }
+
+    @Override
+    public long getCommandsThrottled() {
+        return commandsThrottled.get();
+    }
+
+    @Override
+    public long getCommandsAnswered() {
+        return commandsAnswered.get();
+    }
+
+    @Override
+    public long getCommandsUnrecognized() {
+        return commandsUnrecognized.get();
+    }
+
+    @Override
+    public long getCommandsFlooded() {
+        return commandsFlooded.get();
+    }
+
+    @Override
+    public long getRepliesSent() {
+        return repliesSent.get();
+    }
+
+    @Override
+    public long getConnectionsLost() {
+        return connectionsLost.get();
+    }
+
+    @Override
+    public long getConnectionAttemptsFailed() {
+        return connectionAttemptsFailed.get();
+    }
+
+    @Override
+    public long getReplyLatencyMeanMillis() {
+        long count = replyLatency.getCount();
+        return count == 0 ? 0l : replyLatency.getSum() / count;
+    }
+
+    @Override
+    public long getReplyLatencyP50Millis() {
+        return replyLatency.getPercentile(50.0);
+    }
+
+    @Override
+    public long getReplyLatencyP99Millis() {
+        return replyLatency.getPercentile(99.0);
+    }
+
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder(2048);
+        appendCounter(out, "messages_seen_total", "Channel messages received by the command listener", messagesSeen.get());
+        appendCounter(out, "commands_recognized_total", "Messages that named a registered command", commandsRecognized.get());
+        appendCounter(out, "commands_throttled_total", "Recognized commands rejected by throttling", commandsThrottled.get());
+        appendCounter(out, "commands_answered_total", "Recognized commands whose reply was queued", commandsAnswered.get());
+        appendCounter(out, "commands_unrecognized_total", "Messages with the command prefix that named no command", commandsUnrecognized.get());
+        appendCounter(out, "commands_flooded_total", "Command messages dropped because the sender was flooding", commandsFlooded.get());
+        appendCounter(out, "replies_sent_total", "Replies written to the server", repliesSent.get());
+        appendCounter(out, "connections_lost_total", "Server connections that dropped after connecting", connectionsLost.get());
+        appendCounter(out, "connection_attempts_failed_total", "Connection attempts that failed before connecting", connectionAttemptsFailed.get());
+
+        appendHeader(out, "command_total", "Command outcomes by command", "counter");
+        for (Map.Entry<String, CommandCounters> entry : commandCounters.entrySet()) {
+            String command = escapeLabel(entry.getKey());
+            appendCommandSample(out, command, "recognized", entry.getValue().recognized.get());
+            appendCommandSample(out, command, "throttled", entry.getValue().throttled.get());
+            appendCommandSample(out, command, "answered", entry.getValue().answered.get());
+        }
+
+        appendHeader(out, "reply_latency_seconds", "Time from receiving a command to sending its reply", "histogram");
+        long cumulative = 0;
+        for (int bucket = 0; bucket < replyLatency.getBucketCount(); bucket++) {
+            cumulative += replyLatency.getBucketValue(bucket);
+            long bound = replyLatency.getBucketBound(bucket);
+            out.append(PREFIX).append("reply_latency_seconds_bucket{le=\"")
+                    .append(bound == Long.MAX_VALUE ? "+Inf" : String.valueOf(bound / 1000.0))
+                    .append("\"} ").append(cumulative).append('\n');
+        }
+        out.append(PREFIX).append("reply_latency_seconds_sum ").append(replyLatency.getSum() / 1000.0).append('\n');
+        out.append(PREFIX).append("reply_latency_seconds_count ").append(replyLatency.getCount()).append('\n');
+
+        for (Gauge gauge : gauges) {
+            appendHeader(out, gauge.name, gauge.help, gauge.type);
+            out.append(PREFIX).append(gauge.name).append(' ').append(gauge.gauge.getValue()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private CommandCounters getCommandCounters(String command) {
+        CommandCounters counters = commandCounters.get(command);
+        if (counters == null) {
+            CommandCounters newCounters = new CommandCounters();
+            counters = commandCounters.putIfAbsent(command, newCounters);
+            if (counters == null) counters = newCounters;
+        }
+        return counters;
+    }
+
+    private static void appendCounter(StringBuilder out, String name, String help, long value) {
+        appendHeader(out, name, help, "counter");
+        out.append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void appendHeader(StringBuilder out, String name, String help, String type) {
+        if (help != null) out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void appendCommandSample(StringBuilder out, String command, String outcome, long value) {
+        out.append(PREFIX).append("command_total{command=\"").append(command)
+                .append("\",outcome=\"").append(outcome).append("\"} ").append(value).append('\n');
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static class CommandCounters {
+        private final AtomicLong recognized = new AtomicLong();
+        private final AtomicLong throttled = new AtomicLong();
+        private final AtomicLong answered = new AtomicLong();
+    }
+
+    private static class Gauge {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final MetricsGauge gauge;
+
+        private Gauge(String name, String help, String type, MetricsGauge gauge) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.gauge = gauge;
+        }
+    }
+}
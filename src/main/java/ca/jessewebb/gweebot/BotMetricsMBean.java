@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+public interface BotMetricsMBean {
+    long getMessagesSeen();
+
+    long getCommandsRecognized();
+
+    long getCommandsThrottled();
+
+    long getCommandsAnswered();
+
+    long getCommandsUnrecognized();
+
+    long getCommandsFlooded();
+
+    long getRepliesSent();
+
+    long getConnectionsLost();
+
+    long getConnectionAttemptsFailed();
+
+    long getReplyLatencyMeanMillis();
+
+    long getReplyLatencyP50Millis();
+
+    long getReplyLatencyP99Millis();
+}
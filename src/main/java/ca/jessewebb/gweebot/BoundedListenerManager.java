@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import com.google.common.collect.ImmutableSet;
+import org.pircbotx.Channel;
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.pircbotx.hooks.managers.ListenerManager;
+import org.pircbotx.hooks.types.GenericChannelEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs listeners on a fixed set of workers, each fed by a bounded queue. Channel events always go to the same
+ * worker so they are handled in the order they arrived; all other events go to the first worker.
+ */
+public class BoundedListenerManager implements ListenerManager<PircBotX> {
+    private static final Logger logger = LoggerFactory.getLogger(BoundedListenerManager.class);
+
+    private static final long SHUTDOWN_DRAIN_MILLIS = 5000l;
+
+    private final Set<Listener<PircBotX>> listeners;
+    private final AtomicLong currentId;
+    private final OverflowPolicy overflowPolicy;
+    private final BlockingQueue<Event<PircBotX>>[] queues;
+    private final Thread[] workers;
+    private final AtomicLong dispatchedCount;
+    private final AtomicLong droppedCount;
+    private volatile boolean running;
+
+    @SuppressWarnings("unchecked")
+    public BoundedListenerManager(int workerCount, int queueCapacity, OverflowPolicy overflowPolicy) {
+        if (workerCount < 1) throw new IllegalArgumentException("workerCount must be at least 1");
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity must be at least 1");
+        if (overflowPolicy == null) throw new IllegalArgumentException("overflowPolicy must not be null");
+        listeners = new CopyOnWriteArraySet<Listener<PircBotX>>();
+        currentId = new AtomicLong();
+        this.overflowPolicy = overflowPolicy;
+        queues = new BlockingQueue[workerCount];
+        workers = new Thread[workerCount];
+        dispatchedCount = new AtomicLong();
+        droppedCount = new AtomicLong();
+        running = true;
+        for (int worker = 0; worker < workerCount; worker++) {
+            queues[worker] = new ArrayBlockingQueue<Event<PircBotX>>(queueCapacity);
+            workers[worker] = new Thread(new Worker(queues[worker]), "listener-worker-" + worker);
+            workers[worker].setDaemon(true);
+            workers[worker].start();
+        }
+    }
+
+    public static int getDefaultWorkerCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public void dispatchEvent(Event<PircBotX> event) {
+        BlockingQueue<Event<PircBotX>> queue = queues[getWorker(event)];
+        if (queue.offer(event)) return;
+        try {
+            switch (overflowPolicy) {
+                case DROP_NON_COMMAND:
+                    if (!isCommandOrControl(event)) {
+                        droppedCount.incrementAndGet();
+                    } else {
+                        enqueueCommandOrControl(queue, event);
+                    }
+                    break;
+                case DROP_OLDEST:
+                    while (!queue.offer(event)) {
+                        if (queue.poll() != null) droppedCount.incrementAndGet();
+                    }
+                    break;
+                case BLOCK:
+                    queue.put(event);
+                    break;
+            }
+        } catch (InterruptedException e) {
+            droppedCount.incrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean addListener(Listener listener) {
+        return listeners.add(listener);
+    }
+
+    @Override
+    public boolean removeListener(Listener listener) {
+        return listeners.remove(listener);
+    }
+
+    @Override
+    public boolean listenerExists(Listener listener) {
+        return listeners.contains(listener);
+    }
+
+    @Override
+    public ImmutableSet<Listener<PircBotX>> getListeners() {
+        return ImmutableSet.copyOf(listeners);
+    }
+
+    @Override
+    public void setCurrentId(long currentId) {
+        this.currentId.set(currentId);
+    }
+
+    @Override
+    public long getCurrentId() {
+        return currentId.get();
+    }
+
+    @Override
+    public long incrementCurrentId() {
+        return currentId.getAndIncrement();
+    }
+
+    @Override
+    public void shutdown(PircBotX bot) {
+        long deadline = System.currentTimeMillis() + SHUTDOWN_DRAIN_MILLIS;
+        try {
+            while (getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10l);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (BlockingQueue<Event<PircBotX>> queue : queues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    public int getQueueCapacity() {
+        int capacity = 0;
+        for (BlockingQueue<Event<PircBotX>> queue : queues) {
+            capacity += queue.size() + queue.remainingCapacity();
+        }
+        return capacity;
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private int getWorker(Event<PircBotX> event) {
+        if (queues.length == 1 || !(event instanceof GenericChannelEvent)) return 0;
+        Channel channel = ((GenericChannelEvent<?>) event).getChannel();
+        if (channel == null) return 0;
+        int hash = channel.getName().hashCode();
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % queues.length;
+    }
+
+    // Makes room by dropping queued chat first, then the oldest queued command. Only a queue holding nothing but
+    // control events (connects, joins) makes a control event wait; a command that finds no room is dropped.
+    private void enqueueCommandOrControl(BlockingQueue<Event<PircBotX>> queue, Event<PircBotX> event)
+            throws InterruptedException {
+        while (!queue.offer(event)) {
+            if (dropQueuedMessage(queue, false) || dropQueuedMessage(queue, true)) continue;
+            if (event instanceof MessageEvent) {
+                droppedCount.incrementAndGet();
+            } else {
+                queue.put(event);
+            }
+            return;
+        }
+    }
+
+    private boolean dropQueuedMessage(BlockingQueue<Event<PircBotX>> queue, boolean command) {
+        Iterator<Event<PircBotX>> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Event<PircBotX> queued = iterator.next();
+            if (queued instanceof MessageEvent && isCommandOrControl(queued) == command) {
+                iterator.remove();
+                droppedCount.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCommandOrControl(Event<?> event) {
+        if (!(event instanceof MessageEvent)) return true;
+        return ((MessageEvent<?>) event).getMessage().startsWith(CommandListener.COMMAND_PREFIX);
+    }
+
+    private class Worker implements Runnable {
+        private final BlockingQueue<Event<PircBotX>> queue;
+
+        private Worker(BlockingQueue<Event<PircBotX>> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Event<PircBotX> event;
+                try {
+                    event = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (Listener<PircBotX> listener : listeners) {
+                    try {
+                        listener.onEvent(event);
+                    } catch (Exception e) {
+                        logger.error("Exception encountered when dispatching event " + event, e);
+                    }
+                }
+                dispatchedCount.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+public class CachedTimeFormatter {
+    private final DateFormat dateFormat;
+    private volatile FormattedSecond current;
+
+    public CachedTimeFormatter(String pattern) {
+        if (pattern == null) throw new IllegalArgumentException("pattern must not be null");
+        dateFormat = new SimpleDateFormat(pattern);
+    }
+
+    /**
+     * Returns the same String instance for every call within the same second, so callers can cache whatever they
+     * build from it by identity.
+     */
+    public String format(long epochMillis) {
+        long second = floorSecond(epochMillis);
+        FormattedSecond formatted = current;
+        if (formatted == null || formatted.second != second) {
+            String text;
+            synchronized (dateFormat) {
+                text = dateFormat.format(new Date(second * 1000l));
+            }
+            formatted = new FormattedSecond(second, text);
+            current = formatted;
+        }
+        return formatted.text;
+    }
+
+    private static long floorSecond(long epochMillis) {
+        long second = epochMillis / 1000l;
+        return epochMillis < 0 && second * 1000l != epochMillis ? second - 1 : second;
+    }
+
+    private static class FormattedSecond {
+        private final long second;
+        private final String text;
+
+        private FormattedSecond(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+}
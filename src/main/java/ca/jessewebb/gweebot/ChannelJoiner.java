@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.ConnectEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Joins each connection's channels once it has registered with the server, after the first connect and after every
+ * reconnect. Channels are joined in batches of several channels per JOIN line, and the batches of all connections share
+ * one rolling budget of {@code joinLimit} channels per {@code periodMillis}, because servers limit joins per account.
+ * The batches are sent from a single daemon thread.
+ */
+public class ChannelJoiner extends ListenerAdapter implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(ChannelJoiner.class);
+
+    private final EpochClock clock;
+    private final int joinLimit;
+    private final long periodMillis;
+    private final int batchSize;
+    private final Map<PircBotX, List<String>> botChannels;
+    private final Queue<JoinBatch> pendingBatches;
+    private final ArrayDeque<long[]> recentJoins;
+    private int recentJoinCount;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public ChannelJoiner(EpochClock clock, int joinLimit, long periodMillis, int batchSize) {
+        if (clock == null) throw new IllegalArgumentException("clock must not be null");
+        if (joinLimit <= 0) throw new IllegalArgumentException("joinLimit must be positive");
+        if (periodMillis <= 0) throw new IllegalArgumentException("periodMillis must be positive");
+        if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be positive");
+        this.clock = clock;
+        this.joinLimit = joinLimit;
+        this.periodMillis = periodMillis;
+        this.batchSize = Math.min(batchSize, joinLimit);
+        botChannels = new ConcurrentHashMap<PircBotX, List<String>>();
+        pendingBatches = new ArrayDeque<JoinBatch>();
+        recentJoins = new ArrayDeque<long[]>();
+    }
+
+    public void addBot(PircBotX bot, List<String> channels) {
+        if (bot == null) throw new IllegalArgumentException("bot must not be null");
+        if (channels == null) throw new IllegalArgumentException("channels must not be null");
+        botChannels.put(bot, new ArrayList<String>(channels));
+    }
+
+    @Override
+    public void onConnect(ConnectEvent event) throws Exception {
+        PircBotX bot = event.getBot();
+        List<String> channels = botChannels.get(bot);
+        if (channels != null) enqueue(bot, channels);
+    }
+
+    /**
+     * Queues joins for {@code channels}, replacing any batches still queued for the bot from an earlier connection.
+     */
+    public synchronized void enqueue(PircBotX bot, List<String> channels) {
+        Iterator<JoinBatch> batches = pendingBatches.iterator();
+        while (batches.hasNext()) {
+            if (batches.next().bot == bot) batches.remove();
+        }
+        for (int start = 0; start < channels.size(); start += batchSize) {
+            pendingBatches.add(new JoinBatch(bot, channels.subList(start, Math.min(start + batchSize, channels.size()))));
+        }
+        logger.info("Joining {} channels in batches of up to {}", channels.size(), batchSize);
+        notifyAll();
+    }
+
+    public synchronized int getPendingBatchCount() {
+        return pendingBatches.size();
+    }
+
+    /**
+     * Sends the queued batches the join budget allows right now. Returns how long to wait before the next batch fits,
+     * or -1 when nothing is queued.
+     */
+    public synchronized long sendDueBatches() {
+        long now = clock.getCurrentEpochTimeMillis();
+        while (!recentJoins.isEmpty() && recentJoins.peekFirst()[0] + periodMillis <= now) {
+            recentJoinCount -= (int) recentJoins.pollFirst()[1];
+        }
+        JoinBatch batch;
+        while ((batch = pendingBatches.peek()) != null && recentJoinCount + batch.channels.size() <= joinLimit) {
+            pendingBatches.poll();
+            recentJoins.addLast(new long[]{now, batch.channels.size()});
+            recentJoinCount += batch.channels.size();
+            try {
+                sendJoin(batch.bot, batch.getChannelList());
+            } catch (RuntimeException e) {
+                logger.warn("Failed to join {} channels, they are joined again on the next connect", batch.channels.size(), e);
+            }
+        }
+        if (pendingBatches.isEmpty()) return -1l;
+        return Math.max(1l, recentJoins.peekFirst()[0] + periodMillis - now);
+    }
+
+    protected void sendJoin(PircBotX bot, String channelList) {
+        bot.sendRaw().rawLineNow("JOIN " + channelList);
+    }
+
+    public synchronized void start() {
+        if (thread != null) return;
+        running = true;
+        thread = new Thread(this, "channel-joiner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override
+    public synchronized void run() {
+        while (running) {
+            long waitMillis = sendDueBatches();
+            try {
+                if (waitMillis < 0) {
+                    wait();
+                } else {
+                    wait(waitMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static class JoinBatch {
+        private final PircBotX bot;
+        private final List<String> channels;
+
+        private JoinBatch(PircBotX bot, List<String> channels) {
+            this.bot = bot;
+            this.channels = channels;
+        }
+
+        private String getChannelList() {
+            StringBuilder channelList = new StringBuilder();
+            for (String channel : channels) {
+                if (channelList.length() > 0) channelList.append(',');
+                channelList.append(channel);
+            }
+            return channelList.toString();
+        }
+    }
+}
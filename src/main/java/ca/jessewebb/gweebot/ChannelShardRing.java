@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Assigns channels to connections with a consistent-hash ring, so changing the number of connections only moves the
+ * channels whose ring segment changed owner instead of reshuffling every channel. With a load bound, a channel whose
+ * connection is full moves on to the next connection on the ring that has room.
+ */
+public class ChannelShardRing {
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int shardCount;
+    private final long[] points;
+    private final int[] shards;
+
+    public ChannelShardRing(int shardCount) {
+        this(shardCount, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ChannelShardRing(int shardCount, int virtualNodes) {
+        if (shardCount < 1) throw new IllegalArgumentException("shardCount must be positive");
+        if (virtualNodes < 1) throw new IllegalArgumentException("virtualNodes must be positive");
+        this.shardCount = shardCount;
+        RingPoint[] ring = new RingPoint[shardCount * virtualNodes];
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                ring[shard * virtualNodes + node] = new RingPoint(Hashing.fnv1aMix("shard-" + shard + "#" + node, false), shard);
+            }
+        }
+        Arrays.sort(ring, new Comparator<RingPoint>() {
+            @Override
+            public int compare(RingPoint first, RingPoint second) {
+                if (first.point != second.point) return first.point < second.point ? -1 : 1;
+                return first.shard - second.shard;
+            }
+        });
+        points = new long[ring.length];
+        shards = new int[ring.length];
+        for (int index = 0; index < ring.length; index++) {
+            points[index] = ring[index].point;
+            shards[index] = ring[index].shard;
+        }
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int getShard(String channel) {
+        if (channel == null) throw new IllegalArgumentException("channel must not be null");
+        return shards[getRingIndex(channel)];
+    }
+
+    public List<List<String>> assign(List<String> channels) {
+        return assign(channels, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Assigns the channels in order, giving no shard more than {@code maxChannelsPerShard} of them.
+     */
+    public List<List<String>> assign(List<String> channels, int maxChannelsPerShard) {
+        if (channels == null) throw new IllegalArgumentException("channels must not be null");
+        if (maxChannelsPerShard < 1) throw new IllegalArgumentException("maxChannelsPerShard must be positive");
+        if ((long) maxChannelsPerShard * shardCount < channels.size()) {
+            throw new IllegalArgumentException(channels.size() + " channels do not fit in " + shardCount + " shards of "
+                    + maxChannelsPerShard);
+        }
+        List<List<String>> assignment = new ArrayList<List<String>>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            assignment.add(new ArrayList<String>());
+        }
+        for (String channel : channels) {
+            if (channel == null) throw new IllegalArgumentException("channels must not contain null");
+            int index = getRingIndex(channel);
+            while (assignment.get(shards[index]).size() >= maxChannelsPerShard) {
+                index = index + 1 == points.length ? 0 : index + 1;
+            }
+            assignment.get(shards[index]).add(channel);
+        }
+        return assignment;
+    }
+
+    public static int getShardCount(int channelCount, int channelsPerShard) {
+        if (channelCount < 0) throw new IllegalArgumentException("channelCount must not be negative");
+        if (channelsPerShard < 1) throw new IllegalArgumentException("channelsPerShard must be positive");
+        return Math.max(1, (channelCount + channelsPerShard - 1) / channelsPerShard);
+    }
+
+    private int getRingIndex(String channel) {
+        long hash = Hashing.fnv1aMix(channel.toLowerCase(Locale.ENGLISH), false);
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) index = -index - 1;
+        return index == points.length ? 0 : index;
+    }
+
+    private static class RingPoint {
+        private final long point;
+        private final int shard;
+
+        private RingPoint(long point, int shard) {
+            this.point = point;
+            this.shard = shard;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sliding-window chat statistics for one channel. The window is a ring of {@code bucketCount} buckets of
+ * {@code bucketMillis} each; a bucket is cleared and reused once it falls out of the window, so memory stays fixed
+ * no matter how busy the channel is. Each bucket holds count-min sketches of words and chatters, their top-K
+ * candidates and a HyperLogLog of chatters.
+ */
+public class ChannelStatistics {
+    public static final int MIN_WORD_LENGTH = 3;
+    public static final int MAX_WORD_LENGTH = 32;
+
+    private static final int SKETCH_WIDTH = 256;
+    private static final int SKETCH_DEPTH = 4;
+    private static final int TOP_K_CAPACITY = 16;
+    private static final int HLL_PRECISION = 10;
+
+    private final long bucketMillis;
+    private final Bucket[] buckets;
+
+    public ChannelStatistics(long bucketMillis, int bucketCount) {
+        if (bucketMillis <= 0) throw new IllegalArgumentException("bucketMillis must be positive");
+        if (bucketCount < 1) throw new IllegalArgumentException("bucketCount must be positive");
+        this.bucketMillis = bucketMillis;
+        buckets = new Bucket[bucketCount];
+        for (int index = 0; index < bucketCount; index++) {
+            buckets[index] = new Bucket();
+        }
+    }
+
+    public long getWindowMillis() {
+        return bucketMillis * buckets.length;
+    }
+
+    public synchronized void record(String user, String message, long timestamp) {
+        Bucket bucket = getBucket(timestamp);
+        if (bucket == null) return;
+        bucket.messageCount++;
+
+        long userHash = Hashing.fnv1aMix(user, true);
+        bucket.uniqueChatters.add(userHash);
+        bucket.topChatters.offer(userHash, bucket.chatters.add(userHash), user, 0, user.length());
+
+        if (message.startsWith(CommandListener.COMMAND_PREFIX)) return;
+        int wordStart = -1;
+        for (int index = 0; index <= message.length(); index++) {
+            boolean wordChar = index < message.length() && Character.isLetterOrDigit(message.charAt(index));
+            if (wordChar) {
+                if (wordStart < 0) wordStart = index;
+            } else if (wordStart >= 0) {
+                int length = index - wordStart;
+                if (length >= MIN_WORD_LENGTH && length <= MAX_WORD_LENGTH) {
+                    long wordHash = Hashing.fnv1aMix(message, wordStart, index, true);
+                    bucket.topWords.offer(wordHash, bucket.words.add(wordHash), message, wordStart, index);
+                }
+                wordStart = -1;
+            }
+        }
+    }
+
+    public synchronized long getMessageCount(long now) {
+        long count = 0;
+        for (Bucket bucket : buckets) {
+            if (isLive(bucket, now)) count += bucket.messageCount;
+        }
+        return count;
+    }
+
+    public synchronized long getUniqueChatterCount(long now) {
+        HyperLogLog union = new HyperLogLog(HLL_PRECISION);
+        for (Bucket bucket : buckets) {
+            if (isLive(bucket, now)) union.merge(bucket.uniqueChatters);
+        }
+        return union.estimate();
+    }
+
+    public synchronized List<TopItem> getTopChatters(int limit, long now) {
+        return getTop(limit, now, false);
+    }
+
+    public synchronized List<TopItem> getTopWords(int limit, long now) {
+        return getTop(limit, now, true);
+    }
+
+    private List<TopItem> getTop(int limit, long now, boolean words) {
+        Map<Long, String> candidates = new HashMap<Long, String>();
+        for (Bucket bucket : buckets) {
+            if (!isLive(bucket, now)) continue;
+            TopKTracker tracker = words ? bucket.topWords : bucket.topChatters;
+            for (int index = 0; index < tracker.size(); index++) {
+                candidates.put(tracker.getHash(index), tracker.getItem(index));
+            }
+        }
+        List<TopItem> top = new ArrayList<TopItem>(candidates.size());
+        for (Map.Entry<Long, String> candidate : candidates.entrySet()) {
+            long count = 0;
+            for (Bucket bucket : buckets) {
+                if (isLive(bucket, now)) count += (words ? bucket.words : bucket.chatters).estimate(candidate.getKey());
+            }
+            top.add(new TopItem(candidate.getValue(), count));
+        }
+        Collections.sort(top, new Comparator<TopItem>() {
+            @Override
+            public int compare(TopItem first, TopItem second) {
+                if (first.getCount() != second.getCount()) return first.getCount() > second.getCount() ? -1 : 1;
+                return first.getItem().compareTo(second.getItem());
+            }
+        });
+        return top.size() > limit ? new ArrayList<TopItem>(top.subList(0, limit)) : top;
+    }
+
+    private Bucket getBucket(long timestamp) {
+        long start = timestamp - timestamp % bucketMillis;
+        Bucket bucket = buckets[(int) ((start / bucketMillis) % buckets.length)];
+        // An event older than the window the slot already holds would wipe newer counts, so it is dropped.
+        if (bucket.start > start) return null;
+        if (bucket.start != start) bucket.reset(start);
+        return bucket;
+    }
+
+    private boolean isLive(Bucket bucket, long now) {
+        return bucket.start != Long.MIN_VALUE && bucket.start > now - getWindowMillis() && bucket.start <= now;
+    }
+
+    private static class Bucket {
+        private final CountMinSketch words = new CountMinSketch(SKETCH_WIDTH, SKETCH_DEPTH);
+        private final CountMinSketch chatters = new CountMinSketch(SKETCH_WIDTH, SKETCH_DEPTH);
+        private final TopKTracker topWords = new TopKTracker(TOP_K_CAPACITY);
+        private final TopKTracker topChatters = new TopKTracker(TOP_K_CAPACITY);
+        private final HyperLogLog uniqueChatters = new HyperLogLog(HLL_PRECISION);
+        private long start = Long.MIN_VALUE;
+        private long messageCount;
+
+        private void reset(long start) {
+            words.clear();
+            chatters.clear();
+            topWords.clear();
+            topChatters.clear();
+            uniqueChatters.clear();
+            this.start = start;
+            messageCount = 0;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds channel messages into per-channel {@link ChannelStatistics}. Listener threads only enqueue; a single
+ * analytics thread updates the sketches, so replies never wait on analytics. When the queue is full, messages are
+ * left out of the statistics rather than slowing the listeners down.
+ */
+public class ChatAnalytics extends ListenerAdapter implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(ChatAnalytics.class);
+
+    public static final long DEFAULT_BUCKET_MILLIS = 60000l;
+    public static final int DEFAULT_BUCKET_COUNT = 5;
+
+    private final long bucketMillis;
+    private final int bucketCount;
+    private final BlockingQueue<ChatMessage> queue;
+    private final ConcurrentMap<String, ChannelStatistics> channelStatistics;
+    private final AtomicLong droppedCount;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public ChatAnalytics(int queueCapacity) {
+        this(queueCapacity, DEFAULT_BUCKET_MILLIS, DEFAULT_BUCKET_COUNT);
+    }
+
+    public ChatAnalytics(int queueCapacity, long bucketMillis, int bucketCount) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity must be positive");
+        if (bucketMillis <= 0) throw new IllegalArgumentException("bucketMillis must be positive");
+        if (bucketCount < 1) throw new IllegalArgumentException("bucketCount must be positive");
+        this.bucketMillis = bucketMillis;
+        this.bucketCount = bucketCount;
+        queue = new ArrayBlockingQueue<ChatMessage>(queueCapacity);
+        channelStatistics = new ConcurrentHashMap<String, ChannelStatistics>();
+        droppedCount = new AtomicLong();
+    }
+
+    @Override
+    public void onMessage(MessageEvent event) {
+        record(event.getChannel().getName(), event.getUser().getNick(), event.getMessage(), event.getTimestamp());
+    }
+
+    public boolean record(String channel, String user, String message, long timestamp) {
+        if (queue.offer(new ChatMessage(channel, user, message, timestamp))) return true;
+        droppedCount.incrementAndGet();
+        return false;
+    }
+
+    public ChannelStatistics getChannelStatistics(String channel) {
+        return channelStatistics.get(channel);
+    }
+
+    public long getWindowMillis() {
+        return bucketMillis * bucketCount;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public synchronized void start() {
+        if (thread != null) return;
+        running = true;
+        thread = new Thread(this, "chat-analytics");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            ChatMessage message;
+            try {
+                message = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                process(message.channel, message.user, message.text, message.timestamp);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to record message in '{}'", message.channel, e);
+            }
+        }
+    }
+
+    /**
+     * Records a message on the calling thread instead of queueing it.
+     */
+    public void process(String channel, String user, String message, long timestamp) {
+        ChannelStatistics statistics = channelStatistics.get(channel);
+        if (statistics == null) {
+            ChannelStatistics newStatistics = new ChannelStatistics(bucketMillis, bucketCount);
+            statistics = channelStatistics.putIfAbsent(channel, newStatistics);
+            if (statistics == null) statistics = newStatistics;
+        }
+        statistics.record(user, message, timestamp);
+    }
+
+    private static class ChatMessage {
+        private final String channel;
+        private final String user;
+        private final String text;
+        private final long timestamp;
+
+        private ChatMessage(String channel, String user, String text, long timestamp) {
+            this.channel = channel;
+            this.user = user;
+            this.text = text;
+            this.timestamp = timestamp;
+        }
+    }
+}
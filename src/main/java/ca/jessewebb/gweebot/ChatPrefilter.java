@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides from the raw line whether a channel PRIVMSG is plain chat that no listener needs, so the input parser can
+ * skip building users, channels and a MessageEvent for it. Features that consume all chat call
+ * {@link #requireFullChat()} to turn the filter off.
+ */
+public class ChatPrefilter {
+    private static final String PRIVMSG = "PRIVMSG ";
+    private static final char CTCP_DELIMITER = '\u0001';
+
+    private final char commandPrefix;
+    private final String channelPrefixes;
+    private final AtomicInteger fullChatSubscribers;
+    private final AtomicLong filteredCount;
+    private volatile boolean enabled;
+
+    public ChatPrefilter(String commandPrefix, String channelPrefixes) {
+        if (commandPrefix == null || commandPrefix.length() != 1) throw new IllegalArgumentException("commandPrefix must be a single character");
+        if (channelPrefixes == null || channelPrefixes.isEmpty()) throw new IllegalArgumentException("channelPrefixes must not be empty");
+        this.commandPrefix = commandPrefix.charAt(0);
+        this.channelPrefixes = channelPrefixes;
+        fullChatSubscribers = new AtomicInteger();
+        filteredCount = new AtomicLong();
+        enabled = true;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void requireFullChat() {
+        fullChatSubscribers.incrementAndGet();
+    }
+
+    public void releaseFullChat() {
+        fullChatSubscribers.decrementAndGet();
+    }
+
+    public boolean isActive() {
+        return enabled && fullChatSubscribers.get() <= 0;
+    }
+
+    public long getFilteredCount() {
+        return filteredCount.get();
+    }
+
+    public boolean filter(String line) {
+        if (!isActive() || !isPlainChannelChat(line)) return false;
+        filteredCount.incrementAndGet();
+        return true;
+    }
+
+    private boolean isPlainChannelChat(String line) {
+        int length = line.length();
+        int index = 0;
+        if (index < length && line.charAt(index) == '@') {
+            index = line.indexOf(' ') + 1;
+            if (index == 0) return false;
+        }
+        if (index >= length || line.charAt(index) != ':') return false;
+        index = line.indexOf(' ', index) + 1;
+        if (index == 0 || !line.startsWith(PRIVMSG, index)) return false;
+        index += PRIVMSG.length();
+        if (index >= length || channelPrefixes.indexOf(line.charAt(index)) < 0) return false;
+        index = line.indexOf(" :", index) + 2;
+        if (index == 1) return false;
+        if (index >= length) return true;
+        char first = line.charAt(index);
+        return first != commandPrefix && first != CTCP_DELIMITER;
+    }
+}
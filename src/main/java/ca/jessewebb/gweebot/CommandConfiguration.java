@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * An immutable set of command cooldowns and text commands, read from a properties file with entries like
+ * {@code time.channel.cooldown.millis=10000}, {@code time.channel.burst=2} and {@code discord.response=Join us!}.
+ * Command names are given without the command prefix; scopes are {@code global}, {@code channel} and {@code user}.
+ */
+public class CommandConfiguration {
+    private static final Logger logger = LoggerFactory.getLogger(CommandConfiguration.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String COOLDOWN_SUFFIX = ".cooldown.millis";
+    private static final String BURST_SUFFIX = ".burst";
+    private static final String RESPONSE_SUFFIX = ".response";
+
+    private final Map<String, ThrottlePolicy[]> policies;
+    private final Map<String, String> responses;
+
+    private CommandConfiguration(Map<String, ThrottlePolicy[]> policies, Map<String, String> responses) {
+        this.policies = Collections.unmodifiableMap(policies);
+        this.responses = Collections.unmodifiableMap(responses);
+    }
+
+    public static CommandConfiguration load(File file) throws IOException {
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        Properties properties = new Properties();
+        InputStreamReader reader = new InputStreamReader(new FileInputStream(file), UTF_8);
+        try {
+            properties.load(reader);
+        } finally {
+            reader.close();
+        }
+        try {
+            return parse(properties);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid command configuration '" + file + "': " + e.getMessage());
+        }
+    }
+
+    public static CommandConfiguration parse(Properties properties) {
+        if (properties == null) throw new IllegalArgumentException("properties must not be null");
+        Map<String, CommandSettings> settings = new LinkedHashMap<String, CommandSettings>();
+        Map<String, String> responses = new LinkedHashMap<String, String>();
+        for (String key : new TreeSet<String>(properties.stringPropertyNames())) {
+            String value = properties.getProperty(key).trim();
+            if (key.endsWith(RESPONSE_SUFFIX)) {
+                String command = getCommandName(key.substring(0, key.length() - RESPONSE_SUFFIX.length()), key);
+                if (value.isEmpty()) throw new IllegalArgumentException("'" + key + "' must not be empty");
+                responses.put(command, value);
+                continue;
+            }
+            boolean cooldown = key.endsWith(COOLDOWN_SUFFIX);
+            if (!cooldown && !key.endsWith(BURST_SUFFIX)) throw new IllegalArgumentException("Unknown command setting '" + key + "'");
+            String prefix = key.substring(0, key.length() - (cooldown ? COOLDOWN_SUFFIX : BURST_SUFFIX).length());
+            int separator = prefix.lastIndexOf('.');
+            if (separator < 0) throw new IllegalArgumentException("Missing throttle scope in '" + key + "'");
+            String command = getCommandName(prefix.substring(0, separator), key);
+            ThrottleScope scope = getScope(prefix.substring(separator + 1), key);
+            CommandSettings commandSettings = settings.get(command);
+            if (commandSettings == null) {
+                commandSettings = new CommandSettings();
+                settings.put(command, commandSettings);
+            }
+            long number = parseNumber(key, value);
+            if (cooldown) {
+                if (number < 0) throw new IllegalArgumentException("'" + key + "' must not be negative");
+                commandSettings.cooldownMillis[scope.ordinal()] = number;
+            } else {
+                if (number < 1 || number > Integer.MAX_VALUE) throw new IllegalArgumentException("'" + key + "' must be at least 1");
+                commandSettings.bursts[scope.ordinal()] = (int) number;
+            }
+        }
+
+        Map<String, ThrottlePolicy[]> policies = new LinkedHashMap<String, ThrottlePolicy[]>();
+        for (Map.Entry<String, CommandSettings> entry : settings.entrySet()) {
+            CommandSettings commandSettings = entry.getValue();
+            ThrottlePolicy[] commandPolicies = new ThrottlePolicy[ThrottleScope.values().length];
+            for (ThrottleScope scope : ThrottleScope.values()) {
+                long cooldownMillis = commandSettings.cooldownMillis[scope.ordinal()];
+                int burst = commandSettings.bursts[scope.ordinal()];
+                if (cooldownMillis < 0) {
+                    if (burst > 0) throw new IllegalArgumentException("Burst without a cooldown for '" + entry.getKey() + "'");
+                    continue;
+                }
+                commandPolicies[scope.ordinal()] = new ThrottlePolicy(Math.max(1, burst), cooldownMillis);
+            }
+            policies.put(entry.getKey(), commandPolicies);
+        }
+        return new CommandConfiguration(policies, responses);
+    }
+
+    public ThrottlePolicy getPolicy(String command, ThrottleScope scope) {
+        ThrottlePolicy[] commandPolicies = policies.get(command);
+        return commandPolicies == null ? null : commandPolicies[scope.ordinal()];
+    }
+
+    public Map<String, String> getResponses() {
+        return responses;
+    }
+
+    /**
+     * Builds the throttler configuration for these cooldowns. With a {@code previous} configuration, commands keep
+     * their ids, so a {@link CommandThrottler} can switch to the result without losing running cooldowns.
+     */
+    public CommandThrottlerConfiguration buildThrottlerConfiguration(CommandThrottlerConfiguration previous) {
+        CommandThrottlerConfiguration configuration = previous == null
+                ? new CommandThrottlerConfiguration() : new CommandThrottlerConfiguration(previous);
+        for (Map.Entry<String, ThrottlePolicy[]> entry : policies.entrySet()) {
+            for (ThrottleScope scope : ThrottleScope.values()) {
+                ThrottlePolicy policy = entry.getValue()[scope.ordinal()];
+                if (policy != null) configuration.addCommandPolicy(entry.getKey(), scope, policy);
+            }
+        }
+        return configuration;
+    }
+
+    /**
+     * Registers the text commands; one that would shadow an already registered command is skipped.
+     */
+    public void registerTextCommands(CommandRegistry registry) {
+        if (registry == null) throw new IllegalArgumentException("registry must not be null");
+        for (Map.Entry<String, String> entry : responses.entrySet()) {
+            String command = entry.getKey();
+            if (registry.lookup(command, 0, command.length()) != CommandRegistry.UNKNOWN_COMMAND) {
+                logger.warn("Ignoring text command '{}' because a command with that name already exists", command);
+                continue;
+            }
+            registry.register(new TextCommand(command, CommandResponse.message(entry.getValue())));
+        }
+    }
+
+    private static ThrottleScope getScope(String scope, String key) {
+        try {
+            return ThrottleScope.valueOf(scope.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown throttle scope in '" + key + "'");
+        }
+    }
+
+    private static String getCommandName(String name, String key) {
+        if (name.isEmpty() || name.indexOf('.') >= 0 || name.indexOf(' ') >= 0) {
+            throw new IllegalArgumentException("Invalid command name in '" + key + "'");
+        }
+        return CommandListener.COMMAND_PREFIX + name.toLowerCase(Locale.ENGLISH);
+    }
+
+    private static long parseNumber(String key, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("'" + key + "' must be a number");
+        }
+    }
+
+    private static class CommandSettings {
+        private final long[] cooldownMillis;
+        private final int[] bursts;
+
+        private CommandSettings() {
+            cooldownMillis = new long[ThrottleScope.values().length];
+            Arrays.fill(cooldownMillis, -1l);
+            bursts = new int[ThrottleScope.values().length];
+        }
+    }
+}
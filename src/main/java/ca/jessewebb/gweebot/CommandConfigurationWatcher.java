@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Polls a command configuration file from its own thread and hands every successfully parsed new version to a
+ * {@link ReloadListener}. A change is noticed when the file's modification time or length changes; a version that
+ * fails to parse is logged once and the current configuration stays in place.
+ */
+public class CommandConfigurationWatcher implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(CommandConfigurationWatcher.class);
+
+    public interface ReloadListener {
+        void onReload(CommandConfiguration configuration);
+    }
+
+    private final File file;
+    private final long intervalMillis;
+    private final ReloadListener listener;
+    private long lastModified;
+    private long lastLength;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * The file as it is now counts as already loaded; only later changes are reported.
+     */
+    public CommandConfigurationWatcher(File file, long intervalMillis, ReloadListener listener) {
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        if (intervalMillis <= 0) throw new IllegalArgumentException("intervalMillis must be positive");
+        if (listener == null) throw new IllegalArgumentException("listener must not be null");
+        this.file = file;
+        this.intervalMillis = intervalMillis;
+        this.listener = listener;
+        lastModified = file.lastModified();
+        lastLength = file.length();
+    }
+
+    /**
+     * Reloads the file when it changed since the last check and returns whether a new configuration was published.
+     */
+    public synchronized boolean checkForChanges() {
+        long modified = file.lastModified();
+        long length = file.length();
+        if (modified == lastModified && length == lastLength) return false;
+        lastModified = modified;
+        lastLength = length;
+        if (modified == 0l) {
+            logger.warn("Command configuration '{}' disappeared, keeping the current commands", file);
+            return false;
+        }
+
+        CommandConfiguration configuration;
+        try {
+            configuration = CommandConfiguration.load(file);
+        } catch (IOException e) {
+            logger.warn("Failed to reload command configuration '{}', keeping the current commands", file, e);
+            return false;
+        }
+        listener.onReload(configuration);
+        logger.info("Reloaded command configuration '{}'", file);
+        return true;
+    }
+
+    public synchronized void start() {
+        if (thread != null) return;
+        running = true;
+        thread = new Thread(this, "command-config-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                checkForChanges();
+            } catch (RuntimeException e) {
+                logger.warn("Failed to apply command configuration '{}'", file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CommandInvocation {
+    private static final String[] NO_ARGUMENTS = new String[0];
+
+    private final String channel;
+    private final String user;
+    private final String message;
+    private final int commandEnd;
+    private String[] arguments;
+
+    public CommandInvocation(String channel, String user, String message, int commandEnd) {
+        if (message == null) throw new IllegalArgumentException("message must not be null");
+        if (commandEnd < 0 || commandEnd > message.length()) throw new IllegalArgumentException("commandEnd is out of range");
+        this.channel = channel;
+        this.user = user;
+        this.message = message;
+        this.commandEnd = commandEnd;
+    }
+
+    public static int findCommandEnd(String message) {
+        int end = 0;
+        while (end < message.length() && !Character.isWhitespace(message.charAt(end))) end++;
+        return end;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getCommand() {
+        return message.substring(0, commandEnd);
+    }
+
+    public String getArgumentString() {
+        return message.substring(commandEnd).trim();
+    }
+
+    public String[] getArguments() {
+        if (arguments == null) arguments = splitArguments();
+        return arguments;
+    }
+
+    private String[] splitArguments() {
+        List<String> parts = null;
+        int length = message.length();
+        int index = commandEnd;
+        while (index < length) {
+            while (index < length && Character.isWhitespace(message.charAt(index))) index++;
+            int start = index;
+            while (index < length && !Character.isWhitespace(message.charAt(index))) index++;
+            if (index > start) {
+                if (parts == null) parts = new ArrayList<String>();
+                parts.add(message.substring(start, index));
+            }
+        }
+        return parts == null ? NO_ARGUMENTS : parts.toArray(new String[parts.size()]);
+    }
+}
@@ -24,71 +24,158 @@ import org.pircbotx.hooks.events.MessageEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-
 public class CommandListener extends ListenerAdapter {
     private static final Logger logger = LoggerFactory.getLogger(CommandListener.class);
-    private static final CommandThrottler commandThrottler = buildCommandThrottler();
 
-    private static final String COMMAND_PREFIX  = "!";
-    private static final String TIME_COMMAND    = COMMAND_PREFIX + "time";
-    private static final String VERSION_COMMAND = COMMAND_PREFIX + "version";
+    public static final String COMMAND_PREFIX = "!";
+
+    private final CommandThrottler commandThrottler;
+    private final OutboundDispatcher outboundDispatcher;
+    private final BotMetrics metrics;
+    private final FloodDetector floodDetector;
+    private volatile Commands commands;
+
+    public CommandListener(OutboundDispatcher outboundDispatcher, BotMetrics metrics) {
+        this(buildCommandThrottler(), outboundDispatcher, metrics);
+    }
+
+    public CommandListener(CommandThrottler commandThrottler, OutboundDispatcher outboundDispatcher, BotMetrics metrics) {
+        this(buildCommandRegistry(), commandThrottler, outboundDispatcher, metrics);
+    }
+
+    public CommandListener(CommandRegistry commandRegistry, CommandThrottler commandThrottler,
+                           OutboundDispatcher outboundDispatcher, BotMetrics metrics) {
+        this(commandRegistry, commandThrottler, outboundDispatcher, metrics, null);
+    }
+
+    /**
+     * When a {@code floodDetector} is given, command messages from users it has flagged are dropped before lookup.
+     */
+    public CommandListener(CommandRegistry commandRegistry, CommandThrottler commandThrottler,
+                           OutboundDispatcher outboundDispatcher, BotMetrics metrics, FloodDetector floodDetector) {
+        if (commandRegistry == null) throw new IllegalArgumentException("commandRegistry must not be null");
+        if (commandThrottler == null) throw new IllegalArgumentException("commandThrottler must not be null");
+        if (outboundDispatcher == null) throw new IllegalArgumentException("outboundDispatcher must not be null");
+        if (metrics == null) throw new IllegalArgumentException("metrics must not be null");
+        this.commandThrottler = commandThrottler;
+        this.outboundDispatcher = outboundDispatcher;
+        this.metrics = metrics;
+        this.floodDetector = floodDetector;
+        commands = new Commands(commandRegistry, commandThrottler);
+    }
+
+    /**
+     * Switches to another set of commands. Reconfigure the throttler first, so new commands pick up their policies.
+     */
+    public void reconfigure(CommandRegistry commandRegistry) {
+        if (commandRegistry == null) throw new IllegalArgumentException("commandRegistry must not be null");
+        commands = new Commands(commandRegistry, commandThrottler);
+    }
 
     @Override
     public void onMessage(MessageEvent event) throws Exception {
-        if (!event.getMessage().startsWith(COMMAND_PREFIX)) return;
-
-        String message = event.getMessage();
-        String username = event.getUser().getNick();
-        logger.info("Received command message '{}' from '{}'", message, username);
-        
-        String command = message.split("\\s+")[0].toLowerCase();
-
-        if (command.equals(TIME_COMMAND)) {
-            logger.info("Recognized command '{}'", command);
-            if (commandThrottler.throttleCommand(command)) {
-                logger.info("Throttled command '{}'", command);
+        handleMessage(event.getChannel().getName(), event.getUser().getNick(), event.getMessage(), event.getTimestamp());
+    }
+
+    /**
+     * Handles a channel message that did not come from a live connection, such as one replayed from a journal.
+     */
+    public void handleMessage(final String channelName, final String username, String message, long timestamp) throws Exception {
+        metrics.messageSeen();
+        if (!message.startsWith(COMMAND_PREFIX)) return;
+
+        if (floodDetector != null && !floodDetector.allow(channelName, username)) {
+            metrics.commandFlooded();
+            return;
+        }
+        logger.debug("Received command message '{}' from '{}'", message, username);
+
+        Commands current = commands;
+        int commandEnd = CommandInvocation.findCommandEnd(message);
+        int commandIndex = current.registry.lookup(message, 0, commandEnd);
+        if (commandIndex == CommandRegistry.UNKNOWN_COMMAND) {
+            metrics.commandUnrecognized();
+            if (logger.isDebugEnabled()) logger.debug("Unrecognized command '{}'", message.substring(0, commandEnd));
+            return;
+        }
+
+        Command command = current.registry.getCommand(commandIndex);
+        final int throttleId = current.getThrottleId(commandIndex, command);
+        logger.debug("Recognized command '{}'", command.getName());
+        metrics.commandRecognized(command.getName());
+        if (!commandThrottler.tryAcquire(throttleId, channelName, username)) {
+            metrics.commandThrottled(command.getName());
+            logger.debug("Throttled command '{}'", command.getName());
+            return;
+        }
+
+        try {
+            CommandResponse response = command.execute(new CommandInvocation(channelName, username, message, commandEnd));
+            if (response == null) {
+                // A command that chose not to answer should not hold up the next request for it.
+                commandThrottler.release(throttleId, channelName, username);
             } else {
-                logger.info("Responding to command '{}'", command);
-                event.getChannel().send().message(getTimeString());
-                logger.info("Tracking usage of command '{}'", command);
-                commandThrottler.trackCommandUsage(command);
+                logger.info("Responding to command '{}' from '{}' in '{}'", command.getName(), username, channelName);
+                // A reply that is queued but never sent gives the claim back too.
+                Runnable releaseClaim = new Runnable() {
+                    @Override
+                    public void run() {
+                        commandThrottler.release(throttleId, channelName, username);
+                    }
+                };
+                if (outboundDispatcher.enqueue(channelName, response, OutboundPriority.NORMAL, timestamp, releaseClaim)) {
+                    metrics.commandAnswered(command.getName());
+                } else {
+                    logger.warn("Dropped response to command '{}' because the send queue is full", command.getName());
+                    commandThrottler.release(throttleId, channelName, username);
+                }
             }
-        } else if (command.equals(VERSION_COMMAND)) {
-            logger.info("Recognized command '{}'", command);
-            if (commandThrottler.throttleCommand(command)) {
-                logger.info("Throttled command '{}'", command);
-            } else {
-                logger.info("Responding to command '{}'", command);
-                event.getChannel().send().action(getVersionString());
-                logger.info("Tracking usage of command '{}'", command);
-                commandThrottler.trackCommandUsage(command);
+        } catch (Exception e) {
+            commandThrottler.release(throttleId, channelName, username);
+            throw e;
+        }
+    }
+
+    private static class Commands {
+        private final CommandRegistry registry;
+        private final CommandThrottler commandThrottler;
+        private final int[] throttleIds;
+
+        private Commands(CommandRegistry registry, CommandThrottler commandThrottler) {
+            this.registry = registry;
+            this.commandThrottler = commandThrottler;
+            throttleIds = new int[registry.getCommandCount()];
+            for (int commandIndex = 0; commandIndex < throttleIds.length; commandIndex++) {
+                throttleIds[commandIndex] = commandThrottler.getCommandId(registry.getCommand(commandIndex).getName());
             }
-        } else {
-            logger.info("Unrecognized command '{}'", command);
         }
+
+        private int getThrottleId(int commandIndex, Command command) {
+            if (commandIndex < throttleIds.length) return throttleIds[commandIndex];
+            return commandThrottler.getCommandId(command.getName());
+        }
+    }
+
+    public static CommandRegistry buildCommandRegistry() {
+        CommandRegistry registry = new CommandRegistry();
+        registry.register(new TimeCommand());
+        registry.register(new VersionCommand());
+        return registry;
     }
 
     private static CommandThrottler buildCommandThrottler() {
         return new CommandThrottler(buildCommandThrottlerConfiguration(), new SystemClock());
     }
 
-    private static CommandThrottlerConfiguration buildCommandThrottlerConfiguration() {
+    public static CommandThrottlerConfiguration buildCommandThrottlerConfiguration() {
         CommandThrottlerConfiguration configuration = new CommandThrottlerConfiguration();
-        configuration.addCommandThrottle(TIME_COMMAND, 10000l);
-        configuration.addCommandThrottle(VERSION_COMMAND, 10000l);
+        configuration.addCommandPolicy(TimeCommand.NAME, ThrottleScope.CHANNEL, ThrottlePolicy.cooldown(10000l));
+        configuration.addCommandPolicy(TimeCommand.NAME, ThrottleScope.USER, ThrottlePolicy.cooldown(30000l));
+        configuration.addCommandPolicy(VersionCommand.NAME, ThrottleScope.CHANNEL, ThrottlePolicy.cooldown(10000l));
+        configuration.addCommandPolicy(VersionCommand.NAME, ThrottleScope.USER, ThrottlePolicy.cooldown(30000l));
+        configuration.addCommandPolicy(TopCommand.NAME, ThrottleScope.CHANNEL, ThrottlePolicy.cooldown(30000l));
+        configuration.addCommandPolicy(StatsCommand.NAME, ThrottleScope.CHANNEL, ThrottlePolicy.cooldown(30000l));
+        configuration.addCommandPolicy(RemindCommand.NAME, ThrottleScope.USER, ThrottlePolicy.cooldown(10000l));
         return configuration;
     }
-
-    private String getTimeString() {
-        Date now = new Date();
-        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        return dateFormat.format(now);
-    }
-
-    private String getVersionString() {
-        return "v" + GweeBot.getVersion();
-    }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.Arrays;
+
+public class CommandRegistry {
+    public static final int UNKNOWN_COMMAND = -1;
+
+    private static final int INITIAL_TABLE_SIZE = 16;
+
+    private volatile Table table;
+
+    public CommandRegistry() {
+        table = new Table(new Command[0], new String[INITIAL_TABLE_SIZE], new int[INITIAL_TABLE_SIZE], 0);
+    }
+
+    public synchronized int register(Command command, String... aliases) {
+        if (command == null) throw new IllegalArgumentException("command must not be null");
+        Table current = table;
+        String[] names = new String[aliases.length + 1];
+        names[0] = command.getName();
+        System.arraycopy(aliases, 0, names, 1, aliases.length);
+        for (String name : names) {
+            if (name == null || name.isEmpty()) throw new IllegalArgumentException("command names must not be empty");
+            if (current.find(name, 0, name.length()) != UNKNOWN_COMMAND) {
+                throw new IllegalArgumentException("command name '" + name + "' is already registered");
+            }
+        }
+
+        int commandIndex = current.commands.length;
+        Command[] commands = Arrays.copyOf(current.commands, commandIndex + 1);
+        commands[commandIndex] = command;
+        int nameCount = current.nameCount + names.length;
+        int tableSize = current.keys.length;
+        while (nameCount * 2 > tableSize) tableSize *= 2;
+        Table next = new Table(commands, new String[tableSize], new int[tableSize], nameCount);
+        for (int slot = 0; slot < current.keys.length; slot++) {
+            if (current.keys[slot] != null) next.put(current.keys[slot], current.values[slot]);
+        }
+        for (String name : names) {
+            next.put(name, commandIndex);
+        }
+        table = next;
+        return commandIndex;
+    }
+
+    public int lookup(String message, int start, int end) {
+        return table.find(message, start, end);
+    }
+
+    public Command getCommand(int commandIndex) {
+        return table.commands[commandIndex];
+    }
+
+    public int getCommandCount() {
+        return table.commands.length;
+    }
+
+    private static int hash(String text, int start, int end) {
+        int hash = 0;
+        for (int index = start; index < end; index++) {
+            hash = 31 * hash + Character.toLowerCase(text.charAt(index));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static class Table {
+        private final Command[] commands;
+        private final String[] keys;
+        private final int[] values;
+        private final int nameCount;
+
+        private Table(Command[] commands, String[] keys, int[] values, int nameCount) {
+            this.commands = commands;
+            this.keys = keys;
+            this.values = values;
+            this.nameCount = nameCount;
+        }
+
+        private void put(String name, int commandIndex) {
+            int mask = keys.length - 1;
+            int slot = hash(name, 0, name.length()) & mask;
+            while (keys[slot] != null) slot = (slot + 1) & mask;
+            keys[slot] = name;
+            values[slot] = commandIndex;
+        }
+
+        private int find(String text, int start, int end) {
+            int length = end - start;
+            int mask = keys.length - 1;
+            int slot = hash(text, start, end) & mask;
+            String key;
+            while ((key = keys[slot]) != null) {
+                if (key.length() == length && key.regionMatches(true, 0, text, start, length)) return values[slot];
+                slot = (slot + 1) & mask;
+            }
+            return UNKNOWN_COMMAND;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+public class CommandResponse {
+    public enum Type {
+        MESSAGE,
+        ACTION
+    }
+
+    private final Type type;
+    private final String text;
+
+    public CommandResponse(Type type, String text) {
+        if (type == null) throw new IllegalArgumentException("type must not be null");
+        if (text == null) throw new IllegalArgumentException("text must not be null");
+        this.type = type;
+        this.text = text;
+    }
+
+    public static CommandResponse message(String text) {
+        return new CommandResponse(Type.MESSAGE, text);
+    }
+
+    public static CommandResponse action(String text) {
+        return new CommandResponse(Type.ACTION, text);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
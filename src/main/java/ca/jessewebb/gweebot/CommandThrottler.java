@@ -19,34 +19,234 @@
 
 package ca.jessewebb.gweebot;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Applies the throttle policies of a {@link CommandThrottlerConfiguration} to commands. The policies in use are one
+ * immutable snapshot behind a volatile field; {@link #reconfigure} publishes a new one in a single swap, so a check
+ * never sees a mix of old and new policies. A configuration must not be changed once it has been handed over.
+ */
 public class CommandThrottler {
-    private CommandThrottlerConfiguration configuration;
-    private EpochClock clock;
-    private ConcurrentMap<String, Long> history;
+    private final EpochClock clock;
+    private final ThrottleStore store;
+    private final long evictionIntervalMillis;
+    private final AtomicLong nextEviction;
+    private volatile Policies policies;
 
     public CommandThrottler(CommandThrottlerConfiguration configuration, EpochClock clock) {
+        this(configuration, clock, configuration == null ? null : new LocalThrottleStore(configuration));
+    }
+
+    public CommandThrottler(CommandThrottlerConfiguration configuration, EpochClock clock, ThrottleStore store) {
         if (configuration == null) throw new IllegalArgumentException("configuration must not be null");
         if (clock == null) throw new IllegalArgumentException("clock must not be null");
-        this.configuration = configuration;
+        if (store == null) throw new IllegalArgumentException("store must not be null");
         this.clock = clock;
-        history = new ConcurrentHashMap<String, Long>();
+        this.store = store;
+        policies = new Policies(configuration);
+        evictionIntervalMillis = configuration.getEvictionIntervalMillis();
+        nextEviction = new AtomicLong(clock.getCurrentEpochTimeMillis() + evictionIntervalMillis);
     }
 
-    public void trackCommandUsage(String command) {
+    /**
+     * Switches to new policies. The configuration has to keep the command ids of the current one (see
+     * {@link CommandThrottlerConfiguration#CommandThrottlerConfiguration(CommandThrottlerConfiguration)}), so running
+     * cooldowns carry over for every command that is still throttled.
+     */
+    public synchronized void reconfigure(CommandThrottlerConfiguration configuration) {
+        if (configuration == null) throw new IllegalArgumentException("configuration must not be null");
+        if (!configuration.keepsCommandIdsOf(policies.configuration)) {
+            throw new IllegalArgumentException("configuration must keep the command ids of the current configuration");
+        }
+        store.reconfigure(configuration);
+        policies = new Policies(configuration);
+    }
+
+    public CommandThrottlerConfiguration getConfiguration() {
+        return policies.configuration;
+    }
+
+    public int getCommandId(String command) {
         if (command == null) throw new IllegalArgumentException("command must not be null");
-        history.put(command, clock.getCurrentEpochTimeMillis());
+        return policies.configuration.getCommandId(command);
+    }
+
+    public void trackCommandUsage(String command) {
+        trackCommandUsage(getCommandId(command));
+    }
+
+    public void trackCommandUsage(int commandId) {
+        Policies current = policies;
+        if (!current.isKnown(commandId) || current.global[commandId] == null) return;
+        store.consume(commandId, ThrottleScope.GLOBAL, null, current.global[commandId], clock.getCurrentEpochTimeMillis());
+    }
+
+    public boolean tryAcquire(String command) {
+        return tryAcquire(getCommandId(command));
+    }
+
+    public boolean tryAcquire(int commandId) {
+        return tryAcquire(commandId, null, null);
+    }
+
+    public boolean tryAcquire(String command, String channel, String user) {
+        return tryAcquire(getCommandId(command), channel, user);
+    }
+
+    public boolean tryAcquire(int commandId, String channel, String user) {
+        Policies current = policies;
+        if (!current.isKnown(commandId)) return true;
+        long now = clock.getCurrentEpochTimeMillis();
+        evictExpiredIfDue(now);
+
+        ThrottlePolicy userPolicy = channel != null && user != null ? current.user[commandId] : null;
+        ThrottlePolicy channelPolicy = channel != null ? current.channel[commandId] : null;
+        ThrottlePolicy globalPolicy = current.global[commandId];
+        if (userPolicy == null && channelPolicy == null && globalPolicy == null) return true;
+        return store.tryAcquire(commandId, channel, user, userPolicy, channelPolicy, globalPolicy, now);
+    }
+
+    public void release(String command) {
+        release(getCommandId(command));
+    }
+
+    public void release(int commandId) {
+        release(commandId, null, null);
+    }
+
+    public void release(String command, String channel, String user) {
+        release(getCommandId(command), channel, user);
+    }
+
+    public void release(int commandId, String channel, String user) {
+        Policies current = policies;
+        if (!current.isKnown(commandId)) return;
+        ThrottlePolicy userPolicy = channel != null && user != null ? current.user[commandId] : null;
+        ThrottlePolicy channelPolicy = channel != null ? current.channel[commandId] : null;
+        ThrottlePolicy globalPolicy = current.global[commandId];
+        if (userPolicy == null && channelPolicy == null && globalPolicy == null) return;
+        store.refund(commandId, channel, user, userPolicy, channelPolicy, globalPolicy);
     }
 
     public boolean throttleCommand(String command) {
-        if (command == null) throw new IllegalArgumentException("command must not be null");
-        boolean throttle = false;
-        if (configuration.hasCommandThrottle(command) && history.containsKey(command)) {
-            long throttleUntil = history.get(command) + configuration.getCommandThrottle(command);
-            throttle = clock.getCurrentEpochTimeMillis() < throttleUntil;
+        return throttleCommand(getCommandId(command));
+    }
+
+    public boolean throttleCommand(int commandId) {
+        Policies current = policies;
+        if (!current.isKnown(commandId) || current.global[commandId] == null) return false;
+        long state = store.getState(commandId, ThrottleScope.GLOBAL, null);
+        return !current.global[commandId].allows(state, clock.getCurrentEpochTimeMillis());
+    }
+
+    public void evictExpired() {
+        Policies current = policies;
+        long now = clock.getCurrentEpochTimeMillis();
+        for (int commandId = 0; commandId < current.global.length; commandId++) {
+            if (current.channel[commandId] != null) store.evictIdle(commandId, ThrottleScope.CHANNEL, current.channel[commandId], now);
+            if (current.user[commandId] != null) store.evictIdle(commandId, ThrottleScope.USER, current.user[commandId], now);
+        }
+    }
+
+    public List<ThrottleStateEntry> exportState() {
+        Policies current = policies;
+        long now = clock.getCurrentEpochTimeMillis();
+        List<ThrottleStateEntry> entries = new ArrayList<ThrottleStateEntry>();
+        for (int commandId = 0; commandId < current.global.length; commandId++) {
+            String command = current.configuration.getCommand(commandId);
+            if (current.global[commandId] != null) {
+                long state = store.getState(commandId, ThrottleScope.GLOBAL, null);
+                if (!current.global[commandId].isIdle(state, now)) {
+                    entries.add(new ThrottleStateEntry(command, ThrottleScope.GLOBAL, null, null, state));
+                }
+            }
+            if (current.channel[commandId] != null) {
+                for (Map.Entry<String, Long> state : store.getStates(commandId, ThrottleScope.CHANNEL).entrySet()) {
+                    if (current.channel[commandId].isIdle(state.getValue(), now)) continue;
+                    entries.add(new ThrottleStateEntry(command, ThrottleScope.CHANNEL, state.getKey(), null, state.getValue()));
+                }
+            }
+            if (current.user[commandId] != null) {
+                for (Map.Entry<String, Long> state : store.getStates(commandId, ThrottleScope.USER).entrySet()) {
+                    if (current.user[commandId].isIdle(state.getValue(), now)) continue;
+                    String userKey = state.getKey();
+                    int separator = userKey.indexOf(' ');
+                    entries.add(new ThrottleStateEntry(command, ThrottleScope.USER, userKey.substring(0, separator),
+                            userKey.substring(separator + 1), state.getValue()));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Merges a previously exported entry into the current state, keeping whichever cooldown ends later. Entries for
+     * commands or scopes that are no longer throttled, and entries that have already expired, are ignored.
+     */
+    public boolean restoreState(ThrottleStateEntry entry) {
+        if (entry == null) throw new IllegalArgumentException("entry must not be null");
+        Policies current = policies;
+        int commandId = current.configuration.getCommandId(entry.getCommand());
+        if (!current.isKnown(commandId)) return false;
+        ThrottlePolicy policy;
+        String key;
+        switch (entry.getScope()) {
+            case GLOBAL:
+                policy = current.global[commandId];
+                key = null;
+                break;
+            case CHANNEL:
+                policy = current.channel[commandId];
+                key = entry.getChannel();
+                break;
+            default:
+                policy = current.user[commandId];
+                key = getUserKey(entry.getChannel(), entry.getUser());
+                break;
+        }
+        if (policy == null || policy.isIdle(entry.getState(), clock.getCurrentEpochTimeMillis())) return false;
+        store.restoreState(commandId, entry.getScope(), key, entry.getState());
+        return true;
+    }
+
+    public int getTrackedKeyCount() {
+        return store.getTrackedKeyCount();
+    }
+
+    private void evictExpiredIfDue(long now) {
+        long due = nextEviction.get();
+        if (now < due || !nextEviction.compareAndSet(due, now + evictionIntervalMillis)) return;
+        evictExpired();
+    }
+
+    static String getUserKey(String channel, String user) {
+        return channel + ' ' + user;
+    }
+
+    private static class Policies {
+        private final CommandThrottlerConfiguration configuration;
+        private final ThrottlePolicy[] global;
+        private final ThrottlePolicy[] channel;
+        private final ThrottlePolicy[] user;
+
+        private Policies(CommandThrottlerConfiguration configuration) {
+            this.configuration = configuration;
+            int commandCount = configuration.getCommandCount();
+            global = new ThrottlePolicy[commandCount];
+            channel = new ThrottlePolicy[commandCount];
+            user = new ThrottlePolicy[commandCount];
+            for (int commandId = 0; commandId < commandCount; commandId++) {
+                global[commandId] = configuration.getCommandPolicy(commandId, ThrottleScope.GLOBAL);
+                channel[commandId] = configuration.getCommandPolicy(commandId, ThrottleScope.CHANNEL);
+                user[commandId] = configuration.getCommandPolicy(commandId, ThrottleScope.USER);
+            }
+        }
+
+        private boolean isKnown(int commandId) {
+            return commandId >= 0 && commandId < global.length;
         }
-        return throttle;
     }
 }
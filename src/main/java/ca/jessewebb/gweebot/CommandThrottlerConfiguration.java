@@ -19,25 +19,116 @@
 
 package ca.jessewebb.gweebot;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public class CommandThrottlerConfiguration {
-    private Map<String, Long> commandThrottles;
+    public static final int UNKNOWN_COMMAND_ID = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long DEFAULT_EVICTION_INTERVAL_MILLIS = 60000l;
+
+    private Map<String, Integer> commandIds;
+    private String[] commands;
+    private ThrottlePolicy[][] commandPolicies;
+    private int commandCount;
+    private long evictionIntervalMillis;
 
     public CommandThrottlerConfiguration() {
-        commandThrottles = new HashMap<String, Long>();
+        commandIds = new HashMap<String, Integer>();
+        commands = new String[INITIAL_CAPACITY];
+        commandPolicies = new ThrottlePolicy[INITIAL_CAPACITY][];
+        evictionIntervalMillis = DEFAULT_EVICTION_INTERVAL_MILLIS;
+    }
+
+    /**
+     * Starts a configuration that gives every command of {@code previous} the same id, without any of its policies,
+     * so a {@link CommandThrottler} can switch to it and keep the state of commands that are still throttled.
+     */
+    public CommandThrottlerConfiguration(CommandThrottlerConfiguration previous) {
+        this();
+        if (previous == null) throw new IllegalArgumentException("previous must not be null");
+        for (int commandId = 0; commandId < previous.getCommandCount(); commandId++) {
+            internCommand(previous.getCommand(commandId));
+        }
+        evictionIntervalMillis = previous.getEvictionIntervalMillis();
     }
 
     public void addCommandThrottle(String command, long throttleMillis) {
-        commandThrottles.put(command, throttleMillis);
+        addCommandPolicy(command, ThrottleScope.GLOBAL, ThrottlePolicy.cooldown(throttleMillis));
+    }
+
+    public void addCommandPolicy(String command, ThrottleScope scope, ThrottlePolicy policy) {
+        if (command == null) throw new IllegalArgumentException("command must not be null");
+        if (scope == null) throw new IllegalArgumentException("scope must not be null");
+        if (policy == null) throw new IllegalArgumentException("policy must not be null");
+        commandPolicies[internCommand(command)][scope.ordinal()] = policy;
     }
 
     public boolean hasCommandThrottle(String command) {
-        return commandThrottles.containsKey(command);
+        return commandIds.containsKey(command);
     }
 
     public long getCommandThrottle(String command) {
-        return commandThrottles.get(command);
+        return getCommandThrottle(commandIds.get(command));
+    }
+
+    public int getCommandId(String command) {
+        Integer commandId = commandIds.get(command);
+        return commandId == null ? UNKNOWN_COMMAND_ID : commandId;
+    }
+
+    public String getCommand(int commandId) {
+        return commands[commandId];
+    }
+
+    public long getCommandThrottle(int commandId) {
+        ThrottlePolicy policy = getCommandPolicy(commandId, ThrottleScope.GLOBAL);
+        return policy == null ? 0l : policy.getRefillMillis();
+    }
+
+    public ThrottlePolicy getCommandPolicy(int commandId, ThrottleScope scope) {
+        return commandPolicies[commandId][scope.ordinal()];
+    }
+
+    public int getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * Whether every command of {@code previous} has the same id here.
+     */
+    public boolean keepsCommandIdsOf(CommandThrottlerConfiguration previous) {
+        if (previous == null) throw new IllegalArgumentException("previous must not be null");
+        if (previous.getCommandCount() > commandCount) return false;
+        for (int commandId = 0; commandId < previous.getCommandCount(); commandId++) {
+            if (!commands[commandId].equals(previous.getCommand(commandId))) return false;
+        }
+        return true;
+    }
+
+    public long getEvictionIntervalMillis() {
+        return evictionIntervalMillis;
+    }
+
+    public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+        if (evictionIntervalMillis <= 0) throw new IllegalArgumentException("evictionIntervalMillis must be positive");
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    private int internCommand(String command) {
+        Integer commandId = commandIds.get(command);
+        if (commandId == null) {
+            if (commandCount == commands.length) {
+                commands = Arrays.copyOf(commands, commandCount * 2);
+                commandPolicies = Arrays.copyOf(commandPolicies, commandCount * 2);
+            }
+            commandId = commandCount++;
+            commandIds.put(command, commandId);
+            commands[commandId] = command;
+            commandPolicies[commandId] = new ThrottlePolicy[ThrottleScope.values().length];
+        }
+        return commandId;
     }
 }
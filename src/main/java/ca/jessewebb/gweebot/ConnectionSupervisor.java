@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.pircbotx.PircBotX;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps every bot connected. Each bot runs on its own thread, and when its connection drops or cannot be made it is
+ * started again after a {@link ReconnectBackoff} delay. The same bot instance is reused, so its listeners and
+ * everything they hold (throttle state, analytics, queued replies) carry over, and it logs in again with the
+ * credentials it was configured with. The backoff starts over once a connection has stayed up for
+ * {@code stableMillis}.
+ */
+public class ConnectionSupervisor {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionSupervisor.class);
+
+    private final ReconnectBackoff backoff;
+    private final long stableMillis;
+    private final EpochClock clock;
+    private final BotMetrics metrics;
+    private final List<PircBotX> bots;
+    private final List<Thread> threads;
+
+    private volatile boolean running;
+
+    public ConnectionSupervisor(ReconnectBackoff backoff, long stableMillis, EpochClock clock, BotMetrics metrics) {
+        if (backoff == null) throw new IllegalArgumentException("backoff must not be null");
+        if (stableMillis < 0) throw new IllegalArgumentException("stableMillis must not be negative");
+        if (clock == null) throw new IllegalArgumentException("clock must not be null");
+        if (metrics == null) throw new IllegalArgumentException("metrics must not be null");
+        this.backoff = backoff;
+        this.stableMillis = stableMillis;
+        this.clock = clock;
+        this.metrics = metrics;
+        bots = new ArrayList<PircBotX>();
+        threads = new ArrayList<Thread>();
+    }
+
+    public synchronized void addBot(PircBotX bot) {
+        if (bot == null) throw new IllegalArgumentException("bot must not be null");
+        if (running) throw new IllegalStateException("bots must be added before the supervisor is started");
+        bots.add(bot);
+    }
+
+    public synchronized List<PircBotX> getBots() {
+        return new ArrayList<PircBotX>(bots);
+    }
+
+    public synchronized int getConnectedCount() {
+        int connected = 0;
+        for (PircBotX bot : bots) {
+            if (bot.isConnected()) connected++;
+        }
+        return connected;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        for (int connection = 0; connection < bots.size(); connection++) {
+            final PircBotX bot = bots.get(connection);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    superviseBot(bot);
+                }
+            }, "connection-" + connection);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Disconnects every bot and stops reconnecting them.
+     */
+    public synchronized void stop() {
+        running = false;
+        for (PircBotX bot : bots) {
+            bot.stopBotReconnect();
+            if (bot.isConnected()) bot.sendIRC().quitServer();
+        }
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    public void stopAndWait() throws InterruptedException {
+        stop();
+        List<Thread> stopping;
+        synchronized (this) {
+            stopping = new ArrayList<Thread>(threads);
+        }
+        for (Thread thread : stopping) {
+            thread.join();
+        }
+    }
+
+    private void superviseBot(PircBotX bot) {
+        int attempt = 0;
+        while (running) {
+            long connectedAt = clock.getCurrentEpochTimeMillis();
+            boolean connected = false;
+            try {
+                bot.startBot();
+                connected = true;
+            } catch (Exception e) {
+                if (running) logger.warn("Connection attempt {} of bot {} failed", attempt + 1, bot.getBotId(), e);
+            }
+            if (!running) return;
+            if (connected) metrics.connectionLost();
+            else metrics.connectionAttemptFailed();
+            if (connected && clock.getCurrentEpochTimeMillis() - connectedAt >= stableMillis) attempt = 0;
+            long delayMillis = backoff.getDelayMillis(attempt);
+            logger.info("Reconnecting bot {} in {}ms", bot.getBotId(), delayMillis);
+            attempt++;
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
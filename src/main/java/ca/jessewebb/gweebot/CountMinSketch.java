@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.Arrays;
+
+/**
+ * Estimates how often each item was added using {@code depth} rows of {@code width} counters. Estimates never
+ * undercount and overcount by at most a small fraction of the total added; items are given as 64-bit hashes.
+ */
+public class CountMinSketch {
+    private final int width;
+    private final int depth;
+    private final int[] counters;
+
+    public CountMinSketch(int width, int depth) {
+        if (width < 1 || Integer.bitCount(width) != 1) throw new IllegalArgumentException("width must be a power of two");
+        if (depth < 1) throw new IllegalArgumentException("depth must be positive");
+        this.width = width;
+        this.depth = depth;
+        counters = new int[width * depth];
+    }
+
+    public long add(long hash) {
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = row * width + ((first + row * second) & (width - 1));
+            int count = ++counters[index];
+            if (count < estimate) estimate = count;
+        }
+        return estimate;
+    }
+
+    public long estimate(long hash) {
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int count = counters[row * width + ((first + row * second) & (width - 1))];
+            if (count < estimate) estimate = count;
+        }
+        return estimate;
+    }
+
+    public void clear() {
+        Arrays.fill(counters, 0);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.pircbotx.hooks.ListenerAdapter;
+import org.pircbotx.hooks.events.MessageEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends channel messages and sent replies to a binary journal that {@link EventJournalReader} can read back. The
+ * file starts with a header (magic, version) followed by one record per event: the record length, the event type,
+ * its timestamp and the channel, user and text as length-prefixed UTF-8. Callers only enqueue; a single journal
+ * thread drains the queue in batches and writes each batch with one {@link FileChannel} write. When the queue is
+ * full, events are left out of the journal rather than slowing the caller down.
+ */
+public class EventJournal extends ListenerAdapter implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(EventJournal.class);
+
+    static final int MAGIC = 0x47574a4c;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 + 4;
+    static final int MAX_STRING_LENGTH = 0xffff;
+    static final int MAX_RECORD_SIZE = 1 + 8 + 3 * (2 + MAX_STRING_LENGTH);
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final long POLL_MILLIS = 100l;
+
+    private final File file;
+    private final BlockingQueue<JournalEvent> queue;
+    private final AtomicLong writtenCount;
+    private final AtomicLong droppedCount;
+    private final ByteBuffer buffer;
+
+    private volatile boolean running;
+    private RandomAccessFile output;
+    private FileChannel channel;
+    private Thread thread;
+
+    public EventJournal(File file, int queueCapacity) {
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity must be positive");
+        this.file = file;
+        queue = new ArrayBlockingQueue<JournalEvent>(queueCapacity);
+        writtenCount = new AtomicLong();
+        droppedCount = new AtomicLong();
+        buffer = ByteBuffer.allocateDirect(4 * (4 + MAX_RECORD_SIZE));
+    }
+
+    @Override
+    public void onMessage(MessageEvent event) {
+        recordMessage(event.getChannel().getName(), event.getUser().getNick(), event.getMessage(), event.getTimestamp());
+    }
+
+    public boolean recordMessage(String channel, String user, String message, long timestamp) {
+        return record(JournalEvent.message(channel, user, message, timestamp));
+    }
+
+    public boolean recordReply(String channel, CommandResponse response, long timestamp) {
+        return record(JournalEvent.reply(channel, response, timestamp));
+    }
+
+    public boolean record(JournalEvent event) {
+        if (event == null) throw new IllegalArgumentException("event must not be null");
+        if (running && queue.offer(event)) return true;
+        droppedCount.incrementAndGet();
+        return false;
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Opens the journal, appending to it when it already exists, and starts the journal thread.
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) return;
+        output = new RandomAccessFile(file, "rw");
+        channel = output.getChannel();
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                while (header.hasRemaining()) channel.write(header);
+            } else {
+                EventJournalReader.checkHeader(channel, file);
+            }
+            channel.position(channel.size());
+        } catch (IOException e) {
+            output.close();
+            throw e;
+        }
+        running = true;
+        thread = new Thread(this, "event-journal");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops accepting events, writes the ones already queued and closes the journal.
+     */
+    public void shutdown() throws InterruptedException {
+        Thread journalThread;
+        synchronized (this) {
+            running = false;
+            journalThread = thread;
+            thread = null;
+        }
+        if (journalThread != null) journalThread.join();
+    }
+
+    @Override
+    public void run() {
+        List<JournalEvent> batch = new ArrayList<JournalEvent>(MAX_BATCH_SIZE);
+        try {
+            while (true) {
+                JournalEvent event;
+                try {
+                    event = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    event = queue.poll();
+                    running = false;
+                }
+                if (event == null) {
+                    if (!running) break;
+                    continue;
+                }
+                batch.add(event);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                writeBatch(batch);
+                batch.clear();
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            running = false;
+            logger.error("Failed to write event journal '{}', journaling stopped", file, e);
+        } finally {
+            try {
+                output.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close event journal '{}'", file, e);
+            }
+        }
+    }
+
+    private void writeBatch(List<JournalEvent> batch) throws IOException {
+        buffer.clear();
+        for (JournalEvent event : batch) {
+            byte[] channelBytes = encode(event.getChannel());
+            byte[] userBytes = encode(event.getUser());
+            byte[] textBytes = encode(event.getText());
+            if (channelBytes.length > MAX_STRING_LENGTH || userBytes.length > MAX_STRING_LENGTH
+                    || textBytes.length > MAX_STRING_LENGTH) {
+                droppedCount.incrementAndGet();
+                continue;
+            }
+            int length = 1 + 8 + 2 + channelBytes.length + 2 + userBytes.length + 2 + textBytes.length;
+            if (buffer.remaining() < 4 + length) flush();
+            buffer.putInt(length);
+            buffer.put((byte) event.getType().ordinal());
+            buffer.putLong(event.getTimestamp());
+            buffer.putShort((short) channelBytes.length).put(channelBytes);
+            buffer.putShort((short) userBytes.length).put(userBytes);
+            buffer.putShort((short) textBytes.length).put(textBytes);
+            writtenCount.incrementAndGet();
+        }
+        flush();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    private static byte[] encode(String value) {
+        if (value == null) return new byte[0];
+        return value.getBytes(UTF_8);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the events written by {@link EventJournal} in order. A record cut short at the end of the file, as left by a
+ * crash mid-write, ends the journal instead of failing the read.
+ */
+public class EventJournalReader implements Closeable {
+    private final File file;
+    private final FileInputStream input;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private boolean endOfFile;
+    private boolean truncated;
+
+    public EventJournalReader(File file) throws IOException {
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        this.file = file;
+        input = new FileInputStream(file);
+        channel = input.getChannel();
+        try {
+            checkHeader(channel, file);
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+        buffer = ByteBuffer.allocate(4 * (4 + EventJournal.MAX_RECORD_SIZE));
+        buffer.flip();
+    }
+
+    /**
+     * Returns the next event, or null once the journal has been read to the end.
+     */
+    public JournalEvent next() throws IOException {
+        if (!ensureAvailable(4)) return null;
+        int length = buffer.getInt();
+        if (length < 1 + 8 + 3 * 2 || length > EventJournal.MAX_RECORD_SIZE) {
+            throw new IOException("Corrupt record length " + length + " in event journal '" + file + "'");
+        }
+        if (!ensureAvailable(length)) return null;
+        int type = buffer.get();
+        JournalEvent.Type[] types = JournalEvent.Type.values();
+        if (type < 0 || type >= types.length) throw new IOException("Unknown event type " + type + " in event journal '" + file + "'");
+        long timestamp = buffer.getLong();
+        String channelName = decode(buffer);
+        String user = decode(buffer);
+        String text = decode(buffer);
+        if (channelName == null) throw new IOException("Event without a channel in event journal '" + file + "'");
+        return new JournalEvent(types[type], timestamp, channelName, user, text == null ? "" : text);
+    }
+
+    /**
+     * Whether reading stopped at a partially written record.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    static void checkHeader(FileChannel channel, File file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(EventJournal.HEADER_SIZE);
+        channel.position(0);
+        while (header.hasRemaining() && channel.read(header) >= 0) ;
+        header.flip();
+        if (header.remaining() < EventJournal.HEADER_SIZE || header.getInt() != EventJournal.MAGIC) {
+            throw new IOException("Not an event journal '" + file + "'");
+        }
+        int version = header.getInt();
+        if (version != EventJournal.VERSION) {
+            throw new IOException("Unsupported event journal version " + version + " in '" + file + "'");
+        }
+    }
+
+    private boolean ensureAvailable(int byteCount) throws IOException {
+        while (buffer.remaining() < byteCount) {
+            if (endOfFile) {
+                truncated = buffer.hasRemaining();
+                return false;
+            }
+            buffer.compact();
+            if (channel.read(buffer) < 0) endOfFile = true;
+            buffer.flip();
+        }
+        return true;
+    }
+
+    private static String decode(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xffff;
+        if (length == 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, EventJournal.UTF_8);
+    }
+}
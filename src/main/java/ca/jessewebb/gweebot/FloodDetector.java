@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flags users who send more than {@code maxMessages} commands in a channel within a rolling {@code windowMillis}
+ * window, and rejects their commands for {@code penaltyMillis}. Each user is counted in a fixed ring of buckets, so
+ * a check is constant time; idle users are evicted periodically and at most {@code maxTrackedUsers} are tracked.
+ * Once that many are tracked, commands from new users are allowed without being counted, so those users are never
+ * flagged until idle users are evicted to make room.
+ */
+public class FloodDetector {
+    private static final Logger logger = LoggerFactory.getLogger(FloodDetector.class);
+
+    private final EpochClock clock;
+    private final OutboundDispatcher outboundDispatcher;
+    private final long bucketMillis;
+    private final int bucketCount;
+    private final int maxMessages;
+    private final long penaltyMillis;
+    private final int maxTrackedUsers;
+    private final long evictionIntervalMillis;
+    private final int timeoutSeconds;
+
+    private final ConcurrentMap<String, UserCounter> counters;
+    private final AtomicLong nextEviction;
+    private final AtomicLong nextCapEviction;
+    private final AtomicLong rejectedCount;
+    private final AtomicLong flaggedCount;
+    private final AtomicLong untrackedCount;
+
+    public FloodDetector(FloodDetectorConfiguration configuration, EpochClock clock) {
+        this(configuration, clock, null);
+    }
+
+    /**
+     * With an {@code outboundDispatcher} and a positive {@code timeoutSeconds}, flagged users are also timed out.
+     */
+    public FloodDetector(FloodDetectorConfiguration configuration, EpochClock clock, OutboundDispatcher outboundDispatcher) {
+        if (configuration == null) throw new IllegalArgumentException("configuration must not be null");
+        if (clock == null) throw new IllegalArgumentException("clock must not be null");
+        this.clock = clock;
+        this.outboundDispatcher = outboundDispatcher;
+        bucketCount = configuration.getBucketCount();
+        bucketMillis = Math.max(1l, configuration.getWindowMillis() / bucketCount);
+        maxMessages = configuration.getMaxMessages();
+        penaltyMillis = configuration.getPenaltyMillis();
+        maxTrackedUsers = configuration.getMaxTrackedUsers();
+        evictionIntervalMillis = configuration.getEvictionIntervalMillis();
+        timeoutSeconds = configuration.getTimeoutSeconds();
+        counters = new ConcurrentHashMap<String, UserCounter>();
+        nextEviction = new AtomicLong(clock.getCurrentEpochTimeMillis() + evictionIntervalMillis);
+        nextCapEviction = new AtomicLong(Long.MIN_VALUE);
+        rejectedCount = new AtomicLong();
+        flaggedCount = new AtomicLong();
+        untrackedCount = new AtomicLong();
+    }
+
+    public boolean allow(String channel, String user) {
+        if (channel == null) throw new IllegalArgumentException("channel must not be null");
+        if (user == null) throw new IllegalArgumentException("user must not be null");
+        long now = clock.getCurrentEpochTimeMillis();
+        evictIdleIfDue(now);
+
+        String key = channel + ' ' + user;
+        UserCounter counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() >= maxTrackedUsers) {
+                evictIdleAtCapIfDue(now);
+                if (counters.size() >= maxTrackedUsers) {
+                    untrackedCount.incrementAndGet();
+                    return true;
+                }
+            }
+            UserCounter newCounter = new UserCounter(bucketCount);
+            counter = counters.putIfAbsent(key, newCounter);
+            if (counter == null) counter = newCounter;
+        }
+
+        boolean flagged;
+        synchronized (counter) {
+            if (now < counter.flaggedUntil) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+            flagged = counter.record(now / bucketMillis) > maxMessages;
+            if (flagged) counter.flaggedUntil = now + penaltyMillis;
+        }
+        if (!flagged) return true;
+
+        flaggedCount.incrementAndGet();
+        rejectedCount.incrementAndGet();
+        logger.info("Ignoring commands from '{}' in '{}' for {}ms for flooding", user, channel, penaltyMillis);
+        if (outboundDispatcher != null && timeoutSeconds > 0) {
+            CommandResponse timeout = CommandResponse.message("/timeout " + user + " " + timeoutSeconds);
+            outboundDispatcher.enqueue(channel, timeout, OutboundPriority.HIGH, now);
+        }
+        return false;
+    }
+
+    public void evictIdle() {
+        evictIdle(clock.getCurrentEpochTimeMillis());
+    }
+
+    public int getTrackedUserCount() {
+        return counters.size();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getFlaggedCount() {
+        return flaggedCount.get();
+    }
+
+    public long getUntrackedCount() {
+        return untrackedCount.get();
+    }
+
+    private void evictIdleIfDue(long now) {
+        long due = nextEviction.get();
+        if (now < due || !nextEviction.compareAndSet(due, now + evictionIntervalMillis)) return;
+        evictIdle(now);
+    }
+
+    // Users only go idle as buckets roll over, so scanning for room more than once per bucket can't free any more.
+    private void evictIdleAtCapIfDue(long now) {
+        long due = nextCapEviction.get();
+        if (now < due || !nextCapEviction.compareAndSet(due, now + bucketMillis)) return;
+        evictIdle(now);
+    }
+
+    private void evictIdle(long now) {
+        long currentBucket = now / bucketMillis;
+        for (Map.Entry<String, UserCounter> entry : counters.entrySet()) {
+            UserCounter counter = entry.getValue();
+            synchronized (counter) {
+                if (now < counter.flaggedUntil || counter.lastBucket > currentBucket - bucketCount) continue;
+            }
+            counters.remove(entry.getKey(), counter);
+        }
+    }
+
+    private static class UserCounter {
+        private final int[] buckets;
+        private long lastBucket;
+        private int total;
+        private long flaggedUntil;
+
+        private UserCounter(int bucketCount) {
+            buckets = new int[bucketCount];
+            lastBucket = Long.MIN_VALUE;
+        }
+
+        // Clears the buckets that rolled out of the window since the last message, then counts this one.
+        private int record(long bucket) {
+            if (lastBucket == Long.MIN_VALUE || bucket - lastBucket >= buckets.length) {
+                for (int index = 0; index < buckets.length; index++) buckets[index] = 0;
+                total = 0;
+            } else {
+                for (long expired = lastBucket + 1; expired <= bucket; expired++) {
+                    int index = (int) (expired % buckets.length);
+                    total -= buckets[index];
+                    buckets[index] = 0;
+                }
+            }
+            if (bucket > lastBucket) lastBucket = bucket;
+            buckets[(int) (lastBucket % buckets.length)]++;
+            return ++total;
+        }
+    }
+}
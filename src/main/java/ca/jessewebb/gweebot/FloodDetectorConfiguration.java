@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+public class FloodDetectorConfiguration {
+    private long windowMillis;
+    private int bucketCount;
+    private int maxMessages;
+    private long penaltyMillis;
+    private int maxTrackedUsers;
+    private long evictionIntervalMillis;
+    private int timeoutSeconds;
+
+    public FloodDetectorConfiguration() {
+        windowMillis = 10000l;
+        bucketCount = 5;
+        maxMessages = 6;
+        penaltyMillis = 60000l;
+        maxTrackedUsers = 50000;
+        evictionIntervalMillis = 30000l;
+        timeoutSeconds = 0;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        if (windowMillis <= 0) throw new IllegalArgumentException("windowMillis must be positive");
+        this.windowMillis = windowMillis;
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    public void setBucketCount(int bucketCount) {
+        if (bucketCount < 1) throw new IllegalArgumentException("bucketCount must be at least 1");
+        this.bucketCount = bucketCount;
+    }
+
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    public void setMaxMessages(int maxMessages) {
+        if (maxMessages < 1) throw new IllegalArgumentException("maxMessages must be at least 1");
+        this.maxMessages = maxMessages;
+    }
+
+    public long getPenaltyMillis() {
+        return penaltyMillis;
+    }
+
+    public void setPenaltyMillis(long penaltyMillis) {
+        if (penaltyMillis < 0) throw new IllegalArgumentException("penaltyMillis must not be negative");
+        this.penaltyMillis = penaltyMillis;
+    }
+
+    public int getMaxTrackedUsers() {
+        return maxTrackedUsers;
+    }
+
+    public void setMaxTrackedUsers(int maxTrackedUsers) {
+        if (maxTrackedUsers < 1) throw new IllegalArgumentException("maxTrackedUsers must be at least 1");
+        this.maxTrackedUsers = maxTrackedUsers;
+    }
+
+    public long getEvictionIntervalMillis() {
+        return evictionIntervalMillis;
+    }
+
+    public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+        if (evictionIntervalMillis <= 0) throw new IllegalArgumentException("evictionIntervalMillis must be positive");
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    public void setTimeoutSeconds(int timeoutSeconds) {
+        if (timeoutSeconds < 0) throw new IllegalArgumentException("timeoutSeconds must not be negative");
+        this.timeoutSeconds = timeoutSeconds;
+    }
+}
@@ -20,22 +20,32 @@
 package ca.jessewebb.gweebot;
 
 import org.apache.commons.cli.*;
+import org.apache.log4j.LogManager;
 import org.pircbotx.Configuration;
 import org.pircbotx.PircBotX;
-import org.pircbotx.hooks.managers.ListenerManager;
-import org.pircbotx.hooks.managers.ThreadedListenerManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
 import java.io.Console;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 public class GweeBot {
     private static final Logger logger = LoggerFactory.getLogger(GweeBot.class);
 
     public static void main(String[] args) {
+        addLoggingShutdownHook();
         logger.info("GweeBot v" + getVersion());
 
         CommandLine commandLine = parseCommandLineArgs(args);
@@ -47,25 +57,110 @@ public class GweeBot {
 
         Properties properties = loadPropertiesFile("/gweebot.properties");
 
-        String botName = properties.getProperty("botname");
-        String hostname = properties.getProperty("hostname");
-        String port = properties.getProperty("port");
-        String channel = properties.getProperty("channel");
-
         String password;
         if (commandLine.hasOption("p")) {
             logger.info("Using password from command line options");
             password = commandLine.getOptionValue("p");
         } else {
-            password = getPasswordFromConsole(botName);
+            password = getPasswordFromConsole(properties.getProperty("botname"));
         }
 
-        logger.info("Connecting GweeBot as '" + botName + "' to '" + hostname + ":" + port + channel + "'");
-        PircBotX bot = buildBot(botName, hostname, port, channel, password);
-        startBot(bot);
+        start(properties, password, Collections.<Command>emptyList());
+    }
+
+    /**
+     * Builds and connects the bots described by {@code properties}. The {@code extraCommands} are registered on every
+     * connection next to the built-in ones. Dropped connections are reconnected with the same {@code password} until the
+     * returned supervisor is stopped.
+     */
+    public static ConnectionSupervisor start(Properties properties, String password, List<Command> extraCommands) {
+        if (properties == null) throw new IllegalArgumentException("properties must not be null");
+        if (extraCommands == null) throw new IllegalArgumentException("extraCommands must not be null");
+        String botName = properties.getProperty("botname");
+        String hostname = properties.getProperty("hostname");
+        String port = properties.getProperty("port");
+        long messageDelayMillis = Long.parseLong(properties.getProperty("send.message.delay.millis", "1000"));
+        List<String> channels = getChannels(properties);
+        int channelsPerConnection = Integer.parseInt(properties.getProperty("connection.channels", "50"));
+
+        OutboundDispatcherConfiguration dispatcherConfiguration = buildOutboundDispatcherConfiguration(properties);
+        ChatPrefilter prefilter = buildChatPrefilter(properties);
+
+        BotMetrics metrics = new BotMetrics();
+        ChatAnalytics analytics = buildChatAnalytics(properties, prefilter);
+        EventJournal journal = startEventJournal(properties);
+        MessageScheduler scheduler = startMessageScheduler(properties);
+        List<Command> commands = new ArrayList<Command>(extraCommands);
+        if (scheduler != null && Boolean.parseBoolean(properties.getProperty("reminders.enabled", "false"))) {
+            commands.add(new RemindCommand(scheduler, Integer.parseInt(properties.getProperty("reminders.max.pending", "100000"))));
+        }
+        CommandConfiguration commandConfiguration = loadCommandConfiguration(properties);
+        CommandThrottlerConfiguration throttlerConfiguration = commandConfiguration == null
+                ? CommandListener.buildCommandThrottlerConfiguration() : commandConfiguration.buildThrottlerConfiguration(null);
+
+        startThrottleStoreServer(properties);
+
+        ChannelShardRing shardRing = new ChannelShardRing(ChannelShardRing.getShardCount(channels.size(), channelsPerConnection));
+        List<List<String>> assignment = shardRing.assign(channels, channelsPerConnection);
+        ConnectionSupervisor supervisor = buildConnectionSupervisor(properties, metrics);
+        ChannelJoiner channelJoiner = buildChannelJoiner(properties);
+        List<BoundedListenerManager> listenerManagers = new ArrayList<BoundedListenerManager>();
+        List<OutboundDispatcher> outboundDispatchers = new ArrayList<OutboundDispatcher>();
+        List<CommandThrottler> commandThrottlers = new ArrayList<CommandThrottler>();
+        List<CommandListener> commandListeners = new ArrayList<CommandListener>();
+        List<FloodDetector> floodDetectors = new ArrayList<FloodDetector>();
+        Map<String, CommandThrottler> channelThrottlers = new HashMap<String, CommandThrottler>();
+        for (int connection = 0; connection < assignment.size(); connection++) {
+            List<String> connectionChannels = assignment.get(connection);
+            if (connectionChannels.isEmpty()) continue;
+            logger.info("Connecting GweeBot connection " + connection + " as '" + botName + "' to '" + hostname + ":" + port
+                    + "' for " + connectionChannels.size() + " channels");
+            BoundedListenerManager listenerManager = buildListenerManager(properties, assignment.size());
+            PircBotXOutboundSender outboundSender = new PircBotXOutboundSender();
+            OutboundSender sender = journal == null ? outboundSender : new JournalingOutboundSender(outboundSender, journal, new SystemClock());
+            OutboundDispatcher outboundDispatcher = new OutboundDispatcher(sender, new SystemClock(), dispatcherConfiguration, metrics);
+            CommandThrottler commandThrottler = buildCommandThrottler(properties, throttlerConfiguration);
+            CommandRegistry commandRegistry = buildCommandRegistry(analytics, commands, commandConfiguration);
+            FloodDetector floodDetector = buildFloodDetector(properties, outboundDispatcher);
+            CommandListener commandListener = new CommandListener(commandRegistry, commandThrottler, outboundDispatcher,
+                    metrics, floodDetector);
+            if (analytics != null) listenerManager.addListener(analytics);
+            if (journal != null) listenerManager.addListener(journal);
+            listenerManager.addListener(channelJoiner);
+            PircBotX bot = buildBot(botName, hostname, port, messageDelayMillis, password, listenerManager, prefilter,
+                    commandListener);
+            channelJoiner.addBot(bot, connectionChannels);
+            outboundSender.setBot(bot);
+            supervisor.addBot(bot);
+            listenerManagers.add(listenerManager);
+            outboundDispatchers.add(outboundDispatcher);
+            commandThrottlers.add(commandThrottler);
+            commandListeners.add(commandListener);
+            if (floodDetector != null) floodDetectors.add(floodDetector);
+            for (String channel : connectionChannels) {
+                channelThrottlers.put(channel.toLowerCase(Locale.ENGLISH), commandThrottler);
+                if (scheduler != null) scheduler.addChannel(channel, outboundDispatcher);
+            }
+        }
+        startThrottleSnapshots(properties, commandThrottlers, channelThrottlers);
+        startCommandReloads(properties, commandThrottlers, commandListeners, analytics, commands);
+        if (scheduler != null) scheduleAnnouncements(properties, scheduler, channels);
+        addMetricsGauges(metrics, listenerManagers, prefilter, outboundDispatchers, analytics, floodDetectors, journal,
+                scheduler, supervisor);
+        startMetrics(properties, metrics);
+        for (OutboundDispatcher outboundDispatcher : outboundDispatchers) {
+            outboundDispatcher.start();
+        }
+        channelJoiner.start();
+        startBots(supervisor);
+        return supervisor;
     }
 
     public static String getVersion() {
+        return VersionHolder.VERSION;
+    }
+
+    private static String loadVersion() {
         String version = getVersionFromPackageMetadata();
         if (version == null) {
             logger.warn("Failed to get GweeBot version from package metadata, using default version");
@@ -79,6 +174,20 @@ public class GweeBot {
     }
 
     private static final String DEFAULT_VERSION = "0.0.0+DEFAULT";
+    private static final String CHANNEL_PREFIXES = "#&+!";
+
+    private static class VersionHolder {
+        private static final String VERSION = loadVersion();
+    }
+
+    private static void addLoggingShutdownHook() {
+        Runtime.getRuntime().addShutdownHook(new Thread("logging-shutdown") {
+            @Override
+            public void run() {
+                LogManager.shutdown();
+            }
+        });
+    }
 
     private static CommandLine parseCommandLineArgs(String[] args) {
         logger.info("Parsing command line args");
@@ -142,27 +251,422 @@ public class GweeBot {
         return password;
     }
 
-    private static PircBotX buildBot(String botName, String hostname, String port, String channel, String password) {
+    private static List<String> getChannels(Properties properties) {
+        String channelList = properties.getProperty("channels", properties.getProperty("channel", ""));
+        Set<String> channels = new LinkedHashSet<String>();
+        for (String channel : channelList.split(",")) {
+            channel = channel.trim();
+            if (channel.length() > 0) channels.add(channel);
+        }
+        if (channels.isEmpty()) {
+            logger.error("No channels configured, set 'channels' in the properties file");
+            System.exit(1);
+        }
+        return new ArrayList<String>(channels);
+    }
+
+    private static OutboundDispatcherConfiguration buildOutboundDispatcherConfiguration(Properties properties) {
+        OutboundDispatcherConfiguration configuration = new OutboundDispatcherConfiguration();
+        String messageLimit = properties.getProperty("send.limit");
+        if (messageLimit != null) configuration.setMessageLimit(Integer.parseInt(messageLimit));
+        String periodMillis = properties.getProperty("send.period.millis");
+        if (periodMillis != null) configuration.setPeriodMillis(Long.parseLong(periodMillis));
+        String maxQueueSize = properties.getProperty("send.queue.size");
+        if (maxQueueSize != null) configuration.setMaxQueueSize(Integer.parseInt(maxQueueSize));
+        String maxChannelQueueSize = properties.getProperty("send.channel.queue.size");
+        if (maxChannelQueueSize != null) configuration.setMaxChannelQueueSize(Integer.parseInt(maxChannelQueueSize));
+        String maxDelayMillis = properties.getProperty("send.max.delay.millis");
+        if (maxDelayMillis != null) configuration.setMaxDelayMillis(Long.parseLong(maxDelayMillis));
+        return configuration;
+    }
+
+    private static BoundedListenerManager buildListenerManager(Properties properties, int connectionCount) {
+        String workers = properties.getProperty("listener.workers");
+        int workerCount = workers == null
+                ? Math.max(1, BoundedListenerManager.getDefaultWorkerCount() / connectionCount)
+                : Integer.parseInt(workers);
+        int queueCapacity = Integer.parseInt(properties.getProperty("listener.queue.size", "1000"));
+        OverflowPolicy overflowPolicy = OverflowPolicy.valueOf(properties.getProperty("listener.overflow.policy", "DROP_NON_COMMAND"));
+        logger.info("Using {} listener workers with queues of {} events", workerCount, queueCapacity);
+        return new BoundedListenerManager(workerCount, queueCapacity, overflowPolicy);
+    }
+
+    private static ChatPrefilter buildChatPrefilter(Properties properties) {
+        ChatPrefilter prefilter = new ChatPrefilter(CommandListener.COMMAND_PREFIX, CHANNEL_PREFIXES);
+        prefilter.setEnabled(Boolean.parseBoolean(properties.getProperty("prefilter.enabled", "true")));
+        return prefilter;
+    }
+
+    private static ChatAnalytics buildChatAnalytics(Properties properties, ChatPrefilter prefilter) {
+        if (!Boolean.parseBoolean(properties.getProperty("analytics.enabled", "false"))) return null;
+        ChatAnalytics analytics = new ChatAnalytics(Integer.parseInt(properties.getProperty("analytics.queue.size", "10000")));
+        prefilter.requireFullChat();
+        analytics.start();
+        return analytics;
+    }
+
+    private static EventJournal startEventJournal(Properties properties) {
+        String journalPath = properties.getProperty("journal.file", "");
+        if (journalPath.length() == 0) return null;
+        final EventJournal journal = new EventJournal(new File(journalPath),
+                Integer.parseInt(properties.getProperty("journal.queue.size", "100000")));
+        try {
+            journal.start();
+        } catch (IOException e) {
+            logger.error("Failed to open event journal '{}', continuing without it", journalPath, e);
+            return null;
+        }
+        logger.info("Journaling channel messages and replies to '{}'", journalPath);
+        Runtime.getRuntime().addShutdownHook(new Thread("event-journal-shutdown") {
+            @Override
+            public void run() {
+                try {
+                    journal.shutdown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        return journal;
+    }
+
+    private static MessageScheduler startMessageScheduler(Properties properties) {
+        if (!Boolean.parseBoolean(properties.getProperty("scheduler.enabled", "false"))) return null;
+        long tickMillis = Long.parseLong(properties.getProperty("scheduler.tick.millis", String.valueOf(TimerWheel.DEFAULT_TICK_MILLIS)));
+        TimerWheel wheel = new TimerWheel(new SystemClock(), tickMillis, TimerWheel.DEFAULT_WHEEL_SIZE);
+        wheel.start();
+        return new MessageScheduler(wheel, new SystemClock());
+    }
+
+    // Each announcement is announcement.<name>.message, sent every announcement.<name>.interval.millis to the channels
+    // in announcement.<name>.channels, or to every channel when that is not set.
+    private static void scheduleAnnouncements(Properties properties, MessageScheduler scheduler, List<String> channels) {
+        String prefix = "announcement.";
+        String messageSuffix = ".message";
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(prefix) || !key.endsWith(messageSuffix)) continue;
+            String name = key.substring(prefix.length(), key.length() - messageSuffix.length());
+            String intervalMillis = properties.getProperty(prefix + name + ".interval.millis");
+            if (intervalMillis == null) {
+                logger.warn("Announcement '{}' has no interval, skipping it", name);
+                continue;
+            }
+            String announcementChannels = properties.getProperty(prefix + name + ".channels");
+            List<String> targets = channels;
+            if (announcementChannels != null) {
+                targets = new ArrayList<String>();
+                for (String channel : announcementChannels.split(",")) {
+                    if (channel.trim().length() > 0) targets.add(channel.trim());
+                }
+            }
+            CommandResponse response = CommandResponse.message(properties.getProperty(key));
+            long interval = Long.parseLong(intervalMillis);
+            for (String channel : targets) {
+                try {
+                    scheduler.scheduleRepeating(channel, response, OutboundPriority.LOW, interval, interval);
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Not announcing '{}' in '{}' because the channel is not joined", name, channel);
+                }
+            }
+            logger.info("Announcing '{}' every {}ms in {} channels", name, interval, targets.size());
+        }
+    }
+
+    private static CommandRegistry buildCommandRegistry(ChatAnalytics analytics, List<Command> extraCommands,
+                                                        CommandConfiguration commandConfiguration) {
+        CommandRegistry commandRegistry = CommandListener.buildCommandRegistry();
+        if (analytics != null) {
+            commandRegistry.register(new TopCommand(analytics, new SystemClock()));
+            commandRegistry.register(new StatsCommand(analytics, new SystemClock()));
+        }
+        for (Command command : extraCommands) {
+            commandRegistry.register(command);
+        }
+        if (commandConfiguration != null) commandConfiguration.registerTextCommands(commandRegistry);
+        return commandRegistry;
+    }
+
+    private static CommandConfiguration loadCommandConfiguration(Properties properties) {
+        String commandsPath = properties.getProperty("commands.file", "");
+        if (commandsPath.length() == 0) return null;
+        File commandsFile = new File(commandsPath);
+        if (!commandsFile.isFile()) {
+            logger.info("Command configuration '{}' not found, using the built-in commands", commandsPath);
+            return null;
+        }
+        try {
+            return CommandConfiguration.load(commandsFile);
+        } catch (IOException e) {
+            logger.error("Failed to load command configuration '{}', using the built-in commands", commandsPath, e);
+            return null;
+        }
+    }
+
+    // Throttlers switch first so the listeners' new commands find their policies; both keep running cooldowns.
+    private static void startCommandReloads(Properties properties, final List<CommandThrottler> commandThrottlers,
+                                            final List<CommandListener> commandListeners, final ChatAnalytics analytics,
+                                            final List<Command> extraCommands) {
+        String commandsPath = properties.getProperty("commands.file", "");
+        if (commandsPath.length() == 0 || commandThrottlers.isEmpty()) return;
+        long intervalMillis = Long.parseLong(properties.getProperty("commands.reload.interval.millis", "5000"));
+        CommandConfigurationWatcher watcher = new CommandConfigurationWatcher(new File(commandsPath), intervalMillis,
+                new CommandConfigurationWatcher.ReloadListener() {
+                    @Override
+                    public void onReload(CommandConfiguration configuration) {
+                        CommandThrottlerConfiguration throttlerConfiguration =
+                                configuration.buildThrottlerConfiguration(commandThrottlers.get(0).getConfiguration());
+                        for (CommandThrottler commandThrottler : commandThrottlers) {
+                            commandThrottler.reconfigure(throttlerConfiguration);
+                        }
+                        for (CommandListener commandListener : commandListeners) {
+                            commandListener.reconfigure(buildCommandRegistry(analytics, extraCommands, configuration));
+                        }
+                    }
+                });
+        watcher.start();
+    }
+
+    private static FloodDetector buildFloodDetector(Properties properties, OutboundDispatcher outboundDispatcher) {
+        if (!Boolean.parseBoolean(properties.getProperty("flood.enabled", "false"))) return null;
+        FloodDetectorConfiguration configuration = new FloodDetectorConfiguration();
+        String maxMessages = properties.getProperty("flood.max.messages");
+        if (maxMessages != null) configuration.setMaxMessages(Integer.parseInt(maxMessages));
+        String windowMillis = properties.getProperty("flood.window.millis");
+        if (windowMillis != null) configuration.setWindowMillis(Long.parseLong(windowMillis));
+        String penaltyMillis = properties.getProperty("flood.penalty.millis");
+        if (penaltyMillis != null) configuration.setPenaltyMillis(Long.parseLong(penaltyMillis));
+        String maxUsers = properties.getProperty("flood.max.users");
+        if (maxUsers != null) configuration.setMaxTrackedUsers(Integer.parseInt(maxUsers));
+        String timeoutSeconds = properties.getProperty("flood.timeout.seconds");
+        if (timeoutSeconds != null) configuration.setTimeoutSeconds(Integer.parseInt(timeoutSeconds));
+        return new FloodDetector(configuration, new SystemClock(), outboundDispatcher);
+    }
+
+    private static void addMetricsGauges(BotMetrics metrics, final List<BoundedListenerManager> listenerManagers,
+                                         final ChatPrefilter prefilter, final List<OutboundDispatcher> outboundDispatchers,
+                                         final ChatAnalytics analytics, final List<FloodDetector> floodDetectors,
+                                         final EventJournal journal, final MessageScheduler scheduler,
+                                         final ConnectionSupervisor supervisor) {
+        metrics.addGauge("listener_queue_depth", "Events waiting for a listener worker", new MetricsGauge() {
+            @Override
+            public long getValue() {
+                long depth = 0;
+                for (BoundedListenerManager listenerManager : listenerManagers) depth += listenerManager.getQueueDepth();
+                return depth;
+            }
+        });
+        metrics.addCounter("listener_events_dropped_total", "Events dropped because listener queues were full", new MetricsCounter() {
+            @Override
+            public long getValue() {
+                long dropped = 0;
+                for (BoundedListenerManager listenerManager : listenerManagers) dropped += listenerManager.getDroppedCount();
+                return dropped;
+            }
+        });
+        metrics.addCounter("prefilter_lines_skipped_total", "Plain chat lines skipped before parsing", new MetricsCounter() {
+            @Override
+            public long getValue() {
+                return prefilter.getFilteredCount();
+            }
+        });
+        metrics.addGauge("send_queue_depth", "Replies waiting for send budget", new MetricsGauge() {
+            @Override
+            public long getValue() {
+                long size = 0;
+                for (OutboundDispatcher outboundDispatcher : outboundDispatchers) size += outboundDispatcher.getQueueSize();
+                return size;
+            }
+        });
+        metrics.addCounter("send_replies_expired_total", "Replies dropped because they waited past their deadline", new MetricsCounter() {
+            @Override
+            public long getValue() {
+                long expired = 0;
+                for (OutboundDispatcher outboundDispatcher : outboundDispatchers) expired += outboundDispatcher.getExpiredCount();
+                return expired;
+            }
+        });
+        metrics.addCounter("send_replies_dropped_total", "Replies dropped because the send queue was full", new MetricsCounter() {
+            @Override
+            public long getValue() {
+                long dropped = 0;
+                for (OutboundDispatcher outboundDispatcher : outboundDispatchers) dropped += outboundDispatcher.getDroppedCount();
+                return dropped;
+            }
+        });
+        if (!floodDetectors.isEmpty()) {
+            metrics.addGauge("flood_tracked_users", "Users whose recent commands are counted by the flood detector", new MetricsGauge() {
+                @Override
+                public long getValue() {
+                    long users = 0;
+                    for (FloodDetector floodDetector : floodDetectors) users += floodDetector.getTrackedUserCount();
+                    return users;
+                }
+            });
+            metrics.addCounter("flood_users_flagged_total", "Times a user was flagged for flooding commands", new MetricsCounter() {
+                @Override
+                public long getValue() {
+                    long flagged = 0;
+                    for (FloodDetector floodDetector : floodDetectors) flagged += floodDetector.getFlaggedCount();
+                    return flagged;
+                }
+            });
+        }
+        if (journal != null) {
+            metrics.addCounter("journal_events_dropped_total", "Events left out of the journal because its queue was full", new MetricsCounter() {
+                @Override
+                public long getValue() {
+                    return journal.getDroppedCount();
+                }
+            });
+        }
+        metrics.addGauge("connections_connected", "Server connections that are currently up", new MetricsGauge() {
+            @Override
+            public long getValue() {
+                return supervisor.getConnectedCount();
+            }
+        });
+        if (scheduler != null) {
+            metrics.addGauge("scheduled_messages_pending", "Reminders and announcements waiting on the timer wheel", new MetricsGauge() {
+                @Override
+                public long getValue() {
+                    return scheduler.getPendingCount();
+                }
+            });
+        }
+        if (analytics == null) return;
+        metrics.addCounter("analytics_messages_dropped_total", "Chat messages left out of the statistics because the analytics queue was full", new MetricsCounter() {
+            @Override
+            public long getValue() {
+                return analytics.getDroppedCount();
+            }
+        });
+    }
+
+    private static void startThrottleStoreServer(Properties properties) {
+        int port = Integer.parseInt(properties.getProperty("throttle.store.server.port", "0"));
+        if (port <= 0) return;
+        String hostname = properties.getProperty("throttle.store.server.host", "127.0.0.1");
+        try {
+            new ThrottleStoreServer(hostname, port, new SystemClock()).start();
+        } catch (IOException e) {
+            logger.error("Failed to start throttle store server on '{}:{}'", hostname, port, e);
+        }
+    }
+
+    private static CommandThrottler buildCommandThrottler(Properties properties, CommandThrottlerConfiguration configuration) {
+        String storeHost = properties.getProperty("throttle.store.host", "");
+        if (storeHost.length() == 0) return new CommandThrottler(configuration, new SystemClock());
+        int storePort = Integer.parseInt(properties.getProperty("throttle.store.port"));
+        logger.info("Sharing throttle state through '{}:{}'", storeHost, storePort);
+        RemoteThrottleStore store = new RemoteThrottleStore(configuration, storeHost, storePort);
+        store.start();
+        return new CommandThrottler(configuration, new SystemClock(), store);
+    }
+
+    private static void startThrottleSnapshots(Properties properties, List<CommandThrottler> commandThrottlers,
+                                               Map<String, CommandThrottler> channelThrottlers) {
+        String snapshotPath = properties.getProperty("throttle.snapshot.file", "");
+        if (snapshotPath.length() == 0) return;
+        File snapshotFile = new File(snapshotPath);
+        EpochClock clock = new SystemClock();
+        if (snapshotFile.exists()) {
+            try {
+                List<ThrottleStateEntry> entries = ThrottleSnapshot.read(snapshotFile, clock.getCurrentEpochTimeMillis());
+                int restored = 0;
+                for (ThrottleStateEntry entry : entries) {
+                    if (restoreThrottleState(entry, commandThrottlers, channelThrottlers)) restored++;
+                }
+                logger.info("Restored {} running cooldowns from '{}'", restored, snapshotFile);
+            } catch (IOException e) {
+                logger.warn("Failed to read throttle snapshot '{}', starting without cooldowns", snapshotFile, e);
+            }
+        }
+        long intervalMillis = Long.parseLong(properties.getProperty("throttle.snapshot.interval.millis", "10000"));
+        final ThrottleSnapshotter snapshotter = new ThrottleSnapshotter(commandThrottlers, snapshotFile, clock, intervalMillis);
+        snapshotter.start();
+        Runtime.getRuntime().addShutdownHook(new Thread("throttle-snapshot-shutdown") {
+            @Override
+            public void run() {
+                snapshotter.shutdown();
+            }
+        });
+    }
+
+    // Channel state goes to the connection that now owns the channel; global state applies to every connection.
+    private static boolean restoreThrottleState(ThrottleStateEntry entry, List<CommandThrottler> commandThrottlers,
+                                                Map<String, CommandThrottler> channelThrottlers) {
+        if (entry.getChannel() == null) {
+            boolean restored = false;
+            for (CommandThrottler commandThrottler : commandThrottlers) {
+                restored |= commandThrottler.restoreState(entry);
+            }
+            return restored;
+        }
+        CommandThrottler commandThrottler = channelThrottlers.get(entry.getChannel().toLowerCase(Locale.ENGLISH));
+        return commandThrottler != null && commandThrottler.restoreState(entry);
+    }
+
+    private static void startMetrics(Properties properties, BotMetrics metrics) {
+        if (Boolean.parseBoolean(properties.getProperty("metrics.jmx.enabled", "true"))) {
+            try {
+                metrics.registerMBean();
+            } catch (JMException e) {
+                logger.error("Failed to register metrics MBean", e);
+            }
+        }
+        int port = Integer.parseInt(properties.getProperty("metrics.http.port", "0"));
+        if (port > 0) {
+            String hostname = properties.getProperty("metrics.http.host", "127.0.0.1");
+            try {
+                new MetricsHttpServer(metrics, hostname, port).start();
+            } catch (IOException e) {
+                logger.error("Failed to start metrics HTTP server on '{}:{}'", hostname, port, e);
+            }
+        }
+    }
+
+    private static ConnectionSupervisor buildConnectionSupervisor(Properties properties, BotMetrics metrics) {
+        ReconnectBackoff backoff = new ReconnectBackoff(
+                Long.parseLong(properties.getProperty("reconnect.initial.delay.millis", "1000")),
+                Long.parseLong(properties.getProperty("reconnect.max.delay.millis", "60000")));
+        long stableMillis = Long.parseLong(properties.getProperty("reconnect.stable.millis", "60000"));
+        return new ConnectionSupervisor(backoff, stableMillis, new SystemClock(), metrics);
+    }
+
+    // Twitch allows 20 joins per 10 seconds for a regular account, counted across all of its connections.
+    private static ChannelJoiner buildChannelJoiner(Properties properties) {
+        return new ChannelJoiner(new SystemClock(),
+                Integer.parseInt(properties.getProperty("join.limit", "20")),
+                Long.parseLong(properties.getProperty("join.period.millis", "10000")),
+                Integer.parseInt(properties.getProperty("join.batch.size", "10")));
+    }
+
+    // Channels are joined by the ChannelJoiner once the bot has registered, not as PircBotX auto-join channels.
+    private static PircBotX buildBot(String botName, String hostname, String port, long messageDelayMillis,
+                                     String password, BoundedListenerManager listenerManager, ChatPrefilter prefilter,
+                                     CommandListener commandListener) {
         logger.info("Configuring PircBotX bot");
-        ListenerManager<PircBotX> listenerManager = new ThreadedListenerManager<PircBotX>();
-        listenerManager.addListener(new CommandListener());
-        Configuration<PircBotX> config = new Configuration.Builder<PircBotX>()
+        listenerManager.addListener(commandListener);
+        Configuration.Builder<PircBotX> builder = new Configuration.Builder<PircBotX>()
                 .setName(botName)
                 .setLogin(botName)
                 .setServer(hostname, Integer.parseInt(port), password)
-                .addAutoJoinChannel(channel)
+                .setMessageDelay(messageDelayMillis)
                 .setListenerManager(listenerManager)
-                .buildConfiguration();
-        return new PircBotX(config);
+                .setBotFactory(new PrefilterBotFactory(prefilter))
+                .setShutdownHookEnabled(false);
+        return new SupervisedBot(builder.buildConfiguration());
     }
 
-    private static void startBot(PircBotX bot) {
-        logger.info("Starting PircBotX bot");
-        try {
-            bot.startBot();
-        } catch (Exception e) {
-            logger.error("Failed to start PircBotX bot", e);
-            System.exit(1);
-        }
+    // PircBotX would register a shutdown hook on every login; one hook for the supervisor covers all reconnects.
+    private static void startBots(final ConnectionSupervisor supervisor) {
+        logger.info("Starting PircBotX bots");
+        supervisor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread("connection-shutdown") {
+            @Override
+            public void run() {
+                supervisor.stop();
+            }
+        });
     }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+/**
+ * 64-bit FNV-1a followed by a murmur3 finalizer, so short, similar strings such as channel names, nicks and words
+ * still spread evenly.
+ */
+final class Hashing {
+
+    private Hashing() {
+    }
+
+    static long fnv1aMix(CharSequence value, boolean lowerCase) {
+        return fnv1aMix(value, 0, value.length(), lowerCase);
+    }
+
+    static long fnv1aMix(CharSequence value, int start, int end, boolean lowerCase) {
+        long hash = 0xcbf29ce484222325l;
+        for (int index = start; index < end; index++) {
+            char c = value.charAt(index);
+            hash ^= lowerCase ? Character.toLowerCase(c) : c;
+            hash *= 0x100000001b3l;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdl;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe1a85ec3l;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
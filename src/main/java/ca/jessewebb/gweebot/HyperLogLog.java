@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the number of distinct items added, within about {@code 1.04 / sqrt(2^precision)}, using
+ * {@code 2^precision} one-byte registers. Items are given as 64-bit hashes.
+ */
+public class HyperLogLog {
+    private final int precision;
+    private final byte[] registers;
+    private final double alpha;
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) throw new IllegalArgumentException("precision must be between 4 and 16");
+        this.precision = precision;
+        registers = new byte[1 << precision];
+        int registerCount = registers.length;
+        if (registerCount == 16) {
+            alpha = 0.673;
+        } else if (registerCount == 32) {
+            alpha = 0.697;
+        } else if (registerCount == 64) {
+            alpha = 0.709;
+        } else {
+            alpha = 0.7213 / (1.0 + 1.079 / registerCount);
+        }
+    }
+
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // The sentinel bit caps the rank when every remaining bit is zero.
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1l << (precision - 1))) + 1;
+        if (rank > registers[index]) registers[index] = (byte) rank;
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) throw new IllegalArgumentException("precision must match");
+        for (int index = 0; index < registers.length; index++) {
+            if (other.registers[index] > registers[index]) registers[index] = other.registers[index];
+        }
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeroRegisters = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1l << register);
+            if (register == 0) zeroRegisters++;
+        }
+        int registerCount = registers.length;
+        double estimate = alpha * registerCount * registerCount / sum;
+        if (estimate <= 2.5 * registerCount && zeroRegisters > 0) {
+            estimate = registerCount * Math.log((double) registerCount / zeroRegisters);
+        }
+        return Math.round(estimate);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void clear() {
+        Arrays.fill(registers, (byte) 0);
+    }
+}
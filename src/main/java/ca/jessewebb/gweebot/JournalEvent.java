@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+public class JournalEvent {
+    public enum Type {
+        MESSAGE,
+        REPLY_MESSAGE,
+        REPLY_ACTION
+    }
+
+    private final Type type;
+    private final long timestamp;
+    private final String channel;
+    private final String user;
+    private final String text;
+
+    public JournalEvent(Type type, long timestamp, String channel, String user, String text) {
+        if (type == null) throw new IllegalArgumentException("type must not be null");
+        if (channel == null) throw new IllegalArgumentException("channel must not be null");
+        if (text == null) throw new IllegalArgumentException("text must not be null");
+        if (type == Type.MESSAGE && user == null) throw new IllegalArgumentException("user must not be null for messages");
+        this.type = type;
+        this.timestamp = timestamp;
+        this.channel = channel;
+        this.user = user;
+        this.text = text;
+    }
+
+    public static JournalEvent message(String channel, String user, String message, long timestamp) {
+        return new JournalEvent(Type.MESSAGE, timestamp, channel, user, message);
+    }
+
+    public static JournalEvent reply(String channel, CommandResponse response, long timestamp) {
+        if (response == null) throw new IllegalArgumentException("response must not be null");
+        Type type = response.getType() == CommandResponse.Type.ACTION ? Type.REPLY_ACTION : Type.REPLY_MESSAGE;
+        return new JournalEvent(type, timestamp, channel, null, response.getText());
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isReply() {
+        return type != Type.MESSAGE;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Feeds the channel messages of an {@link EventJournal} back through a {@link CommandListener}, either as fast as
+ * possible or with the gaps they were recorded with. The listener's throttler should use the same
+ * {@link ReplayClock}, which is moved to each message's recorded time, so cooldowns play out as they did live.
+ * Replies are sent synchronously after each message.
+ */
+public class JournalReplayer {
+    private static final Logger logger = LoggerFactory.getLogger(JournalReplayer.class);
+
+    private final CommandListener commandListener;
+    private final ReplayClock clock;
+    private final OutboundDispatcher outboundDispatcher;
+
+    public JournalReplayer(CommandListener commandListener, ReplayClock clock, OutboundDispatcher outboundDispatcher) {
+        if (commandListener == null) throw new IllegalArgumentException("commandListener must not be null");
+        if (clock == null) throw new IllegalArgumentException("clock must not be null");
+        if (outboundDispatcher == null) throw new IllegalArgumentException("outboundDispatcher must not be null");
+        this.commandListener = commandListener;
+        this.clock = clock;
+        this.outboundDispatcher = outboundDispatcher;
+    }
+
+    public Summary replay(File journal, boolean recordedSpeed) throws Exception {
+        if (journal == null) throw new IllegalArgumentException("journal must not be null");
+        EventJournalReader reader = new EventJournalReader(journal);
+        try {
+            long messages = 0;
+            long recordedReplies = 0;
+            long sentBefore = outboundDispatcher.getSentCount();
+            long startNanos = System.nanoTime();
+            long firstTimestamp = 0;
+            JournalEvent event;
+            while ((event = reader.next()) != null) {
+                if (event.isReply()) {
+                    recordedReplies++;
+                    continue;
+                }
+                if (messages == 0) firstTimestamp = event.getTimestamp();
+                if (recordedSpeed) waitUntil(startNanos, event.getTimestamp() - firstTimestamp);
+                clock.setCurrentEpochTimeMillis(event.getTimestamp());
+                commandListener.handleMessage(event.getChannel(), event.getUser(), event.getText(), event.getTimestamp());
+                while (outboundDispatcher.dispatchNext()) ;
+                messages++;
+            }
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1000000l;
+            return new Summary(messages, recordedReplies, outboundDispatcher.getSentCount() - sentBefore, elapsedMillis,
+                    reader.isTruncated());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void waitUntil(long startNanos, long offsetMillis) throws InterruptedException {
+        long delayMillis = offsetMillis - (System.nanoTime() - startNanos) / 1000000l;
+        if (delayMillis > 0) Thread.sleep(delayMillis);
+    }
+
+    /**
+     * Replays a journal against the built-in commands and throttling: {@code JournalReplayer <journal> [--recorded-speed]}.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: JournalReplayer <journal> [--recorded-speed]");
+            System.exit(1);
+        }
+        File journal = new File(args[0]);
+        boolean recordedSpeed = args.length > 1 && args[1].equals("--recorded-speed");
+
+        ReplayClock clock = new ReplayClock(0l);
+        BotMetrics metrics = new BotMetrics();
+        OutboundDispatcherConfiguration dispatcherConfiguration = new OutboundDispatcherConfiguration();
+        dispatcherConfiguration.setMessageLimit(1000);
+        dispatcherConfiguration.setPeriodMillis(1l);
+        OutboundDispatcher outboundDispatcher = new OutboundDispatcher(new OutboundSender() {
+            @Override
+            public void send(String channel, CommandResponse response) {
+                logger.debug("Replayed reply to '{}': {}", channel, response.getText());
+            }
+        }, clock, dispatcherConfiguration, metrics);
+        CommandThrottler commandThrottler = new CommandThrottler(CommandListener.buildCommandThrottlerConfiguration(), clock);
+        CommandListener commandListener = new CommandListener(CommandListener.buildCommandRegistry(), commandThrottler,
+                outboundDispatcher, metrics);
+
+        Summary summary;
+        try {
+            summary = new JournalReplayer(commandListener, clock, outboundDispatcher).replay(journal, recordedSpeed);
+        } catch (IOException e) {
+            logger.error("Failed to replay event journal '{}'", journal, e);
+            System.exit(1);
+            return;
+        }
+        logger.info("Replayed {}", summary);
+    }
+
+    public static class Summary {
+        private final long messageCount;
+        private final long recordedReplyCount;
+        private final long replyCount;
+        private final long elapsedMillis;
+        private final boolean truncated;
+
+        private Summary(long messageCount, long recordedReplyCount, long replyCount, long elapsedMillis, boolean truncated) {
+            this.messageCount = messageCount;
+            this.recordedReplyCount = recordedReplyCount;
+            this.replyCount = replyCount;
+            this.elapsedMillis = elapsedMillis;
+            this.truncated = truncated;
+        }
+
+        public long getMessageCount() {
+            return messageCount;
+        }
+
+        public long getRecordedReplyCount() {
+            return recordedReplyCount;
+        }
+
+        public long getReplyCount() {
+            return replyCount;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        @Override
+        public String toString() {
+            return messageCount + " messages in " + elapsedMillis + "ms with " + replyCount + " replies ("
+                    + recordedReplyCount + " recorded)" + (truncated ? "; the journal ends in a partial record" : "");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+/**
+ * Records every reply in an {@link EventJournal} after handing it to the wrapped sender.
+ */
+public class JournalingOutboundSender implements OutboundSender {
+    private final OutboundSender sender;
+    private final EventJournal journal;
+    private final EpochClock clock;
+
+    public JournalingOutboundSender(OutboundSender sender, EventJournal journal, EpochClock clock) {
+        if (sender == null) throw new IllegalArgumentException("sender must not be null");
+        if (journal == null) throw new IllegalArgumentException("journal must not be null");
+        if (clock == null) throw new IllegalArgumentException("clock must not be null");
+        this.sender = sender;
+        this.journal = journal;
+        this.clock = clock;
+    }
+
+    @Override
+    public void send(String channel, CommandResponse response) throws Exception {
+        sender.send(channel, response);
+        journal.recordReply(channel, response, clock.getCurrentEpochTimeMillis());
+    }
+}
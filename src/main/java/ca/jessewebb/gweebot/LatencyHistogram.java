@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+    private static final long[] DEFAULT_BUCKET_BOUNDS_MILLIS = {
+            1l, 2l, 5l, 10l, 25l, 50l, 100l, 250l, 500l, 1000l, 2500l, 5000l, 10000l, 30000l
+    };
+
+    private final long[] bucketBounds;
+    private final AtomicLongArray bucketCounts;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+
+    public LatencyHistogram() {
+        this(DEFAULT_BUCKET_BOUNDS_MILLIS);
+    }
+
+    public LatencyHistogram(long[] bucketBoundsMillis) {
+        if (bucketBoundsMillis == null || bucketBoundsMillis.length == 0) throw new IllegalArgumentException("bucketBoundsMillis must not be empty");
+        for (int bucket = 1; bucket < bucketBoundsMillis.length; bucket++) {
+            if (bucketBoundsMillis[bucket] <= bucketBoundsMillis[bucket - 1]) throw new IllegalArgumentException("bucketBoundsMillis must be increasing");
+        }
+        bucketBounds = bucketBoundsMillis.clone();
+        bucketCounts = new AtomicLongArray(bucketBounds.length + 1);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+    }
+
+    public void record(long millis) {
+        if (millis < 0) millis = 0;
+        int bucket = 0;
+        while (bucket < bucketBounds.length && millis > bucketBounds[bucket]) bucket++;
+        bucketCounts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sum.addAndGet(millis);
+    }
+
+    public int getBucketCount() {
+        return bucketBounds.length + 1;
+    }
+
+    public long getBucketBound(int bucket) {
+        return bucket < bucketBounds.length ? bucketBounds[bucket] : Long.MAX_VALUE;
+    }
+
+    public long getBucketValue(int bucket) {
+        return bucketCounts.get(bucket);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[getBucketCount()];
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            counts[bucket] = bucketCounts.get(bucket);
+            total += counts[bucket];
+        }
+        if (total == 0) return 0l;
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) return getBucketBound(bucket);
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps throttle state in this process: one slot per command for global state, a map per command for channel state
+ * and, for user state, a map per command and channel holding one slot per user, so a check never has to build a
+ * combined key. Slots are updated with compare-and-set. They live in a table that is only ever replaced by a larger
+ * copy sharing the same slot objects, so reconfiguring never loses state that is being updated concurrently. Idle
+ * user slots are evicted, but a channel's user map is kept once created, as a bot is only in so many channels.
+ */
+public class LocalThrottleStore implements ThrottleStore {
+    private static final long EVICTED = Long.MAX_VALUE;
+
+    private volatile Slots slots;
+
+    public LocalThrottleStore(CommandThrottlerConfiguration configuration) {
+        if (configuration == null) throw new IllegalArgumentException("configuration must not be null");
+        slots = new Slots(null, configuration.getCommandCount());
+    }
+
+    @Override
+    public boolean tryAcquire(int commandId, String channel, String user, ThrottlePolicy userPolicy, ThrottlePolicy channelPolicy,
+                              ThrottlePolicy globalPolicy, long now) {
+        Slots current = slots;
+        ConcurrentMap<String, AtomicLong> userHistory = null;
+        if (userPolicy != null) {
+            userHistory = getOrCreateUserHistory(current, commandId, channel);
+            if (!tryAcquire(userHistory, user, userPolicy, now)) return false;
+        }
+        if (channelPolicy != null && !tryAcquire(current.channel[commandId], channel, channelPolicy, now)) {
+            if (userHistory != null) refund(userHistory, user, userPolicy);
+            return false;
+        }
+        if (globalPolicy != null && !tryAcquire(current.global[commandId], globalPolicy, now)) {
+            if (channelPolicy != null) refund(current.channel[commandId], channel, channelPolicy);
+            if (userHistory != null) refund(userHistory, user, userPolicy);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void consume(int commandId, ThrottleScope scope, String key, ThrottlePolicy policy, long now) {
+        Slots current = slots;
+        switch (scope) {
+            case GLOBAL:
+                AtomicLong entry = current.global[commandId];
+                while (true) {
+                    long state = entry.get();
+                    if (entry.compareAndSet(state, policy.track(state, now))) return;
+                }
+            case CHANNEL:
+                consume(current.channel[commandId], key, policy, now);
+                return;
+            default:
+                int separator = key.indexOf(' ');
+                consume(getOrCreateUserHistory(current, commandId, key.substring(0, separator)),
+                        key.substring(separator + 1), policy, now);
+        }
+    }
+
+    @Override
+    public void refund(int commandId, String channel, String user, ThrottlePolicy userPolicy, ThrottlePolicy channelPolicy,
+                       ThrottlePolicy globalPolicy) {
+        Slots current = slots;
+        if (globalPolicy != null) {
+            AtomicLong entry = current.global[commandId];
+            while (true) {
+                long state = entry.get();
+                if (entry.compareAndSet(state, globalPolicy.refund(state))) break;
+            }
+        }
+        if (channelPolicy != null) refund(current.channel[commandId], channel, channelPolicy);
+        if (userPolicy != null) {
+            ConcurrentMap<String, AtomicLong> userHistory = current.user[commandId].get(channel);
+            if (userHistory != null) refund(userHistory, user, userPolicy);
+        }
+    }
+
+    @Override
+    public long getState(int commandId, ThrottleScope scope, String key) {
+        Slots current = slots;
+        switch (scope) {
+            case GLOBAL:
+                return current.global[commandId].get();
+            case CHANNEL:
+                return getState(current.channel[commandId], key);
+            default:
+                int separator = key.indexOf(' ');
+                ConcurrentMap<String, AtomicLong> userHistory = current.user[commandId].get(key.substring(0, separator));
+                return userHistory == null ? ThrottlePolicy.UNUSED : getState(userHistory, key.substring(separator + 1));
+        }
+    }
+
+    @Override
+    public Map<String, Long> getStates(int commandId, ThrottleScope scope) {
+        Slots current = slots;
+        Map<String, Long> states = new HashMap<String, Long>();
+        if (scope == ThrottleScope.CHANNEL) {
+            addStates(states, null, current.channel[commandId]);
+        } else if (scope == ThrottleScope.USER) {
+            for (Map.Entry<String, ConcurrentMap<String, AtomicLong>> channelEntry : current.user[commandId].entrySet()) {
+                addStates(states, channelEntry.getKey(), channelEntry.getValue());
+            }
+        }
+        return states;
+    }
+
+    @Override
+    public void restoreState(int commandId, ThrottleScope scope, String key, long restoredState) {
+        Slots current = slots;
+        switch (scope) {
+            case GLOBAL:
+                AtomicLong entry = current.global[commandId];
+                while (true) {
+                    long state = entry.get();
+                    if (state >= restoredState || entry.compareAndSet(state, restoredState)) return;
+                }
+            case CHANNEL:
+                restoreState(current.channel[commandId], key, restoredState);
+                return;
+            default:
+                int separator = key.indexOf(' ');
+                restoreState(getOrCreateUserHistory(current, commandId, key.substring(0, separator)),
+                        key.substring(separator + 1), restoredState);
+        }
+    }
+
+    @Override
+    public void evictIdle(int commandId, ThrottleScope scope, ThrottlePolicy policy, long now) {
+        Slots current = slots;
+        if (scope == ThrottleScope.CHANNEL) {
+            evictIdle(current.channel[commandId], policy, now);
+        } else if (scope == ThrottleScope.USER) {
+            for (ConcurrentMap<String, AtomicLong> userHistory : current.user[commandId].values()) {
+                evictIdle(userHistory, policy, now);
+            }
+        }
+    }
+
+    @Override
+    public int getTrackedKeyCount() {
+        Slots current = slots;
+        int count = 0;
+        for (int commandId = 0; commandId < current.global.length; commandId++) {
+            count += current.channel[commandId].size();
+            for (ConcurrentMap<String, AtomicLong> userHistory : current.user[commandId].values()) {
+                count += userHistory.size();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void reconfigure(CommandThrottlerConfiguration configuration) {
+        if (configuration == null) throw new IllegalArgumentException("configuration must not be null");
+        Slots current = slots;
+        if (configuration.getCommandCount() > current.global.length) {
+            slots = new Slots(current, configuration.getCommandCount());
+        }
+    }
+
+    private static boolean tryAcquire(AtomicLong entry, ThrottlePolicy policy, long now) {
+        while (true) {
+            long state = entry.get();
+            if (!policy.allows(state, now)) return false;
+            if (entry.compareAndSet(state, policy.consume(state, now))) return true;
+        }
+    }
+
+    private static ConcurrentMap<String, AtomicLong> getOrCreateUserHistory(Slots current, int commandId, String channel) {
+        ConcurrentMap<String, ConcurrentMap<String, AtomicLong>> channels = current.user[commandId];
+        ConcurrentMap<String, AtomicLong> userHistory = channels.get(channel);
+        if (userHistory == null) {
+            ConcurrentMap<String, AtomicLong> newHistory = new ConcurrentHashMap<String, AtomicLong>();
+            userHistory = channels.putIfAbsent(channel, newHistory);
+            if (userHistory == null) userHistory = newHistory;
+        }
+        return userHistory;
+    }
+
+    private static void addStates(Map<String, Long> states, String channel, ConcurrentMap<String, AtomicLong> history) {
+        for (Map.Entry<String, AtomicLong> mapEntry : history.entrySet()) {
+            long state = mapEntry.getValue().get();
+            if (state == EVICTED) continue;
+            states.put(channel == null ? mapEntry.getKey() : CommandThrottler.getUserKey(channel, mapEntry.getKey()), state);
+        }
+    }
+
+    private static class Slots {
+        private final AtomicLong[] global;
+        private final ConcurrentMap<String, AtomicLong>[] channel;
+        private final ConcurrentMap<String, ConcurrentMap<String, AtomicLong>>[] user;
+
+        @SuppressWarnings("unchecked")
+        private Slots(Slots previous, int commandCount) {
+            global = new AtomicLong[commandCount];
+            channel = new ConcurrentMap[commandCount];
+            user = new ConcurrentMap[commandCount];
+            int copied = previous == null ? 0 : previous.global.length;
+            if (copied > 0) {
+                System.arraycopy(previous.global, 0, global, 0, copied);
+                System.arraycopy(previous.channel, 0, channel, 0, copied);
+                System.arraycopy(previous.user, 0, user, 0, copied);
+            }
+            for (int commandId = copied; commandId < commandCount; commandId++) {
+                global[commandId] = new AtomicLong(ThrottlePolicy.UNUSED);
+                channel[commandId] = new ConcurrentHashMap<String, AtomicLong>();
+                user[commandId] = new ConcurrentHashMap<String, ConcurrentMap<String, AtomicLong>>();
+            }
+        }
+    }
+
+    // The keyed operations below are shared with ThrottleStoreServer, which keeps all of its slots in one map.
+
+    static boolean tryAcquire(ConcurrentMap<String, AtomicLong> history, String key, ThrottlePolicy policy, long now) {
+        while (true) {
+            AtomicLong entry = getOrCreateEntry(history, key);
+            long state = entry.get();
+            if (state == EVICTED) {
+                history.remove(key, entry);
+                continue;
+            }
+            if (!policy.allows(state, now)) return false;
+            if (entry.compareAndSet(state, policy.consume(state, now))) return true;
+        }
+    }
+
+    static void consume(ConcurrentMap<String, AtomicLong> history, String key, ThrottlePolicy policy, long now) {
+        while (true) {
+            AtomicLong entry = getOrCreateEntry(history, key);
+            long state = entry.get();
+            if (state == EVICTED) {
+                history.remove(key, entry);
+                continue;
+            }
+            if (entry.compareAndSet(state, policy.track(state, now))) return;
+        }
+    }
+
+    static void refund(ConcurrentMap<String, AtomicLong> history, String key, ThrottlePolicy policy) {
+        AtomicLong entry = history.get(key);
+        if (entry == null) return;
+        while (true) {
+            long state = entry.get();
+            if (state == EVICTED) return;
+            if (entry.compareAndSet(state, policy.refund(state))) return;
+        }
+    }
+
+    static long getState(ConcurrentMap<String, AtomicLong> history, String key) {
+        AtomicLong entry = history.get(key);
+        long state = entry == null ? ThrottlePolicy.UNUSED : entry.get();
+        return state == EVICTED ? ThrottlePolicy.UNUSED : state;
+    }
+
+    static void restoreState(ConcurrentMap<String, AtomicLong> history, String key, long restoredState) {
+        while (true) {
+            AtomicLong entry = getOrCreateEntry(history, key);
+            long state = entry.get();
+            if (state == EVICTED) {
+                history.remove(key, entry);
+                continue;
+            }
+            if (state >= restoredState || entry.compareAndSet(state, restoredState)) return;
+        }
+    }
+
+    static void evictIdle(ConcurrentMap<String, AtomicLong> history, ThrottlePolicy policy, long now) {
+        for (Map.Entry<String, AtomicLong> mapEntry : history.entrySet()) {
+            AtomicLong entry = mapEntry.getValue();
+            long state = entry.get();
+            if (state != EVICTED && policy.isIdle(state, now) && entry.compareAndSet(state, EVICTED)) {
+                history.remove(mapEntry.getKey(), entry);
+            }
+        }
+    }
+
+    private static AtomicLong getOrCreateEntry(ConcurrentMap<String, AtomicLong> history, String key) {
+        AtomicLong entry = history.get(key);
+        if (entry == null) {
+            AtomicLong newEntry = new AtomicLong(ThrottlePolicy.UNUSED);
+            entry = history.putIfAbsent(key, newEntry);
+            if (entry == null) entry = newEntry;
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends messages to channels later, once or repeatedly, on a {@link TimerWheel}. Due messages are handed to the
+ * {@link OutboundDispatcher} of the connection that serves the channel, the same way command replies are, so they
+ * share its send budget.
+ */
+public class MessageScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(MessageScheduler.class);
+
+    private final TimerWheel wheel;
+    private final EpochClock clock;
+    private final Map<String, OutboundDispatcher> channelDispatchers;
+    private final AtomicLong sentCount;
+    private final AtomicLong droppedCount;
+
+    public MessageScheduler(TimerWheel wheel, EpochClock clock) {
+        if (wheel == null) throw new IllegalArgumentException("wheel must not be null");
+        if (clock == null) throw new IllegalArgumentException("clock must not be null");
+        this.wheel = wheel;
+        this.clock = clock;
+        channelDispatchers = new ConcurrentHashMap<String, OutboundDispatcher>();
+        sentCount = new AtomicLong();
+        droppedCount = new AtomicLong();
+    }
+
+    public void addChannel(String channel, OutboundDispatcher outboundDispatcher) {
+        if (channel == null) throw new IllegalArgumentException("channel must not be null");
+        if (outboundDispatcher == null) throw new IllegalArgumentException("outboundDispatcher must not be null");
+        channelDispatchers.put(channel.toLowerCase(Locale.ENGLISH), outboundDispatcher);
+    }
+
+    public ScheduledMessage scheduleOnce(String channel, CommandResponse response, OutboundPriority priority,
+                                         long delayMillis) {
+        return schedule(channel, response, priority, delayMillis, 0l);
+    }
+
+    public ScheduledMessage scheduleRepeating(String channel, CommandResponse response, OutboundPriority priority,
+                                              long initialDelayMillis, long intervalMillis) {
+        if (intervalMillis <= 0) throw new IllegalArgumentException("intervalMillis must be positive");
+        return schedule(channel, response, priority, initialDelayMillis, intervalMillis);
+    }
+
+    public int getPendingCount() {
+        return wheel.getPendingCount();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private ScheduledMessage schedule(String channel, CommandResponse response, OutboundPriority priority,
+                                      long delayMillis, long intervalMillis) {
+        if (channel == null) throw new IllegalArgumentException("channel must not be null");
+        if (response == null) throw new IllegalArgumentException("response must not be null");
+        if (priority == null) throw new IllegalArgumentException("priority must not be null");
+        OutboundDispatcher outboundDispatcher = channelDispatchers.get(channel.toLowerCase(Locale.ENGLISH));
+        if (outboundDispatcher == null) throw new IllegalArgumentException("channel '" + channel + "' is not joined");
+        ScheduledMessage message = new ScheduledMessage(channel, response, priority, intervalMillis, outboundDispatcher);
+        message.start(delayMillis);
+        return message;
+    }
+
+    /**
+     * A message waiting to be sent. Cancelling a repeating message stops all of its future sends.
+     */
+    public class ScheduledMessage implements Runnable {
+        private final String channel;
+        private final CommandResponse response;
+        private final OutboundPriority priority;
+        private final long intervalMillis;
+        private final OutboundDispatcher outboundDispatcher;
+        private TimerWheel.Timeout timeout;
+        private volatile boolean cancelled;
+
+        private ScheduledMessage(String channel, CommandResponse response, OutboundPriority priority, long intervalMillis,
+                                 OutboundDispatcher outboundDispatcher) {
+            this.channel = channel;
+            this.response = response;
+            this.priority = priority;
+            this.intervalMillis = intervalMillis;
+            this.outboundDispatcher = outboundDispatcher;
+        }
+
+        public synchronized void cancel() {
+            cancelled = true;
+            timeout.cancel();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        // Synchronized with run() so a message due right away cannot fire before its first timeout is set.
+        private synchronized void start(long delayMillis) {
+            timeout = wheel.schedule(this, delayMillis);
+        }
+
+        @Override
+        public synchronized void run() {
+            if (cancelled) return;
+            if (outboundDispatcher.enqueue(channel, response, priority, clock.getCurrentEpochTimeMillis())) {
+                sentCount.incrementAndGet();
+            } else {
+                droppedCount.incrementAndGet();
+                logger.warn("Dropped scheduled message to '{}' because the send queue is full", channel);
+            }
+            if (intervalMillis <= 0) return;
+            // Repeats keep to the original schedule; runs missed while the wheel was held up are skipped, not bunched.
+            long nextDeadline = timeout.getDeadline() + intervalMillis;
+            long now = clock.getCurrentEpochTimeMillis();
+            if (nextDeadline <= now) nextDeadline = now + intervalMillis;
+            timeout = wheel.scheduleAt(this, nextDeadline);
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Owns the connection's send budget. Listener threads only enqueue; a single dispatcher thread sends at most
+ * {@code messageLimit} messages in any rolling {@code periodMillis} window, highest priority first and round-robin
+ * across channels within a priority, so one busy channel cannot starve the others.
+ */
+public class OutboundDispatcher implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(OutboundDispatcher.class);
+
+    private static final long NEVER_SENT = Long.MIN_VALUE;
+
+    private final OutboundSender sender;
+    private final EpochClock clock;
+    private final BotMetrics metrics;
+    private final long periodMillis;
+    private final int maxQueueSize;
+    private final int maxChannelQueueSize;
+    private final long maxDelayMillis;
+
+    private final ReentrantLock lock;
+    private final Condition messageAvailable;
+    private final Lane[] lanes;
+    // Each queued message, mapped to the undelivered callbacks of duplicates coalesced into it (null if there are none).
+    private final Map<OutboundMessage, List<Runnable>> pending;
+    private final long[] sendTimes;
+    private int sendIndex;
+
+    private final AtomicLong sentCount;
+    private final AtomicLong coalescedCount;
+    private final AtomicLong expiredCount;
+    private final AtomicLong droppedCount;
+    private final AtomicLong failedCount;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public OutboundDispatcher(OutboundSender sender, EpochClock clock, OutboundDispatcherConfiguration configuration) {
+        this(sender, clock, configuration, new BotMetrics());
+    }
+
+    public OutboundDispatcher(OutboundSender sender, EpochClock clock, OutboundDispatcherConfiguration configuration,
+                              BotMetrics metrics) {
+        if (sender == null) throw new IllegalArgumentException("sender must not be null");
+        if (clock == null) throw new IllegalArgumentException("clock must not be null");
+        if (configuration == null) throw new IllegalArgumentException("configuration must not be null");
+        if (metrics == null) throw new IllegalArgumentException("metrics must not be null");
+        this.sender = sender;
+        this.clock = clock;
+        this.metrics = metrics;
+        periodMillis = configuration.getPeriodMillis();
+        maxQueueSize = configuration.getMaxQueueSize();
+        maxChannelQueueSize = configuration.getMaxChannelQueueSize();
+        maxDelayMillis = configuration.getMaxDelayMillis();
+        lock = new ReentrantLock();
+        messageAvailable = lock.newCondition();
+        lanes = new Lane[OutboundPriority.values().length];
+        for (int lane = 0; lane < lanes.length; lane++) {
+            lanes[lane] = new Lane();
+        }
+        pending = new HashMap<OutboundMessage, List<Runnable>>();
+        sendTimes = new long[configuration.getMessageLimit()];
+        for (int index = 0; index < sendTimes.length; index++) {
+            sendTimes[index] = NEVER_SENT;
+        }
+        sentCount = new AtomicLong();
+        coalescedCount = new AtomicLong();
+        expiredCount = new AtomicLong();
+        droppedCount = new AtomicLong();
+        failedCount = new AtomicLong();
+    }
+
+    public boolean enqueue(String channel, CommandResponse response, OutboundPriority priority, long receivedAt) {
+        return enqueue(channel, response, priority, receivedAt, null);
+    }
+
+    /**
+     * Queues a message. When it is accepted but later not sent (the send failed, it expired, or it was dropped for a
+     * message of higher priority), {@code undeliveredCallback} runs; it does not run when this returns false. A
+     * duplicate of a queued message is coalesced into it, and its callback runs if that message is not delivered.
+     */
+    public boolean enqueue(String channel, CommandResponse response, OutboundPriority priority, long receivedAt,
+                           Runnable undeliveredCallback) {
+        OutboundMessage message = new OutboundMessage(channel, response, priority, receivedAt, receivedAt + maxDelayMillis,
+                undeliveredCallback);
+        lock.lock();
+        try {
+            if (pending.containsKey(message)) {
+                coalescedCount.incrementAndGet();
+                if (undeliveredCallback != null) addCoalescedCallback(message, undeliveredCallback);
+                return true;
+            }
+            if (getChannelQueueSize(channel) >= maxChannelQueueSize && !dropLowerPriority(priority, channel)) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+            if (pending.size() >= maxQueueSize && !dropLowerPriority(priority, null)) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+            lanes[priority.ordinal()].add(message);
+            pending.put(message, null);
+            messageAvailable.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean dispatchNext() {
+        OutboundMessage message;
+        List<Runnable> coalescedCallbacks;
+        lock.lock();
+        try {
+            long now = clock.getCurrentEpochTimeMillis();
+            if (getBudgetDelay(now) > 0) return false;
+            message = pollNext(now);
+            if (message == null) return false;
+            coalescedCallbacks = pending.remove(message);
+            sendTimes[sendIndex] = now;
+            sendIndex = (sendIndex + 1) % sendTimes.length;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            sender.send(message.getChannel(), message.getResponse());
+            sentCount.incrementAndGet();
+            metrics.replySent(clock.getCurrentEpochTimeMillis() - message.getReceivedAt());
+        } catch (Exception e) {
+            failedCount.incrementAndGet();
+            logger.warn("Failed to send message to '{}'", message.getChannel(), e);
+            notifyUndelivered(message, coalescedCallbacks);
+        }
+        return true;
+    }
+
+    public long getBudgetDelay() {
+        lock.lock();
+        try {
+            return getBudgetDelay(clock.getCurrentEpochTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public synchronized void start() {
+        if (thread != null) return;
+        running = true;
+        thread = new Thread(this, "outbound-dispatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                lock.lockInterruptibly();
+                try {
+                    while (running && pending.isEmpty()) messageAvailable.await();
+                } finally {
+                    lock.unlock();
+                }
+                long delay = getBudgetDelay();
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                } else {
+                    dispatchNext();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public int getQueueSize() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueSize(String channel) {
+        lock.lock();
+        try {
+            return getChannelQueueSize(channel);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    private long getBudgetDelay(long now) {
+        long oldestSend = sendTimes[sendIndex];
+        if (oldestSend == NEVER_SENT) return 0l;
+        return Math.max(0l, oldestSend + periodMillis - now);
+    }
+
+    private OutboundMessage pollNext(long now) {
+        for (Lane lane : lanes) {
+            OutboundMessage message;
+            while ((message = lane.poll()) != null) {
+                if (now <= message.getDeadline()) return message;
+                expiredCount.incrementAndGet();
+                notifyUndelivered(message, pending.remove(message));
+            }
+        }
+        return null;
+    }
+
+    private void addCoalescedCallback(OutboundMessage message, Runnable callback) {
+        List<Runnable> callbacks = pending.get(message);
+        if (callbacks == null) {
+            callbacks = new ArrayList<Runnable>(1);
+            pending.put(message, callbacks);
+        }
+        callbacks.add(callback);
+    }
+
+    private static void notifyUndelivered(OutboundMessage message, List<Runnable> coalescedCallbacks) {
+        runUndeliveredCallback(message, message.getUndeliveredCallback());
+        if (coalescedCallbacks == null) return;
+        for (Runnable callback : coalescedCallbacks) runUndeliveredCallback(message, callback);
+    }
+
+    private static void runUndeliveredCallback(OutboundMessage message, Runnable callback) {
+        if (callback == null) return;
+        try {
+            callback.run();
+        } catch (RuntimeException e) {
+            logger.warn("Undelivered message callback for '{}' failed", message.getChannel(), e);
+        }
+    }
+
+    private int getChannelQueueSize(String channel) {
+        int size = 0;
+        for (Lane lane : lanes) size += lane.size(channel);
+        return size;
+    }
+
+    // With a channel, only that channel's replies are candidates; otherwise the busiest channel gives one up.
+    private boolean dropLowerPriority(OutboundPriority priority, String channel) {
+        for (int lane = lanes.length - 1; lane > priority.ordinal(); lane--) {
+            OutboundMessage dropped = channel != null ? lanes[lane].pollOldest(channel) : lanes[lane].pollOldestOfBusiest();
+            if (dropped != null) {
+                List<Runnable> coalescedCallbacks = pending.remove(dropped);
+                droppedCount.incrementAndGet();
+                notifyUndelivered(dropped, coalescedCallbacks);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Lane {
+        private final Map<String, ArrayDeque<OutboundMessage>> channelQueues = new HashMap<String, ArrayDeque<OutboundMessage>>();
+        private final ArrayDeque<ArrayDeque<OutboundMessage>> turns = new ArrayDeque<ArrayDeque<OutboundMessage>>();
+
+        private void add(OutboundMessage message) {
+            ArrayDeque<OutboundMessage> queue = channelQueues.get(message.getChannel());
+            if (queue == null) {
+                queue = new ArrayDeque<OutboundMessage>();
+                channelQueues.put(message.getChannel(), queue);
+                turns.addLast(queue);
+            }
+            queue.addLast(message);
+        }
+
+        private OutboundMessage poll() {
+            ArrayDeque<OutboundMessage> queue = turns.pollFirst();
+            if (queue == null) return null;
+            OutboundMessage message = queue.pollFirst();
+            if (queue.isEmpty()) {
+                channelQueues.remove(message.getChannel());
+            } else {
+                turns.addLast(queue);
+            }
+            return message;
+        }
+
+        private OutboundMessage pollOldest(String channel) {
+            ArrayDeque<OutboundMessage> queue = channelQueues.get(channel);
+            if (queue == null) return null;
+            OutboundMessage message = queue.pollFirst();
+            if (queue.isEmpty()) {
+                channelQueues.remove(channel);
+                turns.remove(queue);
+            }
+            return message;
+        }
+
+        private OutboundMessage pollOldestOfBusiest() {
+            ArrayDeque<OutboundMessage> busiest = null;
+            for (ArrayDeque<OutboundMessage> queue : turns) {
+                if (busiest == null || queue.size() > busiest.size()) busiest = queue;
+            }
+            return busiest == null ? null : pollOldest(busiest.peekFirst().getChannel());
+        }
+
+        private int size(String channel) {
+            ArrayDeque<OutboundMessage> queue = channelQueues.get(channel);
+            return queue == null ? 0 : queue.size();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+public class OutboundDispatcherConfiguration {
+    private int messageLimit;
+    private long periodMillis;
+    private int maxQueueSize;
+    private int maxChannelQueueSize;
+    private long maxDelayMillis;
+
+    public OutboundDispatcherConfiguration() {
+        messageLimit = 20;
+        periodMillis = 30000l;
+        maxQueueSize = 200;
+        maxChannelQueueSize = 10;
+        maxDelayMillis = 15000l;
+    }
+
+    public int getMessageLimit() {
+        return messageLimit;
+    }
+
+    public void setMessageLimit(int messageLimit) {
+        if (messageLimit < 1) throw new IllegalArgumentException("messageLimit must be at least 1");
+        this.messageLimit = messageLimit;
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    public void setPeriodMillis(long periodMillis) {
+        if (periodMillis < 0) throw new IllegalArgumentException("periodMillis must not be negative");
+        this.periodMillis = periodMillis;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public void setMaxQueueSize(int maxQueueSize) {
+        if (maxQueueSize < 1) throw new IllegalArgumentException("maxQueueSize must be at least 1");
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public int getMaxChannelQueueSize() {
+        return maxChannelQueueSize;
+    }
+
+    public void setMaxChannelQueueSize(int maxChannelQueueSize) {
+        if (maxChannelQueueSize < 1) throw new IllegalArgumentException("maxChannelQueueSize must be at least 1");
+        this.maxChannelQueueSize = maxChannelQueueSize;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public void setMaxDelayMillis(long maxDelayMillis) {
+        if (maxDelayMillis < 0) throw new IllegalArgumentException("maxDelayMillis must not be negative");
+        this.maxDelayMillis = maxDelayMillis;
+    }
+}
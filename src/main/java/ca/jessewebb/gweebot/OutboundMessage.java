@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+public class OutboundMessage {
+    private final String channel;
+    private final CommandResponse response;
+    private final OutboundPriority priority;
+    private final long receivedAt;
+    private final long deadline;
+    private final Runnable undeliveredCallback;
+
+    public OutboundMessage(String channel, CommandResponse response, OutboundPriority priority, long receivedAt, long deadline) {
+        this(channel, response, priority, receivedAt, deadline, null);
+    }
+
+    /**
+     * The {@code undeliveredCallback}, if any, runs when the message is accepted but never sent: it failed to send,
+     * passed its deadline, or was dropped for a message of higher priority.
+     */
+    public OutboundMessage(String channel, CommandResponse response, OutboundPriority priority, long receivedAt, long deadline,
+                           Runnable undeliveredCallback) {
+        if (channel == null) throw new IllegalArgumentException("channel must not be null");
+        if (response == null) throw new IllegalArgumentException("response must not be null");
+        if (priority == null) throw new IllegalArgumentException("priority must not be null");
+        this.channel = channel;
+        this.response = response;
+        this.priority = priority;
+        this.receivedAt = receivedAt;
+        this.deadline = deadline;
+        this.undeliveredCallback = undeliveredCallback;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public CommandResponse getResponse() {
+        return response;
+    }
+
+    public OutboundPriority getPriority() {
+        return priority;
+    }
+
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public Runnable getUndeliveredCallback() {
+        return undeliveredCallback;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof OutboundMessage)) return false;
+        OutboundMessage other = (OutboundMessage) o;
+        return channel.equals(other.channel)
+                && response.getType() == other.response.getType()
+                && response.getText().equals(other.response.getText());
+    }
+
+    @Override
+    public int hashCode() {
+        int result = channel.hashCode();
+        result = 31 * result + response.getType().hashCode();
+        result = 31 * result + response.getText().hashCode();
+        return result;
+    }
+}
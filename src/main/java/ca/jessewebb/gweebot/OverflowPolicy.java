@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+public enum OverflowPolicy {
+    /**
+     * Drops plain chat, new or queued, to make room for commands and control events. When only commands are queued,
+     * the oldest one is dropped. A control event waits for room only if the queue holds nothing but control events.
+     */
+    DROP_NON_COMMAND,
+    /**
+     * Drops the oldest queued event of any kind.
+     */
+    DROP_OLDEST,
+    /**
+     * Makes the connection's reader thread wait for room.
+     */
+    BLOCK
+}
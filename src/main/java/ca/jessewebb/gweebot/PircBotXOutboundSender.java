@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.pircbotx.PircBotX;
+
+public class PircBotXOutboundSender implements OutboundSender {
+    private volatile PircBotX bot;
+
+    public void setBot(PircBotX bot) {
+        this.bot = bot;
+    }
+
+    @Override
+    public void send(String channel, CommandResponse response) {
+        PircBotX currentBot = bot;
+        if (currentBot == null) throw new IllegalStateException("bot has not been set");
+        if (response.getType() == CommandResponse.Type.ACTION) {
+            currentBot.sendIRC().action(channel, response.getText());
+        } else {
+            currentBot.sendIRC().message(channel, response.getText());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.pircbotx.InputParser;
+import org.pircbotx.PircBotX;
+import org.pircbotx.exception.IrcException;
+
+import java.io.IOException;
+
+public class PrefilterInputParser extends InputParser {
+    private final ChatPrefilter prefilter;
+
+    public PrefilterInputParser(PircBotX bot, ChatPrefilter prefilter) {
+        super(bot);
+        if (prefilter == null) throw new IllegalArgumentException("prefilter must not be null");
+        this.prefilter = prefilter;
+    }
+
+    @Override
+    public void handleLine(String line) throws IOException, IrcException {
+        if (line != null && prefilter.filter(line)) return;
+        super.handleLine(line);
+    }
+}
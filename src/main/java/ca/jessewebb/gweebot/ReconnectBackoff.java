@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter for reconnect attempts. The delay ceiling doubles with every failed attempt up to
+ * a maximum, and the actual delay is picked at random from the upper half of it, so connections that dropped together
+ * do not all come back at the same instant.
+ */
+public class ReconnectBackoff {
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random;
+
+    public ReconnectBackoff(long initialDelayMillis, long maxDelayMillis) {
+        this(initialDelayMillis, maxDelayMillis, new Random());
+    }
+
+    public ReconnectBackoff(long initialDelayMillis, long maxDelayMillis, Random random) {
+        if (initialDelayMillis <= 0) throw new IllegalArgumentException("initialDelayMillis must be positive");
+        if (maxDelayMillis < initialDelayMillis) throw new IllegalArgumentException("maxDelayMillis must not be less than initialDelayMillis");
+        if (random == null) throw new IllegalArgumentException("random must not be null");
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    /**
+     * Returns how long to wait before the given attempt, counting the first retry as attempt 0.
+     */
+    public long getDelayMillis(int attempt) {
+        if (attempt < 0) throw new IllegalArgumentException("attempt must not be negative");
+        long ceiling = maxDelayMillis;
+        if (attempt < 62 && initialDelayMillis <= maxDelayMillis >> attempt) ceiling = initialDelayMillis << attempt;
+        long half = ceiling / 2;
+        return ceiling - half + (long) (random.nextDouble() * (half + 1));
+    }
+}
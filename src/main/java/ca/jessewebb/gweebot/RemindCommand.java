@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+public class RemindCommand implements Command {
+    public static final String NAME = CommandListener.COMMAND_PREFIX + "remindme";
+
+    public static final int MAX_MINUTES = 24 * 60;
+
+    private static final CommandResponse USAGE = CommandResponse.message("Usage: " + NAME + " <minutes> <message>");
+
+    private final MessageScheduler scheduler;
+    private final int maxPendingReminders;
+
+    public RemindCommand(MessageScheduler scheduler, int maxPendingReminders) {
+        if (scheduler == null) throw new IllegalArgumentException("scheduler must not be null");
+        if (maxPendingReminders <= 0) throw new IllegalArgumentException("maxPendingReminders must be positive");
+        this.scheduler = scheduler;
+        this.maxPendingReminders = maxPendingReminders;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public CommandResponse execute(CommandInvocation invocation) {
+        String[] arguments = invocation.getArguments();
+        if (arguments.length < 2) return USAGE;
+        int minutes;
+        try {
+            minutes = Integer.parseInt(arguments[0]);
+        } catch (NumberFormatException e) {
+            return USAGE;
+        }
+        if (minutes < 1 || minutes > MAX_MINUTES) {
+            return CommandResponse.message("Reminders can be set from 1 to " + MAX_MINUTES + " minutes ahead");
+        }
+        if (scheduler.getPendingCount() >= maxPendingReminders) {
+            return CommandResponse.message("Too many reminders are pending, try again later");
+        }
+        String text = invocation.getArgumentString().substring(arguments[0].length()).trim();
+        scheduler.scheduleOnce(invocation.getChannel(),
+                CommandResponse.message(invocation.getUser() + ": reminder: " + text),
+                OutboundPriority.NORMAL, minutes * 60000l);
+        return CommandResponse.message("Okay " + invocation.getUser() + ", I will remind you in " + minutes
+                + (minutes == 1 ? " minute" : " minutes"));
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps throttle state on a {@link ThrottleStoreServer} so several bot processes enforce the same cooldowns.
+ *
+ * Every reply from the server refreshes a near-cache of slot states, and a command whose slots the cache already
+ * shows as throttled is rejected without a round trip; otherwise all of its scopes are acquired in one operation that
+ * the server grants as a whole. Requests from all threads are sent in batches by a single I/O thread;
+ * refunds and usage tracking don't wait for their reply. While the server can't be reached, decisions fall back to
+ * a {@link LocalThrottleStore}, so the bot keeps throttling on its own rather than stalling or answering everything.
+ * An acquire whose caller gave up waiting is refunded if the server grants it anyway, since the caller has already
+ * decided locally.
+ */
+public class RemoteThrottleStore implements ThrottleStore, Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(RemoteThrottleStore.class);
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 250l;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final int READ_TIMEOUT_MILLIS = 5000;
+    private static final long RETRY_DELAY_MILLIS = 5000l;
+    private static final int MAX_PENDING_REQUESTS = 10000;
+
+    private volatile CommandThrottlerConfiguration configuration;
+    private final String host;
+    private final int port;
+    private final long timeoutMillis;
+    private final LocalThrottleStore fallback;
+    private final ConcurrentMap<String, CachedState> nearCache;
+    private final BlockingQueue<Request> requests;
+
+    private final AtomicLong roundTripCount;
+    private final AtomicLong nearCacheRejectionCount;
+    private final AtomicLong fallbackCount;
+
+    private volatile boolean running;
+    private volatile long unavailableUntil;
+    private Thread thread;
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    public RemoteThrottleStore(CommandThrottlerConfiguration configuration, String host, int port) {
+        this(configuration, host, port, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public RemoteThrottleStore(CommandThrottlerConfiguration configuration, String host, int port, long timeoutMillis) {
+        if (configuration == null) throw new IllegalArgumentException("configuration must not be null");
+        if (host == null) throw new IllegalArgumentException("host must not be null");
+        if (port < 1) throw new IllegalArgumentException("port must be positive");
+        if (timeoutMillis < 0) throw new IllegalArgumentException("timeoutMillis must not be negative");
+        this.configuration = configuration;
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+        fallback = new LocalThrottleStore(configuration);
+        nearCache = new ConcurrentHashMap<String, CachedState>();
+        requests = new LinkedBlockingQueue<Request>(MAX_PENDING_REQUESTS);
+        roundTripCount = new AtomicLong();
+        nearCacheRejectionCount = new AtomicLong();
+        fallbackCount = new AtomicLong();
+    }
+
+    @Override
+    public boolean tryAcquire(int commandId, String channel, String user, ThrottlePolicy userPolicy, ThrottlePolicy channelPolicy,
+                              ThrottlePolicy globalPolicy, long now) {
+        int count = (userPolicy == null ? 0 : 1) + (channelPolicy == null ? 0 : 1) + (globalPolicy == null ? 0 : 1);
+        if (count == 0) return true;
+        Request request = new Request(ThrottleStoreProtocol.ACQUIRE, commandId, count, now, true);
+        if (userPolicy != null) addPart(request, ThrottleScope.USER, CommandThrottler.getUserKey(channel, user), userPolicy);
+        if (channelPolicy != null) addPart(request, ThrottleScope.CHANNEL, channel, channelPolicy);
+        if (globalPolicy != null) addPart(request, ThrottleScope.GLOBAL, null, globalPolicy);
+        for (int part = 0; part < count; part++) {
+            CachedState cached = nearCache.get(request.slots[part]);
+            if (cached != null && !request.policies[part].allows(cached.state, now)) {
+                nearCacheRejectionCount.incrementAndGet();
+                return false;
+            }
+        }
+        if (!submit(request) || !request.await(timeoutMillis) && request.abandon()) {
+            fallbackCount.incrementAndGet();
+            return fallback.tryAcquire(commandId, channel, user, userPolicy, channelPolicy, globalPolicy, now);
+        }
+        return request.granted;
+    }
+
+    @Override
+    public void consume(int commandId, ThrottleScope scope, String key, ThrottlePolicy policy, long now) {
+        String slot = getSlotKey(commandId, scope, key);
+        if (submit(ThrottleStoreProtocol.CONSUME, commandId, scope, key, slot, policy, now, false) == null) {
+            fallback.consume(commandId, scope, key, policy, now);
+        }
+    }
+
+    @Override
+    public void refund(int commandId, String channel, String user, ThrottlePolicy userPolicy, ThrottlePolicy channelPolicy,
+                       ThrottlePolicy globalPolicy) {
+        if (globalPolicy != null && !refund(commandId, ThrottleScope.GLOBAL, null, globalPolicy)) {
+            fallback.refund(commandId, channel, user, null, null, globalPolicy);
+        }
+        if (channelPolicy != null && !refund(commandId, ThrottleScope.CHANNEL, channel, channelPolicy)) {
+            fallback.refund(commandId, channel, user, null, channelPolicy, null);
+        }
+        if (userPolicy != null && !refund(commandId, ThrottleScope.USER, CommandThrottler.getUserKey(channel, user), userPolicy)) {
+            fallback.refund(commandId, channel, user, userPolicy, null, null);
+        }
+    }
+
+    @Override
+    public long getState(int commandId, ThrottleScope scope, String key) {
+        String slot = getSlotKey(commandId, scope, key);
+        Request request = submit(ThrottleStoreProtocol.GET, commandId, scope, key, slot, null, 0l, true);
+        if (request != null && request.await(timeoutMillis)) return request.states[0];
+        fallbackCount.incrementAndGet();
+        CachedState cached = nearCache.get(slot);
+        return Math.max(cached == null ? ThrottlePolicy.UNUSED : cached.state, fallback.getState(commandId, scope, key));
+    }
+
+    /**
+     * Returns the states this process has seen, from the near-cache and the local fallback; other processes' slots
+     * are only included once this process has touched them.
+     */
+    @Override
+    public Map<String, Long> getStates(int commandId, ThrottleScope scope) {
+        Map<String, Long> states = new HashMap<String, Long>(fallback.getStates(commandId, scope));
+        for (CachedState cached : nearCache.values()) {
+            if (cached.commandId != commandId || cached.scope != scope) continue;
+            Long state = states.get(cached.key);
+            if (state == null || state < cached.state) states.put(cached.key, cached.state);
+        }
+        return states;
+    }
+
+    @Override
+    public void restoreState(int commandId, ThrottleScope scope, String key, long state) {
+        fallback.restoreState(commandId, scope, key, state);
+        submit(ThrottleStoreProtocol.RESTORE, commandId, scope, key, getSlotKey(commandId, scope, key), null, state, false);
+    }
+
+    @Override
+    public void evictIdle(int commandId, ThrottleScope scope, ThrottlePolicy policy, long now) {
+        fallback.evictIdle(commandId, scope, policy, now);
+        for (Map.Entry<String, CachedState> entry : nearCache.entrySet()) {
+            CachedState cached = entry.getValue();
+            if (cached.commandId == commandId && cached.scope == scope && policy.isIdle(cached.state, now)) {
+                nearCache.remove(entry.getKey(), cached);
+            }
+        }
+    }
+
+    @Override
+    public int getTrackedKeyCount() {
+        return nearCache.size() + fallback.getTrackedKeyCount();
+    }
+
+    @Override
+    public void reconfigure(CommandThrottlerConfiguration configuration) {
+        if (configuration == null) throw new IllegalArgumentException("configuration must not be null");
+        fallback.reconfigure(configuration);
+        this.configuration = configuration;
+    }
+
+    public long getRoundTripCount() {
+        return roundTripCount.get();
+    }
+
+    public long getNearCacheRejectionCount() {
+        return nearCacheRejectionCount.get();
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    public synchronized void start() {
+        if (thread != null) return;
+        running = true;
+        thread = new Thread(this, "throttle-store-client");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Request> batch = new ArrayList<Request>(ThrottleStoreProtocol.MAX_BATCH_SIZE);
+        while (running) {
+            try {
+                batch.add(requests.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            requests.drainTo(batch, ThrottleStoreProtocol.MAX_BATCH_SIZE - 1);
+            try {
+                send(batch);
+            } catch (IOException e) {
+                logger.warn("Lost connection to throttle store '{}:{}', throttling locally for {}ms", host, port, RETRY_DELAY_MILLIS, e);
+                disconnect();
+                unavailableUntil = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+                for (Request request : batch) request.fail();
+                batch.clear();
+                requests.drainTo(batch);
+                for (Request request : batch) request.fail();
+            }
+            batch.clear();
+        }
+        disconnect();
+    }
+
+    private Request submit(byte operation, int commandId, ThrottleScope scope, String key, String slot,
+                           ThrottlePolicy policy, long value, boolean waiting) {
+        Request request = new Request(operation, commandId, 1, value, waiting);
+        request.addPart(scope, key, slot, policy);
+        return submit(request) ? request : null;
+    }
+
+    private boolean submit(Request request) {
+        if (!running || System.currentTimeMillis() < unavailableUntil) return false;
+        return requests.offer(request);
+    }
+
+    // Returns false when the refund could not be queued for the server.
+    private boolean refund(int commandId, ThrottleScope scope, String key, ThrottlePolicy policy) {
+        String slot = getSlotKey(commandId, scope, key);
+        CachedState cached = nearCache.get(slot);
+        if (cached != null) nearCache.replace(slot, cached, new CachedState(commandId, scope, key, policy.refund(cached.state)));
+        return submit(ThrottleStoreProtocol.REFUND, commandId, scope, key, slot, policy, 0l, false) != null;
+    }
+
+    private void addPart(Request request, ThrottleScope scope, String key, ThrottlePolicy policy) {
+        request.addPart(scope, key, getSlotKey(request.commandId, scope, key), policy);
+    }
+
+    private void send(List<Request> batch) throws IOException {
+        if (socket == null) connect();
+        out.writeInt(batch.size());
+        for (Request request : batch) {
+            String command = configuration.getCommand(request.commandId);
+            if (request.operation == ThrottleStoreProtocol.ACQUIRE) {
+                ThrottleStoreProtocol.writeAcquire(out, command, request.scopes, request.keys, request.policies,
+                        request.parts, request.value);
+            } else {
+                ThrottleStoreProtocol.writeOperation(out, request.operation, command, request.scopes[0], request.keys[0],
+                        request.policies[0], request.value);
+            }
+        }
+        out.flush();
+        roundTripCount.incrementAndGet();
+        int size = ThrottleStoreProtocol.readBatchSize(in);
+        if (size != batch.size()) throw new IOException("Expected " + batch.size() + " results but got " + size);
+        for (Request request : batch) {
+            boolean granted = in.readBoolean();
+            long[] states = new long[request.parts];
+            for (int part = 0; part < request.parts; part++) {
+                states[part] = in.readLong();
+                nearCache.put(request.slots[part], new CachedState(request.commandId, request.scopes[part],
+                        request.keys[part], states[part]));
+            }
+            if (!request.complete(granted, states) && granted && request.operation == ThrottleStoreProtocol.ACQUIRE) {
+                refundAbandoned(request, states);
+            }
+        }
+    }
+
+    private void refundAbandoned(Request request, long[] states) {
+        for (int part = 0; part < request.parts; part++) {
+            ThrottlePolicy policy = request.policies[part];
+            nearCache.put(request.slots[part], new CachedState(request.commandId, request.scopes[part], request.keys[part],
+                    policy.refund(states[part])));
+            Request refund = new Request(ThrottleStoreProtocol.REFUND, request.commandId, 1, 0l, false);
+            refund.addPart(request.scopes[part], request.keys[part], request.slots[part], policy);
+            if (!requests.offer(refund)) logger.debug("Dropped refund of abandoned throttle slot '{}'", request.slots[part]);
+        }
+    }
+
+    private void connect() throws IOException {
+        Socket newSocket = new Socket();
+        try {
+            newSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            newSocket.setTcpNoDelay(true);
+            newSocket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            in = new DataInputStream(new BufferedInputStream(newSocket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream()));
+        } catch (IOException e) {
+            newSocket.close();
+            throw e;
+        }
+        socket = newSocket;
+        logger.info("Connected to throttle store '{}:{}'", host, port);
+    }
+
+    private void disconnect() {
+        if (socket == null) return;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close throttle store connection", e);
+        }
+        socket = null;
+        in = null;
+        out = null;
+    }
+
+    private String getSlotKey(int commandId, ThrottleScope scope, String key) {
+        return ThrottleStoreProtocol.getSlotKey(configuration.getCommand(commandId), scope, key);
+    }
+
+    private static class CachedState {
+        private final int commandId;
+        private final ThrottleScope scope;
+        private final String key;
+        private final long state;
+
+        private CachedState(int commandId, ThrottleScope scope, String key, long state) {
+            this.commandId = commandId;
+            this.scope = scope;
+            this.key = key;
+            this.state = state;
+        }
+    }
+
+    // One operation on one or more slots of a command; only an ACQUIRE has more than one.
+    private static class Request {
+        private final byte operation;
+        private final int commandId;
+        private final ThrottleScope[] scopes;
+        private final String[] keys;
+        private final String[] slots;
+        private final ThrottlePolicy[] policies;
+        private final long value;
+        private final CountDownLatch done;
+        private int parts;
+        private volatile boolean succeeded;
+        private volatile boolean granted;
+        private volatile long[] states;
+        private boolean abandoned;
+
+        private Request(byte operation, int commandId, int capacity, long value, boolean waiting) {
+            this.operation = operation;
+            this.commandId = commandId;
+            scopes = new ThrottleScope[capacity];
+            keys = new String[capacity];
+            slots = new String[capacity];
+            policies = new ThrottlePolicy[capacity];
+            this.value = value;
+            done = waiting ? new CountDownLatch(1) : null;
+        }
+
+        private void addPart(ThrottleScope scope, String key, String slot, ThrottlePolicy policy) {
+            scopes[parts] = scope;
+            keys[parts] = key;
+            slots[parts] = slot;
+            policies[parts] = policy;
+            parts++;
+        }
+
+        /**
+         * Records the server's reply, returning false if the caller had already abandoned the request.
+         */
+        private synchronized boolean complete(boolean granted, long[] states) {
+            this.granted = granted;
+            this.states = states;
+            succeeded = true;
+            if (done != null) done.countDown();
+            return !abandoned;
+        }
+
+        /**
+         * Gives up waiting for the reply, returning false if it arrived in the meantime and can still be used.
+         */
+        private synchronized boolean abandon() {
+            if (succeeded) return false;
+            abandoned = true;
+            return true;
+        }
+
+        private void fail() {
+            if (done != null) done.countDown();
+        }
+
+        private boolean await(long timeoutMillis) {
+            try {
+                return done.await(timeoutMillis, TimeUnit.MILLISECONDS) && succeeded;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+/**
+ * A clock that shows whatever time it was last set to, so replayed events are throttled by their recorded times.
+ */
+public class ReplayClock implements EpochClock {
+    private volatile long currentEpochTimeMillis;
+
+    public ReplayClock(long currentEpochTimeMillis) {
+        this.currentEpochTimeMillis = currentEpochTimeMillis;
+    }
+
+    @Override
+    public long getCurrentEpochTimeMillis() {
+        return currentEpochTimeMillis;
+    }
+
+    public void setCurrentEpochTimeMillis(long currentEpochTimeMillis) {
+        this.currentEpochTimeMillis = currentEpochTimeMillis;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A response pattern compiled once into literal text and {@code {name}} placeholders. Two opening braces ("{{")
+ * write a literal '{'.
+ */
+public class ResponseTemplate {
+    private final String pattern;
+    private final String[] literals;
+    private final String[] variables;
+    private final int literalLength;
+
+    private ResponseTemplate(String pattern, String[] literals, String[] variables) {
+        this.pattern = pattern;
+        this.literals = literals;
+        this.variables = variables;
+        int length = 0;
+        for (String literal : literals) length += literal.length();
+        literalLength = length;
+    }
+
+    public static ResponseTemplate compile(String pattern) {
+        if (pattern == null) throw new IllegalArgumentException("pattern must not be null");
+        List<String> literals = new ArrayList<String>();
+        List<String> variables = new ArrayList<String>();
+        StringBuilder literal = new StringBuilder();
+        int index = 0;
+        while (index < pattern.length()) {
+            char c = pattern.charAt(index);
+            if (c != '{') {
+                literal.append(c);
+                index++;
+                continue;
+            }
+            if (index + 1 < pattern.length() && pattern.charAt(index + 1) == '{') {
+                literal.append('{');
+                index += 2;
+                continue;
+            }
+            int end = pattern.indexOf('}', index + 1);
+            if (end < 0) throw new IllegalArgumentException("Unterminated placeholder at " + index + " in '" + pattern + "'");
+            String variable = pattern.substring(index + 1, end);
+            if (variable.length() == 0) throw new IllegalArgumentException("Empty placeholder at " + index + " in '" + pattern + "'");
+            literals.add(literal.toString());
+            variables.add(variable);
+            literal.setLength(0);
+            index = end + 1;
+        }
+        literals.add(literal.toString());
+        return new ResponseTemplate(pattern, literals.toArray(new String[literals.size()]),
+                variables.toArray(new String[variables.size()]));
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public List<String> getVariables() {
+        List<String> names = new ArrayList<String>(variables.length);
+        Collections.addAll(names, variables);
+        return Collections.unmodifiableList(names);
+    }
+
+    public boolean isStatic() {
+        return variables.length == 0;
+    }
+
+    public String render(Map<String, String> values) {
+        if (isStatic()) return literals[0];
+        if (values == null) throw new IllegalArgumentException("values must not be null");
+        String[] resolved = new String[variables.length];
+        int length = literalLength;
+        for (int variable = 0; variable < variables.length; variable++) {
+            String value = values.get(variables[variable]);
+            if (value == null) throw new IllegalArgumentException("No value for placeholder '" + variables[variable] + "'");
+            resolved[variable] = value;
+            length += value.length();
+        }
+        StringBuilder builder = new StringBuilder(length);
+        for (int variable = 0; variable < variables.length; variable++) {
+            builder.append(literals[variable]).append(resolved[variable]);
+        }
+        return builder.append(literals[variables.length]).toString();
+    }
+}
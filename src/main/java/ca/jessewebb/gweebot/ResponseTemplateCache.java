@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class ResponseTemplateCache {
+    private static final int DEFAULT_MAX_SIZE = 256;
+
+    private final int maxSize;
+    private final ConcurrentMap<String, ResponseTemplate> templates;
+
+    public ResponseTemplateCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ResponseTemplateCache(int maxSize) {
+        if (maxSize < 0) throw new IllegalArgumentException("maxSize must not be negative");
+        this.maxSize = maxSize;
+        templates = new ConcurrentHashMap<String, ResponseTemplate>();
+    }
+
+    public ResponseTemplate getTemplate(String pattern) {
+        if (pattern == null) throw new IllegalArgumentException("pattern must not be null");
+        ResponseTemplate template = templates.get(pattern);
+        if (template != null) return template;
+        template = ResponseTemplate.compile(pattern);
+        // Past the limit templates are still compiled, just not kept, so odd patterns can't grow the cache forever.
+        if (templates.size() >= maxSize) return template;
+        ResponseTemplate existing = templates.putIfAbsent(pattern, template);
+        return existing != null ? existing : template;
+    }
+
+    public int size() {
+        return templates.size();
+    }
+}
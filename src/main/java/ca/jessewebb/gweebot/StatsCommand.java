@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class StatsCommand implements Command {
+    public static final String NAME = CommandListener.COMMAND_PREFIX + "stats";
+
+    private static final ResponseTemplate TEMPLATE =
+            ResponseTemplate.compile("{rate} messages per minute from about {chatters} chatters in the last {minutes} minutes");
+
+    private final ChatAnalytics analytics;
+    private final EpochClock clock;
+
+    public StatsCommand(ChatAnalytics analytics, EpochClock clock) {
+        if (analytics == null) throw new IllegalArgumentException("analytics must not be null");
+        if (clock == null) throw new IllegalArgumentException("clock must not be null");
+        this.analytics = analytics;
+        this.clock = clock;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public CommandResponse execute(CommandInvocation invocation) {
+        ChannelStatistics statistics = analytics.getChannelStatistics(invocation.getChannel());
+        if (statistics == null) return null;
+        long now = clock.getCurrentEpochTimeMillis();
+        long minutes = Math.max(1l, statistics.getWindowMillis() / 60000l);
+        long messages = statistics.getMessageCount(now);
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("rate", String.valueOf(Math.round((double) messages / minutes)));
+        values.put("chatters", String.valueOf(statistics.getUniqueChatterCount(now)));
+        values.put("minutes", String.valueOf(minutes));
+        return CommandResponse.message(TEMPLATE.render(values));
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import com.google.common.collect.ImmutableMap;
+import org.pircbotx.Configuration;
+import org.pircbotx.PircBotX;
+
+/**
+ * A bot that leaves joining channels to a {@link ChannelJoiner}. PircBotX on its own joins every channel of the
+ * previous session one line at a time when it reconnects, which is slow and ignores the server's join limits.
+ */
+public class SupervisedBot extends PircBotX {
+    public SupervisedBot(Configuration<? extends PircBotX> configuration) {
+        super(configuration);
+    }
+
+    @Override
+    protected ImmutableMap<String, String> reconnectChannels() {
+        super.reconnectChannels();
+        return ImmutableMap.of();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+/**
+ * Answers with the same fixed response every time.
+ */
+public class TextCommand implements Command {
+    private final String name;
+    private final CommandResponse response;
+
+    public TextCommand(String name, CommandResponse response) {
+        if (name == null || name.isEmpty()) throw new IllegalArgumentException("name must not be empty");
+        if (response == null) throw new IllegalArgumentException("response must not be null");
+        this.name = name;
+        this.response = response;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public CommandResponse execute(CommandInvocation invocation) {
+        return response;
+    }
+}
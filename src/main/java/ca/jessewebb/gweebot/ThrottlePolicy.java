@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+/**
+ * A token bucket holding up to {@code capacity} uses which refills one use every {@code refillMillis}.
+ *
+ * The bucket is tracked as a single theoretical arrival time (GCRA), so its whole state fits in one long that can
+ * be updated with compare-and-set. A capacity of one is a plain cooldown.
+ */
+public class ThrottlePolicy {
+    public static final long UNUSED = Long.MIN_VALUE;
+
+    private final int capacity;
+    private final long refillMillis;
+    private final long burstMillis;
+
+    public ThrottlePolicy(int capacity, long refillMillis) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        if (refillMillis < 0) throw new IllegalArgumentException("refillMillis must not be negative");
+        this.capacity = capacity;
+        this.refillMillis = refillMillis;
+        burstMillis = capacity * refillMillis;
+    }
+
+    public static ThrottlePolicy cooldown(long cooldownMillis) {
+        return new ThrottlePolicy(1, cooldownMillis);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getRefillMillis() {
+        return refillMillis;
+    }
+
+    public boolean allows(long state, long now) {
+        return consume(state, now) - now <= burstMillis;
+    }
+
+    public long consume(long state, long now) {
+        return Math.max(state, now) + refillMillis;
+    }
+
+    /**
+     * Records a use at {@code now} that was not checked first: the bucket is empty until {@code now + refillMillis}.
+     * Unlike {@link #consume}, recording several uses at once does not push the state out any further.
+     */
+    public long track(long state, long now) {
+        return Math.max(state, now + refillMillis);
+    }
+
+    public long refund(long state) {
+        return state == UNUSED ? UNUSED : state - refillMillis;
+    }
+
+    public boolean isIdle(long state, long now) {
+        return state == UNUSED || state <= now;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes throttle state as a compact binary file: a header (magic, version, written time, entry count)
+ * followed by one record per entry (scope, command, channel, user, state). Snapshots are written to a temporary
+ * file and renamed over the old one, so a crash mid-write never leaves a half written snapshot behind.
+ */
+public class ThrottleSnapshot {
+    private static final int MAGIC = 0x47575453;
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+    private static final int MAX_STRING_LENGTH = 0xffff;
+
+    private ThrottleSnapshot() {
+    }
+
+    public static void write(File file, List<ThrottleStateEntry> entries, long writtenAt) throws IOException {
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        if (entries == null) throw new IllegalArgumentException("entries must not be null");
+        byte[][] strings = new byte[entries.size() * 3][];
+        int size = HEADER_SIZE;
+        for (int index = 0; index < entries.size(); index++) {
+            ThrottleStateEntry entry = entries.get(index);
+            strings[index * 3] = encode(entry.getCommand());
+            strings[index * 3 + 1] = encode(entry.getChannel());
+            strings[index * 3 + 2] = encode(entry.getUser());
+            size += 1 + 2 + strings[index * 3].length + 2 + strings[index * 3 + 1].length + 2 + strings[index * 3 + 2].length + 8;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(writtenAt).putInt(entries.size());
+        for (int index = 0; index < entries.size(); index++) {
+            ThrottleStateEntry entry = entries.get(index);
+            buffer.put((byte) entry.getScope().ordinal());
+            for (int string = index * 3; string < index * 3 + 3; string++) {
+                buffer.putShort((short) strings[string].length).put(strings[string]);
+            }
+            buffer.putLong(entry.getState());
+        }
+        buffer.flip();
+
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(temporaryFile);
+        try {
+            FileChannel channel = outputStream.getChannel();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        } finally {
+            outputStream.close();
+        }
+        if (!temporaryFile.renameTo(file)) {
+            // Some platforms refuse to rename over an existing file.
+            if (!file.delete() || !temporaryFile.renameTo(file)) {
+                throw new IOException("Failed to replace throttle snapshot '" + file + "'");
+            }
+        }
+    }
+
+    /**
+     * Returns the entries whose cooldown is still running at {@code now}; expired entries are skipped while reading.
+     */
+    public static List<ThrottleStateEntry> read(File file, long now) throws IOException {
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            FileChannel channel = inputStream.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) ;
+            buffer.flip();
+            return read(buffer, now);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated throttle snapshot '" + file + "'");
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static List<ThrottleStateEntry> read(ByteBuffer buffer, long now) throws IOException {
+        if (buffer.getInt() != MAGIC) throw new IOException("Not a throttle snapshot");
+        int version = buffer.getInt();
+        if (version != VERSION) throw new IOException("Unsupported throttle snapshot version " + version);
+        buffer.getLong();
+        int count = buffer.getInt();
+        ThrottleScope[] scopes = ThrottleScope.values();
+        List<ThrottleStateEntry> entries = new ArrayList<ThrottleStateEntry>();
+        for (int index = 0; index < count; index++) {
+            int scope = buffer.get();
+            if (scope < 0 || scope >= scopes.length) throw new IOException("Unknown throttle scope " + scope);
+            String command = decode(buffer);
+            String channel = decode(buffer);
+            String user = decode(buffer);
+            long state = buffer.getLong();
+            if (state <= now) continue;
+            entries.add(new ThrottleStateEntry(command, scopes[scope], channel, user, state));
+        }
+        return entries;
+    }
+
+    private static byte[] encode(String value) throws IOException {
+        if (value == null) return new byte[0];
+        byte[] bytes = value.getBytes(UTF_8);
+        if (bytes.length > MAX_STRING_LENGTH) throw new IOException("Value too long for throttle snapshot");
+        return bytes;
+    }
+
+    private static String decode(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xffff;
+        if (length == 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
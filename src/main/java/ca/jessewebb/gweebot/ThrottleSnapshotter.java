@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Periodically writes the state of one or more throttlers to a snapshot file from its own thread, and once more on
+ * shutdown, so a restarted bot can pick up the cooldowns that were still running.
+ */
+public class ThrottleSnapshotter implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(ThrottleSnapshotter.class);
+
+    private final List<CommandThrottler> throttlers;
+    private final File file;
+    private final EpochClock clock;
+    private final long intervalMillis;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public ThrottleSnapshotter(List<CommandThrottler> throttlers, File file, EpochClock clock, long intervalMillis) {
+        if (throttlers == null) throw new IllegalArgumentException("throttlers must not be null");
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        if (clock == null) throw new IllegalArgumentException("clock must not be null");
+        if (intervalMillis <= 0) throw new IllegalArgumentException("intervalMillis must be positive");
+        this.throttlers = new ArrayList<CommandThrottler>(throttlers);
+        this.file = file;
+        this.clock = clock;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public synchronized void writeSnapshot() throws IOException {
+        List<ThrottleStateEntry> entries = new ArrayList<ThrottleStateEntry>();
+        for (CommandThrottler throttler : throttlers) {
+            entries.addAll(throttler.exportState());
+        }
+        ThrottleSnapshot.write(file, entries, clock.getCurrentEpochTimeMillis());
+        logger.debug("Wrote {} throttle entries to '{}'", entries.size(), file);
+    }
+
+    public synchronized void start() {
+        if (thread != null) return;
+        running = true;
+        thread = new Thread(this, "throttle-snapshotter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            running = false;
+            if (thread != null) {
+                thread.interrupt();
+                thread = null;
+            }
+        }
+        writeSnapshotQuietly();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            writeSnapshotQuietly();
+        }
+    }
+
+    private void writeSnapshotQuietly() {
+        try {
+            writeSnapshot();
+        } catch (IOException e) {
+            logger.warn("Failed to write throttle snapshot '{}'", file, e);
+        }
+    }
+}
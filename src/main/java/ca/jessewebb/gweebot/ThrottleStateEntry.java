@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+public class ThrottleStateEntry {
+    private final String command;
+    private final ThrottleScope scope;
+    private final String channel;
+    private final String user;
+    private final long state;
+
+    public ThrottleStateEntry(String command, ThrottleScope scope, String channel, String user, long state) {
+        if (command == null) throw new IllegalArgumentException("command must not be null");
+        if (scope == null) throw new IllegalArgumentException("scope must not be null");
+        if (scope != ThrottleScope.GLOBAL && channel == null) throw new IllegalArgumentException("channel must not be null");
+        if (scope == ThrottleScope.USER && user == null) throw new IllegalArgumentException("user must not be null");
+        this.command = command;
+        this.scope = scope;
+        this.channel = scope == ThrottleScope.GLOBAL ? null : channel;
+        this.user = scope == ThrottleScope.USER ? user : null;
+        this.state = state;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public ThrottleScope getScope() {
+        return scope;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public long getState() {
+        return state;
+    }
+}
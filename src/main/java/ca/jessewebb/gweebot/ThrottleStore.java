@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.Map;
+
+/**
+ * Holds the throttle state of each (command, scope, key) slot for a {@link CommandThrottler}. The key is null for
+ * {@link ThrottleScope#GLOBAL}, the channel for {@link ThrottleScope#CHANNEL} and "channel user" for
+ * {@link ThrottleScope#USER}.
+ */
+public interface ThrottleStore {
+    /**
+     * Takes the user, channel and global slots of a command together, either all of them or none. A scope is skipped
+     * when its policy is null; a user or channel policy is only given along with the channel and user it needs, which
+     * are passed apart so a store can look up user slots without building a "channel user" key.
+     */
+    boolean tryAcquire(int commandId, String channel, String user, ThrottlePolicy userPolicy, ThrottlePolicy channelPolicy,
+                       ThrottlePolicy globalPolicy, long now);
+
+    /**
+     * Marks the slot as used at {@code now} without checking it, as {@link ThrottlePolicy#track} does.
+     */
+    void consume(int commandId, ThrottleScope scope, String key, ThrottlePolicy policy, long now);
+
+    /**
+     * Hands back the slots taken by {@link #tryAcquire}, given the same channel, user and policies.
+     */
+    void refund(int commandId, String channel, String user, ThrottlePolicy userPolicy, ThrottlePolicy channelPolicy,
+                ThrottlePolicy globalPolicy);
+
+    long getState(int commandId, ThrottleScope scope, String key);
+
+    Map<String, Long> getStates(int commandId, ThrottleScope scope);
+
+    void restoreState(int commandId, ThrottleScope scope, String key, long state);
+
+    void evictIdle(int commandId, ThrottleScope scope, ThrottlePolicy policy, long now);
+
+    int getTrackedKeyCount();
+
+    /**
+     * Switches to a configuration that keeps the command ids of the current one and may add new commands.
+     */
+    void reconfigure(CommandThrottlerConfiguration configuration);
+}
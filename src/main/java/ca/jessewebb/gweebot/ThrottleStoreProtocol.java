@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Wire format shared by {@link RemoteThrottleStore} and {@link ThrottleStoreServer}. A client writes a batch as a
+ * count followed by that many operations; the server answers with a count followed by one (granted, state) result
+ * per operation, in the same order. An {@link #ACQUIRE} covers every scope of a command at once, so its result has
+ * one state per scope.
+ */
+final class ThrottleStoreProtocol {
+    static final byte ACQUIRE = 1;
+    static final byte CONSUME = 2;
+    static final byte REFUND = 3;
+    static final byte GET = 4;
+    static final byte RESTORE = 5;
+
+    static final int MAX_BATCH_SIZE = 256;
+
+    private ThrottleStoreProtocol() {
+    }
+
+    static String getSlotKey(String command, ThrottleScope scope, String key) {
+        StringBuilder builder = new StringBuilder(command.length() + 3 + (key == null ? 0 : key.length()));
+        builder.append(command).append('\n').append(scope.ordinal()).append('\n');
+        if (key != null) builder.append(key);
+        return builder.toString();
+    }
+
+    static void writeOperation(DataOutputStream out, byte operation, String command, ThrottleScope scope, String key,
+                               ThrottlePolicy policy, long value) throws IOException {
+        out.writeByte(operation);
+        out.writeUTF(command);
+        out.writeByte(scope.ordinal());
+        out.writeBoolean(key != null);
+        if (key != null) out.writeUTF(key);
+        out.writeInt(policy == null ? 1 : policy.getCapacity());
+        out.writeLong(policy == null ? 0l : policy.getRefillMillis());
+        out.writeLong(value);
+    }
+
+    static void writeAcquire(DataOutputStream out, String command, ThrottleScope[] scopes, String[] keys,
+                             ThrottlePolicy[] policies, int count, long now) throws IOException {
+        out.writeByte(ACQUIRE);
+        out.writeUTF(command);
+        out.writeByte(count);
+        for (int part = 0; part < count; part++) {
+            out.writeByte(scopes[part].ordinal());
+            out.writeBoolean(keys[part] != null);
+            if (keys[part] != null) out.writeUTF(keys[part]);
+            out.writeInt(policies[part].getCapacity());
+            out.writeLong(policies[part].getRefillMillis());
+        }
+        out.writeLong(now);
+    }
+
+    static int readBatchSize(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0 || size > MAX_BATCH_SIZE) throw new IOException("Invalid throttle store batch size " + size);
+        return size;
+    }
+
+    static int readScopeCount(DataInputStream in) throws IOException {
+        int count = in.readByte();
+        if (count < 1 || count > ThrottleScope.values().length) throw new IOException("Invalid throttle scope count " + count);
+        return count;
+    }
+
+    static ThrottlePolicy readPolicy(DataInputStream in) throws IOException {
+        int capacity = in.readInt();
+        long refillMillis = in.readLong();
+        if (capacity < 1 || refillMillis < 0) throw new IOException("Invalid throttle policy");
+        return new ThrottlePolicy(capacity, refillMillis);
+    }
+
+    static ThrottleScope readScope(DataInputStream in) throws IOException {
+        int scope = in.readByte();
+        ThrottleScope[] scopes = ThrottleScope.values();
+        if (scope < 0 || scope >= scopes.length) throw new IOException("Unknown throttle scope " + scope);
+        return scopes[scope];
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small TCP server holding throttle state for several bot processes, used with {@link RemoteThrottleStore}.
+ * Slots are keyed by command name rather than id, so bots only have to agree on command names.
+ */
+public class ThrottleStoreServer implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(ThrottleStoreServer.class);
+
+    private static final long EVICTION_INTERVAL_MILLIS = 60000l;
+    private static final ThrottlePolicy IDLE_POLICY = ThrottlePolicy.cooldown(0l);
+
+    private final String host;
+    private final int port;
+    private final EpochClock clock;
+    private final ConcurrentMap<String, AtomicLong> states;
+    private final Set<Socket> connections;
+    private final AtomicLong operationCount;
+    private final AtomicLong nextEviction;
+
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+    private Thread thread;
+
+    public ThrottleStoreServer(String host, int port, EpochClock clock) {
+        if (host == null) throw new IllegalArgumentException("host must not be null");
+        if (port < 0) throw new IllegalArgumentException("port must not be negative");
+        if (clock == null) throw new IllegalArgumentException("clock must not be null");
+        this.host = host;
+        this.port = port;
+        this.clock = clock;
+        states = new ConcurrentHashMap<String, AtomicLong>();
+        connections = new CopyOnWriteArraySet<Socket>();
+        operationCount = new AtomicLong();
+        nextEviction = new AtomicLong(clock.getCurrentEpochTimeMillis() + EVICTION_INTERVAL_MILLIS);
+    }
+
+    public synchronized void start() throws IOException {
+        if (thread != null) return;
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName(host));
+        running = true;
+        thread = new Thread(this, "throttle-store-server");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Throttle store listening on '{}:{}'", host, serverSocket.getLocalPort());
+    }
+
+    public synchronized void stop() {
+        running = false;
+        closeQuietly(serverSocket);
+        for (Socket connection : connections) {
+            closeQuietly(connection);
+        }
+        thread = null;
+    }
+
+    public synchronized int getPort() {
+        return serverSocket == null ? port : serverSocket.getLocalPort();
+    }
+
+    public long getOperationCount() {
+        return operationCount.get();
+    }
+
+    public int getSlotCount() {
+        return states.size();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                final Socket connection = serverSocket.accept();
+                connection.setTcpNoDelay(true);
+                connections.add(connection);
+                Thread handler = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(connection);
+                    }
+                }, "throttle-store-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (running) logger.warn("Failed to accept throttle store connection", e);
+            }
+        }
+    }
+
+    private void handle(Socket connection) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            while (running) {
+                int size = ThrottleStoreProtocol.readBatchSize(in);
+                out.writeInt(size);
+                for (int index = 0; index < size; index++) {
+                    handleOperation(in, out);
+                }
+                out.flush();
+                evictIdleIfDue();
+            }
+        } catch (IOException e) {
+            if (running) logger.debug("Throttle store connection closed", e);
+        } finally {
+            connections.remove(connection);
+            closeQuietly(connection);
+        }
+    }
+
+    private void handleOperation(DataInputStream in, DataOutputStream out) throws IOException {
+        byte operation = in.readByte();
+        if (operation == ThrottleStoreProtocol.ACQUIRE) {
+            handleAcquire(in, out);
+            return;
+        }
+        String command = in.readUTF();
+        ThrottleScope scope = ThrottleStoreProtocol.readScope(in);
+        String key = in.readBoolean() ? in.readUTF() : null;
+        int capacity = in.readInt();
+        long refillMillis = in.readLong();
+        long value = in.readLong();
+        if (capacity < 1 || refillMillis < 0) throw new IOException("Invalid throttle policy");
+
+        String slot = ThrottleStoreProtocol.getSlotKey(command, scope, key);
+        boolean granted = true;
+        switch (operation) {
+            case ThrottleStoreProtocol.CONSUME:
+                LocalThrottleStore.consume(states, slot, new ThrottlePolicy(capacity, refillMillis), value);
+                break;
+            case ThrottleStoreProtocol.REFUND:
+                LocalThrottleStore.refund(states, slot, new ThrottlePolicy(capacity, refillMillis));
+                break;
+            case ThrottleStoreProtocol.GET:
+                break;
+            case ThrottleStoreProtocol.RESTORE:
+                LocalThrottleStore.restoreState(states, slot, value);
+                break;
+            default:
+                throw new IOException("Unknown throttle store operation " + operation);
+        }
+        operationCount.incrementAndGet();
+        out.writeBoolean(granted);
+        out.writeLong(LocalThrottleStore.getState(states, slot));
+    }
+
+    // Takes every scope or none: scopes already taken are refunded as soon as one is throttled.
+    private void handleAcquire(DataInputStream in, DataOutputStream out) throws IOException {
+        String command = in.readUTF();
+        int count = ThrottleStoreProtocol.readScopeCount(in);
+        String[] slots = new String[count];
+        ThrottlePolicy[] policies = new ThrottlePolicy[count];
+        for (int part = 0; part < count; part++) {
+            ThrottleScope scope = ThrottleStoreProtocol.readScope(in);
+            String key = in.readBoolean() ? in.readUTF() : null;
+            policies[part] = ThrottleStoreProtocol.readPolicy(in);
+            slots[part] = ThrottleStoreProtocol.getSlotKey(command, scope, key);
+        }
+        long now = in.readLong();
+
+        int acquired = 0;
+        while (acquired < count && LocalThrottleStore.tryAcquire(states, slots[acquired], policies[acquired], now)) {
+            acquired++;
+        }
+        boolean granted = acquired == count;
+        if (!granted) {
+            for (int part = acquired - 1; part >= 0; part--) {
+                LocalThrottleStore.refund(states, slots[part], policies[part]);
+            }
+        }
+        operationCount.incrementAndGet();
+        out.writeBoolean(granted);
+        for (String slot : slots) {
+            out.writeLong(LocalThrottleStore.getState(states, slot));
+        }
+    }
+
+    private void evictIdleIfDue() {
+        long now = clock.getCurrentEpochTimeMillis();
+        long due = nextEviction.get();
+        if (now < due || !nextEviction.compareAndSet(due, now + EVICTION_INTERVAL_MILLIS)) return;
+        LocalThrottleStore.evictIdle(states, IDLE_POLICY, now);
+    }
+
+    private static void closeQuietly(ServerSocket socket) {
+        if (socket == null) return;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close throttle store server socket", e);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close throttle store connection", e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+public class TimeCommand implements Command {
+    public static final String NAME = CommandListener.COMMAND_PREFIX + "time";
+
+    private static final String TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
+
+    private final EpochClock clock;
+    private final CachedTimeFormatter timeFormatter;
+    private volatile CommandResponse cachedResponse;
+
+    public TimeCommand() {
+        this(new SystemClock());
+    }
+
+    public TimeCommand(EpochClock clock) {
+        if (clock == null) throw new IllegalArgumentException("clock must not be null");
+        this.clock = clock;
+        timeFormatter = new CachedTimeFormatter(TIME_PATTERN);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public CommandResponse execute(CommandInvocation invocation) {
+        String timeString = timeFormatter.format(clock.getCurrentEpochTimeMillis());
+        CommandResponse response = cachedResponse;
+        // The formatter hands out one String instance per second, so identity tells us the second has changed.
+        if (response == null || response.getText() != timeString) {
+            response = CommandResponse.message(timeString);
+            cachedResponse = response;
+        }
+        return response;
+    }
+}
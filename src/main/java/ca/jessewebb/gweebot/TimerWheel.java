@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A hashed timing wheel: timers are hashed by their deadline tick into a ring of buckets, so scheduling and cancelling
+ * are constant time however many timers are pending, and each tick only looks at one bucket. Timers fire on the
+ * wheel's single driver thread (or whoever calls {@link #runDueTasks()}) no earlier than their deadline and at most
+ * one tick late. Time comes from an {@link EpochClock}, so tests can drive the wheel by hand.
+ */
+public class TimerWheel implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+    public static final long DEFAULT_TICK_MILLIS = 100l;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final EpochClock clock;
+    private final long tickMillis;
+    private final int mask;
+    private final Bucket[] buckets;
+    private final long startTime;
+    private final Queue<Timeout> scheduledTimeouts;
+    private final Queue<Timeout> cancelledTimeouts;
+    private final AtomicInteger pendingCount;
+    private long tick;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public TimerWheel(EpochClock clock) {
+        this(clock, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    public TimerWheel(EpochClock clock, long tickMillis, int wheelSize) {
+        if (clock == null) throw new IllegalArgumentException("clock must not be null");
+        if (tickMillis <= 0) throw new IllegalArgumentException("tickMillis must be positive");
+        if (wheelSize < 1 || Integer.bitCount(wheelSize) != 1) throw new IllegalArgumentException("wheelSize must be a power of two");
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        mask = wheelSize - 1;
+        buckets = new Bucket[wheelSize];
+        for (int bucket = 0; bucket < wheelSize; bucket++) buckets[bucket] = new Bucket();
+        startTime = clock.getCurrentEpochTimeMillis();
+        scheduledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+        cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+        pendingCount = new AtomicInteger();
+    }
+
+    /**
+     * Runs {@code task} once, {@code delayMillis} from now. Safe to call from any thread, including from a task.
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        if (delayMillis < 0) throw new IllegalArgumentException("delayMillis must not be negative");
+        return scheduleAt(task, clock.getCurrentEpochTimeMillis() + delayMillis);
+    }
+
+    /**
+     * Runs {@code task} once at the given epoch time, or on the next tick when that has already passed. Repeating
+     * work can schedule its next run from the previous deadline so it does not drift.
+     */
+    public Timeout scheduleAt(Runnable task, long deadlineMillis) {
+        if (task == null) throw new IllegalArgumentException("task must not be null");
+        Timeout timeout = new Timeout(this, task, deadlineMillis);
+        pendingCount.incrementAndGet();
+        scheduledTimeouts.add(timeout);
+        return timeout;
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Fires every timer whose tick has passed. The driver thread calls this once per tick.
+     */
+    public void runDueTasks() {
+        long now = clock.getCurrentEpochTimeMillis();
+        synchronized (this) {
+            while (startTime + (tick + 1) * tickMillis <= now) {
+                transferScheduledTimeouts();
+                removeCancelledTimeouts();
+                buckets[(int) (tick & mask)].expire(this);
+                tick++;
+            }
+        }
+    }
+
+    public synchronized void start() {
+        if (thread != null) return;
+        running = true;
+        thread = new Thread(this, "timer-wheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Thread.sleep(tickMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            runDueTasks();
+        }
+    }
+
+    private void transferScheduledTimeouts() {
+        Timeout timeout;
+        while ((timeout = scheduledTimeouts.poll()) != null) {
+            if (timeout.isCancelled()) continue;
+            long deadlineTick = Math.max(0l, (timeout.deadline - startTime) / tickMillis);
+            long targetTick = Math.max(deadlineTick, tick);
+            timeout.remainingRounds = (targetTick - tick) / buckets.length;
+            buckets[(int) (targetTick & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelledTimeouts() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) timeout.bucket.remove(timeout);
+        }
+    }
+
+    private void fire(Timeout timeout) {
+        if (!timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) return;
+        pendingCount.decrementAndGet();
+        try {
+            timeout.task.run();
+        } catch (RuntimeException e) {
+            logger.warn("Scheduled task failed", e);
+        }
+    }
+
+    /**
+     * A scheduled task that can be cancelled until it has run.
+     */
+    public static class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimerWheel wheel;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state;
+
+        // Only touched by the thread running the wheel.
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(TimerWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+            state = new AtomicInteger(PENDING);
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * Returns false when the task already ran or was cancelled before.
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) return false;
+            wheel.pendingCount.decrementAndGet();
+            wheel.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    private static class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.previous = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+        private void expire(TimerWheel wheel) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    wheel.fire(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.List;
+
+public class TopCommand implements Command {
+    public static final String NAME = CommandListener.COMMAND_PREFIX + "top";
+
+    private static final int TOP_LIMIT = 5;
+
+    private final ChatAnalytics analytics;
+    private final EpochClock clock;
+
+    public TopCommand(ChatAnalytics analytics, EpochClock clock) {
+        if (analytics == null) throw new IllegalArgumentException("analytics must not be null");
+        if (clock == null) throw new IllegalArgumentException("clock must not be null");
+        this.analytics = analytics;
+        this.clock = clock;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public CommandResponse execute(CommandInvocation invocation) {
+        ChannelStatistics statistics = analytics.getChannelStatistics(invocation.getChannel());
+        long now = clock.getCurrentEpochTimeMillis();
+        List<TopItem> chatters = statistics == null ? null : statistics.getTopChatters(TOP_LIMIT, now);
+        if (chatters == null || chatters.isEmpty()) return null;
+        StringBuilder text = new StringBuilder("Top chatters: ");
+        appendItems(text, chatters);
+        List<TopItem> words = statistics.getTopWords(TOP_LIMIT, now);
+        if (!words.isEmpty()) {
+            text.append(". Top words: ");
+            appendItems(text, words);
+        }
+        return CommandResponse.message(text.toString());
+    }
+
+    private static void appendItems(StringBuilder text, List<TopItem> items) {
+        for (int index = 0; index < items.size(); index++) {
+            if (index > 0) text.append(", ");
+            text.append(items.get(index).getItem()).append(" (").append(items.get(index).getCount()).append(')');
+        }
+    }
+}
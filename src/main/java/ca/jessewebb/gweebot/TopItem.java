@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+public class TopItem {
+    private final String item;
+    private final long count;
+
+    public TopItem(String item, long count) {
+        if (item == null) throw new IllegalArgumentException("item must not be null");
+        this.item = item;
+        this.count = count;
+    }
+
+    public String getItem() {
+        return item;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.Locale;
+
+/**
+ * Tracks up to {@code capacity} candidate heavy hitters and their latest count estimates, replacing the smallest
+ * candidate when a bigger one shows up. Candidates are matched by hash, so the item text is only copied out of its
+ * source when an item becomes a candidate.
+ */
+public class TopKTracker {
+    private final long[] hashes;
+    private final String[] items;
+    private final long[] counts;
+    private int size;
+
+    public TopKTracker(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        hashes = new long[capacity];
+        items = new String[capacity];
+        counts = new long[capacity];
+    }
+
+    public void offer(long hash, long count, String source, int start, int end) {
+        for (int index = 0; index < size; index++) {
+            if (hashes[index] == hash) {
+                counts[index] = count;
+                return;
+            }
+        }
+        int index;
+        if (size < hashes.length) {
+            index = size++;
+        } else {
+            index = 0;
+            for (int candidate = 1; candidate < size; candidate++) {
+                if (counts[candidate] < counts[index]) index = candidate;
+            }
+            if (counts[index] >= count) return;
+        }
+        hashes[index] = hash;
+        items[index] = source.substring(start, end).toLowerCase(Locale.ENGLISH);
+        counts[index] = count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getHash(int index) {
+        return hashes[index];
+    }
+
+    public String getItem(int index) {
+        return items[index];
+    }
+
+    public void clear() {
+        for (int index = 0; index < size; index++) {
+            items[index] = null;
+        }
+        size = 0;
+    }
+}
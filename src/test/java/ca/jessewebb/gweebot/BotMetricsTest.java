@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BotMetricsTest {
+
+    private static final String TEST_COMMAND = "!test";
+
+    private BotMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new BotMetrics();
+    }
+
+    @Test
+    public void commandThrottled_shouldCountTotalAndPerCommand() {
+        metrics.commandRecognized(TEST_COMMAND);
+        metrics.commandThrottled(TEST_COMMAND);
+        assertEquals(1, metrics.getCommandsRecognized());
+        assertEquals(1, metrics.getCommandsThrottled());
+        String text = metrics.toPrometheusText();
+        assertTrue(text.contains("gweebot_command_total{command=\"!test\",outcome=\"throttled\"} 1\n"));
+        assertTrue(text.contains("gweebot_commands_throttled_total 1\n"));
+    }
+
+    @Test
+    public void replySent_shouldRecordLatencyInCumulativeBuckets() {
+        metrics.replySent(3l);
+        metrics.replySent(40l);
+        metrics.replySent(60000l);
+        String text = metrics.toPrometheusText();
+        assertTrue(text.contains("gweebot_reply_latency_seconds_bucket{le=\"0.002\"} 0\n"));
+        assertTrue(text.contains("gweebot_reply_latency_seconds_bucket{le=\"0.005\"} 1\n"));
+        assertTrue(text.contains("gweebot_reply_latency_seconds_bucket{le=\"0.05\"} 2\n"));
+        assertTrue(text.contains("gweebot_reply_latency_seconds_bucket{le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("gweebot_reply_latency_seconds_count 3\n"));
+        assertEquals(3, metrics.getRepliesSent());
+    }
+
+    @Test
+    public void getPercentile_shouldReturnUpperBoundOfBucketContainingRank() {
+        LatencyHistogram histogram = new LatencyHistogram(new long[]{10l, 100l, 1000l});
+        for (int i = 0; i < 90; i++) histogram.record(5l);
+        for (int i = 0; i < 10; i++) histogram.record(500l);
+        assertEquals(10l, histogram.getPercentile(50.0));
+        assertEquals(10l, histogram.getPercentile(90.0));
+        assertEquals(1000l, histogram.getPercentile(99.0));
+    }
+
+    @Test
+    public void addGauge_shouldPublishCurrentGaugeValue() {
+        metrics.addGauge("test_gauge", "A test gauge", new MetricsGauge() {
+            @Override
+            public long getValue() {
+                return 42l;
+            }
+        });
+        assertTrue(metrics.toPrometheusText().contains("# TYPE gweebot_test_gauge gauge\ngweebot_test_gauge 42\n"));
+    }
+
+    @Test
+    public void addCounter_shouldPublishCurrentValueAsCounter() {
+        metrics.addCounter("test_events_total", "A test counter", new MetricsCounter() {
+            @Override
+            public long getValue() {
+                return 7l;
+            }
+        });
+        assertTrue(metrics.toPrometheusText().contains("# TYPE gweebot_test_events_total counter\ngweebot_test_events_total 7\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addCounter_shouldThrowIllegalArgumentException_whenNameDoesNotEndWithTotal() {
+        metrics.addCounter("test_events", "A test counter", new MetricsCounter() {
+            @Override
+            public long getValue() {
+                return 7l;
+            }
+        });
+    }
+
+    @Test
+    public void metricsHttpServer_shouldServePrometheusText() throws Exception {
+        metrics.messageSeen();
+        MetricsHttpServer server = new MetricsHttpServer(metrics, "127.0.0.1", 0);
+        server.start();
+        try {
+            URL url = new URL("http://127.0.0.1:" + server.getPort() + MetricsHttpServer.METRICS_PATH);
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/plain"));
+            assertTrue(read(connection.getInputStream()).contains("gweebot_messages_seen_total 1\n"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static String read(InputStream in) throws Exception {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
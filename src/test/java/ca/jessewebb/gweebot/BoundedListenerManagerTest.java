@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.After;
+import org.junit.Test;
+import org.pircbotx.Channel;
+import org.pircbotx.PircBotX;
+import org.pircbotx.hooks.Event;
+import org.pircbotx.hooks.Listener;
+import org.pircbotx.hooks.events.MessageEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BoundedListenerManagerTest {
+
+    private static final String TEST_CHANNEL = "#test";
+
+    private BoundedListenerManager listenerManager;
+
+    @After
+    public void tearDown() {
+        if (listenerManager != null) listenerManager.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_shouldThrowIllegalArgumentException_whenWorkerCountIsZero() {
+        new BoundedListenerManager(0, 1, OverflowPolicy.BLOCK);
+    }
+
+    @Test
+    public void dispatchEvent_shouldDeliverChannelEventsInOrder_whenThereAreSeveralWorkers() throws Exception {
+        listenerManager = new BoundedListenerManager(4, 1000, OverflowPolicy.BLOCK);
+        RecordingListener listener = new RecordingListener(500);
+        listenerManager.addListener(listener);
+        for (int i = 0; i < 500; i++) {
+            listenerManager.dispatchEvent(messageEvent(TEST_CHANNEL, "!message" + i));
+        }
+        assertTrue(listener.await());
+        for (int i = 0; i < 500; i++) {
+            assertEquals("!message" + i, listener.messages.get(i));
+        }
+    }
+
+    @Test
+    public void dispatchEvent_shouldDropNonCommandMessage_whenQueueIsFull() throws Exception {
+        listenerManager = new BoundedListenerManager(1, 2, OverflowPolicy.DROP_NON_COMMAND);
+        BlockingListener blocker = new BlockingListener();
+        listenerManager.addListener(blocker);
+        listenerManager.dispatchEvent(messageEvent(TEST_CHANNEL, "busy"));
+        assertTrue(blocker.started.await(5, TimeUnit.SECONDS));
+        listenerManager.dispatchEvent(messageEvent(TEST_CHANNEL, "chat"));
+        listenerManager.dispatchEvent(messageEvent(TEST_CHANNEL, "!command"));
+        listenerManager.dispatchEvent(messageEvent(TEST_CHANNEL, "more chat"));
+        assertEquals(1, listenerManager.getDroppedCount());
+
+        listenerManager.dispatchEvent(messageEvent(TEST_CHANNEL, "!another"));
+        assertEquals(2, listenerManager.getDroppedCount());
+        assertEquals(2, listenerManager.getQueueDepth());
+        blocker.release.countDown();
+    }
+
+    @Test
+    public void dispatchEvent_shouldDropOldestCommandInsteadOfBlocking_whenQueueHoldsOnlyCommands() throws Exception {
+        listenerManager = new BoundedListenerManager(1, 2, OverflowPolicy.DROP_NON_COMMAND);
+        BlockingListener blocker = new BlockingListener();
+        listenerManager.addListener(blocker);
+        listenerManager.dispatchEvent(messageEvent(TEST_CHANNEL, "busy"));
+        assertTrue(blocker.started.await(5, TimeUnit.SECONDS));
+        listenerManager.dispatchEvent(messageEvent(TEST_CHANNEL, "!first"));
+        listenerManager.dispatchEvent(messageEvent(TEST_CHANNEL, "!second"));
+        listenerManager.dispatchEvent(messageEvent(TEST_CHANNEL, "!third"));
+        assertEquals(1, listenerManager.getDroppedCount());
+        assertEquals(2, listenerManager.getQueueDepth());
+        blocker.release.countDown();
+    }
+
+    @Test
+    public void dispatchEvent_shouldDropOldestEvent_whenQueueIsFull() throws Exception {
+        listenerManager = new BoundedListenerManager(1, 2, OverflowPolicy.DROP_OLDEST);
+        BlockingListener blocker = new BlockingListener();
+        listenerManager.addListener(blocker);
+        listenerManager.dispatchEvent(messageEvent(TEST_CHANNEL, "busy"));
+        assertTrue(blocker.started.await(5, TimeUnit.SECONDS));
+        listenerManager.dispatchEvent(messageEvent(TEST_CHANNEL, "!first"));
+        listenerManager.dispatchEvent(messageEvent(TEST_CHANNEL, "!second"));
+        listenerManager.dispatchEvent(messageEvent(TEST_CHANNEL, "!third"));
+        assertEquals(1, listenerManager.getDroppedCount());
+        assertEquals(2, listenerManager.getQueueDepth());
+        blocker.release.countDown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MessageEvent<PircBotX> messageEvent(String channelName, String message) {
+        Channel channel = mock(Channel.class);
+        when(channel.getName()).thenReturn(channelName);
+        MessageEvent<PircBotX> event = mock(MessageEvent.class);
+        when(event.getChannel()).thenReturn(channel);
+        when(event.getMessage()).thenReturn(message);
+        return event;
+    }
+
+    private static class RecordingListener implements Listener<PircBotX> {
+        private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch received;
+
+        private RecordingListener(int expectedCount) {
+            received = new CountDownLatch(expectedCount);
+        }
+
+        @Override
+        public void onEvent(Event<PircBotX> event) {
+            messages.add(((MessageEvent<PircBotX>) event).getMessage());
+            received.countDown();
+        }
+
+        private boolean await() throws InterruptedException {
+            return received.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class BlockingListener implements Listener<PircBotX> {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void onEvent(Event<PircBotX> event) {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
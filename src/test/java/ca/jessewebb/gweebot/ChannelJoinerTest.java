@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pircbotx.PircBotX;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ChannelJoinerTest {
+
+    private static final long START_MILLIS = 1000000l;
+    private static final int JOIN_LIMIT = 4;
+    private static final long PERIOD_MILLIS = 10000l;
+    private static final int BATCH_SIZE = 2;
+
+    private EpochClock mockClock;
+    private PircBotX firstBot;
+    private PircBotX secondBot;
+    private List<String> sentJoins;
+    private ChannelJoiner joiner;
+
+    @Before
+    public void setUp() {
+        mockClock = mock(EpochClock.class);
+        setTime(START_MILLIS);
+        firstBot = mock(PircBotX.class);
+        secondBot = mock(PircBotX.class);
+        sentJoins = new ArrayList<String>();
+        joiner = new ChannelJoiner(mockClock, JOIN_LIMIT, PERIOD_MILLIS, BATCH_SIZE) {
+            @Override
+            protected void sendJoin(PircBotX bot, String channelList) {
+                sentJoins.add((bot == firstBot ? "first " : "second ") + channelList);
+            }
+        };
+    }
+
+    @Test
+    public void sendDueBatches_shouldReturnMinusOne_whenNothingIsQueued() {
+        assertEquals(-1l, joiner.sendDueBatches());
+    }
+
+    @Test
+    public void sendDueBatches_shouldJoinSeveralChannelsPerLine_upToTheJoinLimit() {
+        joiner.enqueue(firstBot, Arrays.asList("#a", "#b", "#c", "#d", "#e"));
+        assertEquals(PERIOD_MILLIS, joiner.sendDueBatches());
+        assertEquals(Arrays.asList("first #a,#b", "first #c,#d"), sentJoins);
+        assertEquals(1, joiner.getPendingBatchCount());
+    }
+
+    @Test
+    public void sendDueBatches_shouldJoinMoreChannels_whenThePeriodHasPassed() {
+        joiner.enqueue(firstBot, Arrays.asList("#a", "#b", "#c", "#d", "#e"));
+        joiner.sendDueBatches();
+        setTime(START_MILLIS + PERIOD_MILLIS - 1);
+        assertEquals(1l, joiner.sendDueBatches());
+        assertEquals(2, sentJoins.size());
+        setTime(START_MILLIS + PERIOD_MILLIS);
+        assertEquals(-1l, joiner.sendDueBatches());
+        assertEquals("first #e", sentJoins.get(2));
+    }
+
+    @Test
+    public void sendDueBatches_shouldShareTheJoinLimit_acrossBots() {
+        joiner.enqueue(firstBot, Arrays.asList("#a", "#b", "#c"));
+        joiner.enqueue(secondBot, Arrays.asList("#x", "#y"));
+        joiner.sendDueBatches();
+        assertEquals(Arrays.asList("first #a,#b", "first #c"), sentJoins);
+        setTime(START_MILLIS + PERIOD_MILLIS);
+        joiner.sendDueBatches();
+        assertEquals("second #x,#y", sentJoins.get(2));
+    }
+
+    @Test
+    public void enqueue_shouldReplaceBatchesQueuedForTheSameBot() {
+        joiner.enqueue(firstBot, Arrays.asList("#a", "#b", "#c", "#d", "#e", "#f"));
+        joiner.sendDueBatches();
+        joiner.enqueue(firstBot, Arrays.asList("#a", "#b"));
+        assertEquals(1, joiner.getPendingBatchCount());
+    }
+
+    private void setTime(long millis) {
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(millis);
+    }
+}
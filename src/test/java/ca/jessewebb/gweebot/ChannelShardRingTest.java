@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelShardRingTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_shouldThrowIllegalArgumentException_whenShardCountIsNotPositive() {
+        new ChannelShardRing(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getShard_shouldThrowIllegalArgumentException_whenChannelIsNull() {
+        new ChannelShardRing(2).getShard(null);
+    }
+
+    @Test
+    public void getShardCount_shouldRoundUp_whenChannelsDoNotFillLastShard() {
+        assertEquals(1, ChannelShardRing.getShardCount(0, 50));
+        assertEquals(1, ChannelShardRing.getShardCount(50, 50));
+        assertEquals(2, ChannelShardRing.getShardCount(51, 50));
+    }
+
+    @Test
+    public void getShard_shouldIgnoreCase() {
+        ChannelShardRing ring = new ChannelShardRing(8);
+        assertEquals(ring.getShard("#gweebztv"), ring.getShard("#GweebzTV"));
+    }
+
+    @Test
+    public void assign_shouldSpreadChannelsOverAllShards() {
+        List<List<String>> assignment = new ChannelShardRing(4).assign(buildChannels(1000));
+        int total = 0;
+        for (List<String> shard : assignment) {
+            assertTrue("shard has " + shard.size() + " channels", shard.size() > 150 && shard.size() < 350);
+            total += shard.size();
+        }
+        assertEquals(1000, total);
+    }
+
+    @Test
+    public void assign_shouldNotExceedMaxChannelsPerShard_whenLoadIsBounded() {
+        List<String> channels = buildChannels(1000);
+        List<List<String>> assignment = new ChannelShardRing(4).assign(channels, 250);
+        for (List<String> shard : assignment) {
+            assertEquals(250, shard.size());
+        }
+    }
+
+    @Test
+    public void assign_shouldKeepHashedShards_whenNoShardIsFull() {
+        ChannelShardRing ring = new ChannelShardRing(4);
+        List<String> channels = buildChannels(1000);
+        assertEquals(ring.assign(channels), ring.assign(channels, 400));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void assign_shouldThrowIllegalArgumentException_whenChannelsDoNotFit() {
+        new ChannelShardRing(2).assign(buildChannels(5), 2);
+    }
+
+    @Test
+    public void getShard_shouldOnlyMoveChannelsToNewShard_whenShardIsAdded() {
+        ChannelShardRing before = new ChannelShardRing(4);
+        ChannelShardRing after = new ChannelShardRing(5);
+        int moved = 0;
+        for (String channel : buildChannels(1000)) {
+            int oldShard = before.getShard(channel);
+            int newShard = after.getShard(channel);
+            if (oldShard != newShard) {
+                assertEquals(4, newShard);
+                moved++;
+            }
+        }
+        assertTrue("moved " + moved + " channels", moved > 100 && moved < 300);
+    }
+
+    private static List<String> buildChannels(int count) {
+        List<String> channels = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            channels.add("#channel" + i);
+        }
+        return channels;
+    }
+}
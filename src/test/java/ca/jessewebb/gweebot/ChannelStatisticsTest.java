@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelStatisticsTest {
+
+    private static final long BUCKET_MILLIS = 60000l;
+    private static final int BUCKET_COUNT = 5;
+    private static final long NOW = 1400000000000l;
+
+    private ChannelStatistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = new ChannelStatistics(BUCKET_MILLIS, BUCKET_COUNT);
+    }
+
+    @Test
+    public void getTopChatters_shouldRankChattersByMessageCount() {
+        for (int i = 0; i < 5; i++) statistics.record("alice", "hello there", NOW);
+        for (int i = 0; i < 3; i++) statistics.record("Bob", "hello again", NOW);
+        statistics.record("carol", "hi", NOW);
+        List<TopItem> top = statistics.getTopChatters(2, NOW);
+        assertEquals(2, top.size());
+        assertEquals("alice", top.get(0).getItem());
+        assertEquals(5, top.get(0).getCount());
+        assertEquals("bob", top.get(1).getItem());
+        assertEquals(3, top.get(1).getCount());
+    }
+
+    @Test
+    public void getTopWords_shouldCountWordsIgnoringCaseAndShortWords() {
+        statistics.record("alice", "Kappa kappa, a KAPPA!", NOW);
+        statistics.record("bob", "PogChamp kappa", NOW);
+        List<TopItem> top = statistics.getTopWords(5, NOW);
+        assertEquals("kappa", top.get(0).getItem());
+        assertEquals(4, top.get(0).getCount());
+        assertEquals("pogchamp", top.get(1).getItem());
+        assertEquals(2, top.size());
+    }
+
+    @Test
+    public void getTopWords_shouldSkipCommandMessages() {
+        statistics.record("alice", "!time please", NOW);
+        assertTrue(statistics.getTopWords(5, NOW).isEmpty());
+        assertEquals(1, statistics.getMessageCount(NOW));
+    }
+
+    @Test
+    public void getMessageCount_shouldOnlyCountMessagesInsideWindow() {
+        statistics.record("alice", "old", NOW);
+        statistics.record("alice", "new", NOW + BUCKET_MILLIS);
+        assertEquals(2, statistics.getMessageCount(NOW + BUCKET_MILLIS));
+        assertEquals(1, statistics.getMessageCount(NOW + BUCKET_MILLIS * BUCKET_COUNT));
+        assertEquals(0, statistics.getMessageCount(NOW + BUCKET_MILLIS * (BUCKET_COUNT + 1)));
+    }
+
+    @Test
+    public void record_shouldReuseBucket_whenWindowHasMovedOn() {
+        statistics.record("alice", "first", NOW);
+        long later = NOW + BUCKET_MILLIS * BUCKET_COUNT;
+        statistics.record("bob", "second", later);
+        List<TopItem> top = statistics.getTopChatters(5, later);
+        assertEquals(1, top.size());
+        assertEquals("bob", top.get(0).getItem());
+    }
+
+    @Test
+    public void getUniqueChatterCount_shouldCountDistinctChatters() {
+        for (int i = 0; i < 300; i++) {
+            statistics.record("chatter" + (i % 100), "message", NOW + i);
+        }
+        long unique = statistics.getUniqueChatterCount(NOW + 300);
+        assertTrue("unique chatters " + unique, unique >= 90 && unique <= 110);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChatPrefilterTest {
+
+    private static final String CHAT_LINE = ":someone!someone@someone.tmi.twitch.tv PRIVMSG #channel :hello there";
+    private static final String COMMAND_LINE = ":someone!someone@someone.tmi.twitch.tv PRIVMSG #channel :!time";
+
+    private ChatPrefilter prefilter;
+
+    @Before
+    public void setUp() {
+        prefilter = new ChatPrefilter("!", "#&");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_shouldThrowIllegalArgumentException_whenCommandPrefixIsNotOneCharacter() {
+        new ChatPrefilter("!!", "#");
+    }
+
+    @Test
+    public void filter_shouldReturnTrue_whenLineIsPlainChannelChat() {
+        assertTrue(prefilter.filter(CHAT_LINE));
+        assertEquals(1, prefilter.getFilteredCount());
+    }
+
+    @Test
+    public void filter_shouldReturnTrue_whenPlainChannelChatHasTags() {
+        assertTrue(prefilter.filter("@color=#FF0000;display-name=Someone " + CHAT_LINE));
+    }
+
+    @Test
+    public void filter_shouldReturnFalse_whenLineIsChannelCommand() {
+        assertFalse(prefilter.filter(COMMAND_LINE));
+        assertEquals(0, prefilter.getFilteredCount());
+    }
+
+    @Test
+    public void filter_shouldReturnFalse_whenLineIsChannelAction() {
+        assertFalse(prefilter.filter(":someone!someone@host PRIVMSG #channel :\u0001ACTION waves\u0001"));
+    }
+
+    @Test
+    public void filter_shouldReturnFalse_whenLineIsPrivateMessage() {
+        assertFalse(prefilter.filter(":someone!someone@host PRIVMSG GweeBot :hello there"));
+    }
+
+    @Test
+    public void filter_shouldReturnFalse_whenLineIsNotPrivmsg() {
+        assertFalse(prefilter.filter(":someone!someone@host JOIN #channel"));
+        assertFalse(prefilter.filter("PING :tmi.twitch.tv"));
+        assertFalse(prefilter.filter(":tmi.twitch.tv 001 GweeBot :Welcome, GLHF!"));
+    }
+
+    @Test
+    public void filter_shouldReturnFalse_whenFullChatIsRequired() {
+        prefilter.requireFullChat();
+        assertFalse(prefilter.filter(CHAT_LINE));
+        prefilter.releaseFullChat();
+        assertTrue(prefilter.filter(CHAT_LINE));
+    }
+
+    @Test
+    public void filter_shouldReturnFalse_whenDisabled() {
+        prefilter.setEnabled(false);
+        assertFalse(prefilter.filter(CHAT_LINE));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CommandConfigurationTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void parse_shouldBuildPolicies_whenCooldownsAndBurstsAreGiven() {
+        Properties properties = new Properties();
+        properties.setProperty("time.channel.cooldown.millis", "10000");
+        properties.setProperty("time.user.cooldown.millis", "30000");
+        properties.setProperty("time.user.burst", "3");
+        CommandConfiguration configuration = CommandConfiguration.parse(properties);
+        assertEquals(10000l, configuration.getPolicy(TimeCommand.NAME, ThrottleScope.CHANNEL).getRefillMillis());
+        assertEquals(1, configuration.getPolicy(TimeCommand.NAME, ThrottleScope.CHANNEL).getCapacity());
+        assertEquals(3, configuration.getPolicy(TimeCommand.NAME, ThrottleScope.USER).getCapacity());
+        assertNull(configuration.getPolicy(TimeCommand.NAME, ThrottleScope.GLOBAL));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_shouldThrowIllegalArgumentException_whenScopeIsUnknown() {
+        Properties properties = new Properties();
+        properties.setProperty("time.planet.cooldown.millis", "10000");
+        CommandConfiguration.parse(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_shouldThrowIllegalArgumentException_whenBurstHasNoCooldown() {
+        Properties properties = new Properties();
+        properties.setProperty("time.user.burst", "3");
+        CommandConfiguration.parse(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_shouldThrowIllegalArgumentException_whenSettingIsUnknown() {
+        Properties properties = new Properties();
+        properties.setProperty("time.colour", "blue");
+        CommandConfiguration.parse(properties);
+    }
+
+    @Test
+    public void buildThrottlerConfiguration_shouldKeepCommandIds_whenPreviousConfigurationIsGiven() {
+        CommandThrottlerConfiguration previous = CommandListener.buildCommandThrottlerConfiguration();
+        Properties properties = new Properties();
+        properties.setProperty("discord.channel.cooldown.millis", "5000");
+        CommandThrottlerConfiguration next = CommandConfiguration.parse(properties).buildThrottlerConfiguration(previous);
+        assertTrue(next.keepsCommandIdsOf(previous));
+        int discordId = next.getCommandId("!discord");
+        assertEquals(previous.getCommandCount(), discordId);
+        assertNull(next.getCommandPolicy(next.getCommandId(TimeCommand.NAME), ThrottleScope.CHANNEL));
+    }
+
+    @Test
+    public void registerTextCommands_shouldSkipTextCommand_whenNameIsAlreadyRegistered() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("discord.response", "Join us!");
+        properties.setProperty("time.response", "Shadowed");
+        CommandRegistry registry = CommandListener.buildCommandRegistry();
+        CommandConfiguration.parse(properties).registerTextCommands(registry);
+        int discordIndex = registry.lookup("!discord", 0, 8);
+        assertEquals("Join us!", registry.getCommand(discordIndex).execute(null).getText());
+        assertTrue(registry.getCommand(registry.lookup(TimeCommand.NAME, 0, 5)) instanceof TimeCommand);
+    }
+
+    @Test
+    public void checkForChanges_shouldPublishNewConfiguration_whenFileChanged() throws IOException {
+        File file = temporaryFolder.newFile("commands.properties");
+        writeFile(file, "time.channel.cooldown.millis=10000\n");
+        final AtomicReference<CommandConfiguration> reloaded = new AtomicReference<CommandConfiguration>();
+        CommandConfigurationWatcher watcher = new CommandConfigurationWatcher(file, 1000l,
+                new CommandConfigurationWatcher.ReloadListener() {
+                    @Override
+                    public void onReload(CommandConfiguration configuration) {
+                        reloaded.set(configuration);
+                    }
+                });
+        assertFalse(watcher.checkForChanges());
+
+        writeFile(file, "time.channel.cooldown.millis=20000\n");
+        assertTrue(file.setLastModified(file.lastModified() + 2000l));
+        assertTrue(watcher.checkForChanges());
+        assertEquals(20000l, reloaded.get().getPolicy(TimeCommand.NAME, ThrottleScope.CHANNEL).getRefillMillis());
+        assertFalse(watcher.checkForChanges());
+    }
+
+    @Test
+    public void checkForChanges_shouldKeepCurrentConfiguration_whenFileIsInvalid() throws IOException {
+        File file = temporaryFolder.newFile("commands.properties");
+        writeFile(file, "time.channel.cooldown.millis=10000\n");
+        final AtomicReference<CommandConfiguration> reloaded = new AtomicReference<CommandConfiguration>();
+        CommandConfigurationWatcher watcher = new CommandConfigurationWatcher(file, 1000l,
+                new CommandConfigurationWatcher.ReloadListener() {
+                    @Override
+                    public void onReload(CommandConfiguration configuration) {
+                        reloaded.set(configuration);
+                    }
+                });
+        writeFile(file, "time.channel.cooldown.millis=soon\n");
+        assertTrue(file.setLastModified(file.lastModified() + 2000l));
+        assertFalse(watcher.checkForChanges());
+        assertNull(reloaded.get());
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CommandListenerTest {
+
+    private static final String TEST_COMMAND = "!test";
+    private static final String CHANNEL = "#test";
+    private static final String USER = "viewer";
+    private static final long START_MILLIS = 1000000l;
+    private static final long COOLDOWN_MILLIS = 10000l;
+
+    private Command mockCommand;
+    private OutboundDispatcher mockDispatcher;
+    private BotMetrics metrics;
+    private CommandThrottler commandThrottler;
+    private CommandListener commandListener;
+
+    @Before
+    public void setUp() throws Exception {
+        mockCommand = mock(Command.class);
+        when(mockCommand.getName()).thenReturn(TEST_COMMAND);
+        when(mockCommand.execute(any(CommandInvocation.class))).thenReturn(CommandResponse.message("answer"));
+        mockDispatcher = mock(OutboundDispatcher.class);
+        when(mockDispatcher.enqueue(anyString(), any(CommandResponse.class), any(OutboundPriority.class), anyLong(),
+                any(Runnable.class)))
+                .thenReturn(true);
+        metrics = new BotMetrics();
+        EpochClock mockClock = mock(EpochClock.class);
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(START_MILLIS);
+        CommandThrottlerConfiguration configuration = new CommandThrottlerConfiguration();
+        configuration.addCommandPolicy(TEST_COMMAND, ThrottleScope.CHANNEL, ThrottlePolicy.cooldown(COOLDOWN_MILLIS));
+        commandThrottler = new CommandThrottler(configuration, mockClock);
+        CommandRegistry commandRegistry = new CommandRegistry();
+        commandRegistry.register(mockCommand);
+        commandListener = new CommandListener(commandRegistry, commandThrottler, mockDispatcher, metrics);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_shouldThrowIllegalArgumentException_whenOutboundDispatcherIsNull() {
+        new CommandListener(new CommandRegistry(), commandThrottler, null, metrics);
+    }
+
+    @Test
+    public void handleMessage_shouldIgnoreMessage_whenItDoesNotStartWithCommandPrefix() throws Exception {
+        commandListener.handleMessage(CHANNEL, USER, "test", START_MILLIS);
+        verify(mockCommand, never()).execute(any(CommandInvocation.class));
+        assertEquals(1, metrics.getMessagesSeen());
+        assertEquals(0, metrics.getCommandsUnrecognized());
+    }
+
+    @Test
+    public void handleMessage_shouldCountUnrecognizedCommand_whenNoCommandMatches() throws Exception {
+        commandListener.handleMessage(CHANNEL, USER, "!unknown", START_MILLIS);
+        assertEquals(1, metrics.getCommandsUnrecognized());
+    }
+
+    @Test
+    public void handleMessage_shouldEnqueueResponse_whenCommandAnswers() throws Exception {
+        commandListener.handleMessage(CHANNEL, USER, TEST_COMMAND + " now", START_MILLIS);
+        verify(mockDispatcher).enqueue(eq(CHANNEL), any(CommandResponse.class), eq(OutboundPriority.NORMAL), eq(START_MILLIS),
+                any(Runnable.class));
+        assertEquals(1, metrics.getCommandsAnswered());
+    }
+
+    @Test
+    public void handleMessage_shouldNotExecuteCommand_whenItIsThrottled() throws Exception {
+        commandListener.handleMessage(CHANNEL, USER, TEST_COMMAND, START_MILLIS);
+        commandListener.handleMessage(CHANNEL, "other", TEST_COMMAND, START_MILLIS);
+        verify(mockCommand, times(1)).execute(any(CommandInvocation.class));
+        assertEquals(1, metrics.getCommandsThrottled());
+    }
+
+    @Test
+    public void handleMessage_shouldReleaseCooldown_whenCommandReturnsNull() throws Exception {
+        when(mockCommand.execute(any(CommandInvocation.class))).thenReturn(null)
+                .thenReturn(CommandResponse.message("answer"));
+        commandListener.handleMessage(CHANNEL, USER, TEST_COMMAND, START_MILLIS);
+        commandListener.handleMessage(CHANNEL, USER, TEST_COMMAND, START_MILLIS);
+        verify(mockCommand, times(2)).execute(any(CommandInvocation.class));
+        assertEquals(0, metrics.getCommandsThrottled());
+        assertEquals(1, metrics.getCommandsAnswered());
+    }
+
+    @Test
+    public void handleMessage_shouldReleaseCooldown_whenEnqueueIsRejected() throws Exception {
+        when(mockDispatcher.enqueue(anyString(), any(CommandResponse.class), any(OutboundPriority.class), anyLong(),
+                any(Runnable.class)))
+                .thenReturn(false).thenReturn(true);
+        commandListener.handleMessage(CHANNEL, USER, TEST_COMMAND, START_MILLIS);
+        commandListener.handleMessage(CHANNEL, USER, TEST_COMMAND, START_MILLIS);
+        verify(mockCommand, times(2)).execute(any(CommandInvocation.class));
+        assertEquals(1, metrics.getCommandsAnswered());
+    }
+
+    @Test
+    public void handleMessage_shouldReleaseCooldown_whenQueuedReplyIsNotDelivered() throws Exception {
+        commandListener.handleMessage(CHANNEL, USER, TEST_COMMAND, START_MILLIS);
+        ArgumentCaptor<Runnable> undelivered = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockDispatcher).enqueue(eq(CHANNEL), any(CommandResponse.class), eq(OutboundPriority.NORMAL), eq(START_MILLIS),
+                undelivered.capture());
+        undelivered.getValue().run();
+        commandListener.handleMessage(CHANNEL, USER, TEST_COMMAND, START_MILLIS);
+        verify(mockCommand, times(2)).execute(any(CommandInvocation.class));
+        assertEquals(0, metrics.getCommandsThrottled());
+    }
+
+    @Test
+    public void handleMessage_shouldReleaseCooldown_whenCommandThrows() throws Exception {
+        when(mockCommand.execute(any(CommandInvocation.class))).thenThrow(new IllegalStateException("boom"))
+                .thenReturn(CommandResponse.message("answer"));
+        try {
+            commandListener.handleMessage(CHANNEL, USER, TEST_COMMAND, START_MILLIS);
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        commandListener.handleMessage(CHANNEL, USER, TEST_COMMAND, START_MILLIS);
+        assertEquals(1, metrics.getCommandsAnswered());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CommandRegistryTest {
+
+    private static final String TEST_COMMAND = "!test";
+    private static final String TEST_ALIAS = "!t";
+
+    private Command mockCommand;
+    private CommandRegistry commandRegistry;
+    private int commandIndex;
+
+    @Before
+    public void setUp() {
+        mockCommand = mockCommand(TEST_COMMAND);
+        commandRegistry = new CommandRegistry();
+        commandIndex = commandRegistry.register(mockCommand, TEST_ALIAS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void register_shouldThrowIllegalArgumentException_whenCommandIsNull() {
+        commandRegistry.register(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void register_shouldThrowIllegalArgumentException_whenNameIsAlreadyRegistered() {
+        commandRegistry.register(mockCommand("!TEST"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void register_shouldThrowIllegalArgumentException_whenAliasIsAlreadyRegistered() {
+        commandRegistry.register(mockCommand("!other"), TEST_ALIAS);
+    }
+
+    @Test
+    public void lookup_shouldReturnCommandIndex_whenMessageIsExactlyTheCommand() {
+        assertEquals(commandIndex, lookup(TEST_COMMAND));
+        assertSame(mockCommand, commandRegistry.getCommand(commandIndex));
+    }
+
+    @Test
+    public void lookup_shouldReturnCommandIndex_whenCommandCaseDiffers() {
+        assertEquals(commandIndex, lookup("!TeSt"));
+    }
+
+    @Test
+    public void lookup_shouldReturnCommandIndex_whenMessageUsesAlias() {
+        assertEquals(commandIndex, lookup(TEST_ALIAS));
+    }
+
+    @Test
+    public void lookup_shouldReturnCommandIndex_whenMessageHasArguments() {
+        assertEquals(commandIndex, lookup("!test some arguments"));
+    }
+
+    @Test
+    public void lookup_shouldReturnUnknownCommand_whenCommandIsOnlyAPrefixOfTheToken() {
+        assertEquals(CommandRegistry.UNKNOWN_COMMAND, lookup("!testing"));
+    }
+
+    @Test
+    public void lookup_shouldReturnUnknownCommand_whenCommandIsNotRegistered() {
+        assertEquals(CommandRegistry.UNKNOWN_COMMAND, lookup("!unknown"));
+    }
+
+    @Test
+    public void lookup_shouldFindEveryCommand_whenManyCommandsAreRegistered() {
+        for (int i = 0; i < 100; i++) {
+            commandRegistry.register(mockCommand("!command" + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("!command" + i, commandRegistry.getCommand(lookup("!COMMAND" + i)).getName());
+        }
+        assertEquals(commandIndex, lookup(TEST_COMMAND));
+    }
+
+    @Test
+    public void getArguments_shouldSplitOnWhitespace_whenMessageHasArguments() {
+        String message = "!test  one\ttwo   three ";
+        CommandInvocation invocation = new CommandInvocation("#channel", "user", message, CommandInvocation.findCommandEnd(message));
+        assertEquals(TEST_COMMAND, invocation.getCommand());
+        assertArrayEquals(new String[]{"one", "two", "three"}, invocation.getArguments());
+        assertEquals("one\ttwo   three", invocation.getArgumentString());
+    }
+
+    @Test
+    public void getArguments_shouldReturnEmptyArray_whenMessageHasNoArguments() {
+        CommandInvocation invocation = new CommandInvocation("#channel", "user", TEST_COMMAND, TEST_COMMAND.length());
+        assertEquals(0, invocation.getArguments().length);
+    }
+
+    private int lookup(String message) {
+        return commandRegistry.lookup(message, 0, CommandInvocation.findCommandEnd(message));
+    }
+
+    private static Command mockCommand(String name) {
+        Command command = mock(Command.class);
+        when(command.getName()).thenReturn(name);
+        return command;
+    }
+}
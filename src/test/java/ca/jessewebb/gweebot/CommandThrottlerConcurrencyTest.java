@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class CommandThrottlerConcurrencyTest {
+
+    private static final String TEST_COMMAND = "!test";
+    private static final long TEST_COMMAND_THROTTLE_MILLIS = 1000l;
+    private static final int THREAD_COUNT = 16;
+    private static final int WINDOW_COUNT = 200;
+
+    private AtomicLong currentTimeMillis;
+    private CommandThrottler commandThrottler;
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() {
+        CommandThrottlerConfiguration configuration = new CommandThrottlerConfiguration();
+        configuration.addCommandThrottle(TEST_COMMAND, TEST_COMMAND_THROTTLE_MILLIS);
+        currentTimeMillis = new AtomicLong(System.currentTimeMillis());
+        EpochClock clock = new EpochClock() {
+            @Override
+            public long getCurrentEpochTimeMillis() {
+                return currentTimeMillis.get();
+            }
+        };
+        commandThrottler = new CommandThrottler(configuration, clock);
+        executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executorService.shutdownNow();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void tryAcquire_shouldHaveExactlyOneWinnerPerThrottleWindow_whenCalledConcurrently() throws Exception {
+        for (int window = 0; window < WINDOW_COUNT; window++) {
+            assertEquals("winners in window " + window, 1, raceToAcquire(TEST_COMMAND));
+            currentTimeMillis.addAndGet(TEST_COMMAND_THROTTLE_MILLIS);
+        }
+    }
+
+    @Test
+    public void tryAcquire_shouldHaveNoWinners_whenCalledConcurrentlyWithinThrottleTime() throws Exception {
+        commandThrottler.trackCommandUsage(TEST_COMMAND);
+        for (int window = 0; window < WINDOW_COUNT; window++) {
+            assertEquals("winners in window " + window, 0, raceToAcquire(TEST_COMMAND));
+        }
+    }
+
+    @Test
+    public void tryAcquire_shouldHaveExactlyOneWinner_whenReleasedBetweenConcurrentCalls() throws Exception {
+        for (int window = 0; window < WINDOW_COUNT; window++) {
+            assertEquals("winners in window " + window, 1, raceToAcquire(TEST_COMMAND));
+            commandThrottler.release(TEST_COMMAND);
+        }
+    }
+
+    private int raceToAcquire(final String command) throws Exception {
+        final CountDownLatch ready = new CountDownLatch(THREAD_COUNT);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            results.add(executorService.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    ready.countDown();
+                    start.await();
+                    return commandThrottler.tryAcquire(command);
+                }
+            }));
+        }
+        ready.await();
+        start.countDown();
+        int winners = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(10, TimeUnit.SECONDS)) winners++;
+        }
+        return winners;
+    }
+}
@@ -22,6 +22,7 @@ package ca.jessewebb.gweebot;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
@@ -117,6 +118,18 @@ public class CommandThrottlerTest {
         assertFalse(commandThrottler.throttleCommand(TEST_COMMAND));
     }
 
+    @Test
+    public void throttleCommand_shouldReturnFalse_whenCommandWasTrackedTwiceAndThrottleTimeHasPassed() {
+        long mockEpochTimeMillis = System.currentTimeMillis();
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        commandThrottler.trackCommandUsage(TEST_COMMAND);
+        commandThrottler.trackCommandUsage(TEST_COMMAND);
+
+        mockEpochTimeMillis += TEST_COMMAND_THROTTLE_MILLIS;
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        assertFalse(commandThrottler.throttleCommand(TEST_COMMAND));
+    }
+
     @Test
     public void throttleCommand_shouldReturnFalse_whenCommandWasUsedWellAfterThrottleTime() {
         long mockEpochTimeMillis = System.currentTimeMillis();
@@ -127,4 +140,215 @@ public class CommandThrottlerTest {
         when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
         assertFalse(commandThrottler.throttleCommand(TEST_COMMAND));
     }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tryAcquire_shouldThrowIllegalArgumentException_whenCommandIsNull() {
+        commandThrottler.tryAcquire(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void release_shouldThrowIllegalArgumentException_whenCommandIsNull() {
+        commandThrottler.release(null);
+    }
+
+    @Test
+    public void tryAcquire_shouldReturnTrue_whenCommandIsNotConfiguredToBeThrottled() {
+        String notConfiguredCommand = "!not";
+        assertTrue(commandThrottler.tryAcquire(notConfiguredCommand));
+        assertTrue(commandThrottler.tryAcquire(notConfiguredCommand));
+    }
+
+    @Test
+    public void tryAcquire_shouldReturnTrue_whenCommandHasNotBeenUsedYet() {
+        assertTrue(commandThrottler.tryAcquire(TEST_COMMAND));
+    }
+
+    @Test
+    public void tryAcquire_shouldReturnFalse_whenCommandWasAcquiredJustNow() {
+        commandThrottler.tryAcquire(TEST_COMMAND);
+        assertFalse(commandThrottler.tryAcquire(TEST_COMMAND));
+    }
+
+    @Test
+    public void tryAcquire_shouldReturnFalse_whenCommandWasAcquiredWithinThrottleTime() {
+        long mockEpochTimeMillis = System.currentTimeMillis();
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        commandThrottler.tryAcquire(TEST_COMMAND);
+
+        mockEpochTimeMillis += TEST_COMMAND_THROTTLE_MILLIS - 1l;
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        assertFalse(commandThrottler.tryAcquire(TEST_COMMAND));
+    }
+
+    @Test
+    public void tryAcquire_shouldReturnTrue_whenCommandWasAcquiredAfterThrottleTime() {
+        long mockEpochTimeMillis = System.currentTimeMillis();
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        commandThrottler.tryAcquire(TEST_COMMAND);
+
+        mockEpochTimeMillis += TEST_COMMAND_THROTTLE_MILLIS;
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        assertTrue(commandThrottler.tryAcquire(TEST_COMMAND));
+    }
+
+    @Test
+    public void tryAcquire_shouldReturnFalse_whenCommandUsageWasTracked() {
+        commandThrottler.trackCommandUsage(TEST_COMMAND);
+        assertFalse(commandThrottler.tryAcquire(TEST_COMMAND));
+    }
+
+    @Test
+    public void throttleCommand_shouldReturnTrue_whenCommandWasAcquiredJustNow() {
+        commandThrottler.tryAcquire(TEST_COMMAND);
+        assertTrue(commandThrottler.throttleCommand(TEST_COMMAND));
+    }
+
+    @Test
+    public void tryAcquire_shouldReturnTrue_whenCommandWasReleasedAfterBeingAcquired() {
+        commandThrottler.tryAcquire(TEST_COMMAND);
+        commandThrottler.release(TEST_COMMAND);
+        assertTrue(commandThrottler.tryAcquire(TEST_COMMAND));
+    }
+
+    @Test
+    public void getCommandId_shouldReturnUnknownCommandId_whenCommandIsNotConfiguredToBeThrottled() {
+        assertEquals(CommandThrottlerConfiguration.UNKNOWN_COMMAND_ID, commandThrottler.getCommandId("!not"));
+    }
+
+    @Test
+    public void tryAcquire_shouldReturnTrue_whenCommandIdIsUnknown() {
+        assertTrue(commandThrottler.tryAcquire(CommandThrottlerConfiguration.UNKNOWN_COMMAND_ID));
+    }
+
+    @Test
+    public void tryAcquire_shouldReturnFalse_whenCommandIdWasAcquiredJustNow() {
+        int commandId = commandThrottler.getCommandId(TEST_COMMAND);
+        commandThrottler.tryAcquire(commandId);
+        assertFalse(commandThrottler.tryAcquire(commandId));
+        assertFalse(commandThrottler.tryAcquire(TEST_COMMAND));
+    }
+
+    @Test
+    public void tryAcquire_shouldAllowBurstUpToCapacity_whenPolicyHasCapacity() {
+        CommandThrottler burstThrottler = buildThrottler(ThrottleScope.GLOBAL, new ThrottlePolicy(3, TEST_COMMAND_THROTTLE_MILLIS));
+        assertTrue(burstThrottler.tryAcquire(TEST_COMMAND));
+        assertTrue(burstThrottler.tryAcquire(TEST_COMMAND));
+        assertTrue(burstThrottler.tryAcquire(TEST_COMMAND));
+        assertFalse(burstThrottler.tryAcquire(TEST_COMMAND));
+    }
+
+    @Test
+    public void tryAcquire_shouldRefillOneUse_whenRefillTimeHasPassedAfterBurst() {
+        long mockEpochTimeMillis = System.currentTimeMillis();
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        CommandThrottler burstThrottler = buildThrottler(ThrottleScope.GLOBAL, new ThrottlePolicy(2, TEST_COMMAND_THROTTLE_MILLIS));
+        burstThrottler.tryAcquire(TEST_COMMAND);
+        burstThrottler.tryAcquire(TEST_COMMAND);
+
+        mockEpochTimeMillis += TEST_COMMAND_THROTTLE_MILLIS;
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        assertTrue(burstThrottler.tryAcquire(TEST_COMMAND));
+        assertFalse(burstThrottler.tryAcquire(TEST_COMMAND));
+    }
+
+    @Test
+    public void tryAcquire_shouldThrottleEachUserSeparately_whenUserPolicyIsConfigured() {
+        CommandThrottler userThrottler = buildThrottler(ThrottleScope.USER, ThrottlePolicy.cooldown(TEST_COMMAND_THROTTLE_MILLIS));
+        assertTrue(userThrottler.tryAcquire(TEST_COMMAND, "#channel", "spammer"));
+        assertFalse(userThrottler.tryAcquire(TEST_COMMAND, "#channel", "spammer"));
+        assertTrue(userThrottler.tryAcquire(TEST_COMMAND, "#channel", "someone"));
+        assertTrue(userThrottler.tryAcquire(TEST_COMMAND, "#other", "spammer"));
+    }
+
+    @Test
+    public void tryAcquire_shouldThrottleEachChannelSeparately_whenChannelPolicyIsConfigured() {
+        CommandThrottler channelThrottler = buildThrottler(ThrottleScope.CHANNEL, ThrottlePolicy.cooldown(TEST_COMMAND_THROTTLE_MILLIS));
+        assertTrue(channelThrottler.tryAcquire(TEST_COMMAND, "#channel", "someone"));
+        assertFalse(channelThrottler.tryAcquire(TEST_COMMAND, "#channel", "someone else"));
+        assertTrue(channelThrottler.tryAcquire(TEST_COMMAND, "#other", "someone"));
+    }
+
+    @Test
+    public void tryAcquire_shouldNotConsumeUserUse_whenGlobalPolicyThrottles() {
+        CommandThrottlerConfiguration layeredConfiguration = new CommandThrottlerConfiguration();
+        layeredConfiguration.addCommandThrottle(TEST_COMMAND, TEST_COMMAND_THROTTLE_MILLIS);
+        layeredConfiguration.addCommandPolicy(TEST_COMMAND, ThrottleScope.USER, ThrottlePolicy.cooldown(TEST_COMMAND_THROTTLE_MILLIS));
+        CommandThrottler layeredThrottler = new CommandThrottler(layeredConfiguration, mockClock);
+        assertTrue(layeredThrottler.tryAcquire(TEST_COMMAND, "#channel", "first"));
+        assertFalse(layeredThrottler.tryAcquire(TEST_COMMAND, "#channel", "second"));
+        layeredThrottler.release(TEST_COMMAND);
+        assertTrue(layeredThrottler.tryAcquire(TEST_COMMAND, "#channel", "second"));
+    }
+
+    @Test
+    public void evictExpired_shouldForgetUserState_whenUserHasBeenIdleSinceRefill() {
+        long mockEpochTimeMillis = System.currentTimeMillis();
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        CommandThrottler userThrottler = buildThrottler(ThrottleScope.USER, ThrottlePolicy.cooldown(TEST_COMMAND_THROTTLE_MILLIS));
+        userThrottler.tryAcquire(TEST_COMMAND, "#channel", "someone");
+        userThrottler.evictExpired();
+        assertEquals(1, userThrottler.getTrackedKeyCount());
+
+        mockEpochTimeMillis += TEST_COMMAND_THROTTLE_MILLIS;
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        userThrottler.evictExpired();
+        assertEquals(0, userThrottler.getTrackedKeyCount());
+        assertTrue(userThrottler.tryAcquire(TEST_COMMAND, "#channel", "someone"));
+    }
+
+    @Test
+    public void tryAcquire_shouldEvictIdleState_whenEvictionIntervalHasPassed() {
+        long mockEpochTimeMillis = System.currentTimeMillis();
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        CommandThrottler userThrottler = buildThrottler(ThrottleScope.USER, ThrottlePolicy.cooldown(TEST_COMMAND_THROTTLE_MILLIS));
+        for (int i = 0; i < 100; i++) {
+            userThrottler.tryAcquire(TEST_COMMAND, "#channel", "user" + i);
+        }
+        assertEquals(100, userThrottler.getTrackedKeyCount());
+
+        mockEpochTimeMillis += configuration.getEvictionIntervalMillis();
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        userThrottler.tryAcquire(TEST_COMMAND, "#channel", "latecomer");
+        assertEquals(1, userThrottler.getTrackedKeyCount());
+    }
+
+    @Test
+    public void reconfigure_shouldKeepRunningCooldown_whenCommandIsStillThrottled() {
+        assertTrue(commandThrottler.tryAcquire(TEST_COMMAND));
+        CommandThrottlerConfiguration reloaded = new CommandThrottlerConfiguration(configuration);
+        reloaded.addCommandThrottle(TEST_COMMAND, TEST_COMMAND_THROTTLE_MILLIS * 2);
+        commandThrottler.reconfigure(reloaded);
+        assertFalse(commandThrottler.tryAcquire(TEST_COMMAND));
+    }
+
+    @Test
+    public void reconfigure_shouldThrottleNewCommand_whenItWasAdded() {
+        CommandThrottlerConfiguration reloaded = new CommandThrottlerConfiguration(configuration);
+        reloaded.addCommandThrottle(TEST_COMMAND, TEST_COMMAND_THROTTLE_MILLIS);
+        reloaded.addCommandPolicy("!new", ThrottleScope.CHANNEL, ThrottlePolicy.cooldown(TEST_COMMAND_THROTTLE_MILLIS));
+        commandThrottler.reconfigure(reloaded);
+        assertTrue(commandThrottler.tryAcquire("!new", "#channel", null));
+        assertFalse(commandThrottler.tryAcquire("!new", "#channel", null));
+    }
+
+    @Test
+    public void reconfigure_shouldStopThrottling_whenPolicyWasRemoved() {
+        assertTrue(commandThrottler.tryAcquire(TEST_COMMAND));
+        commandThrottler.reconfigure(new CommandThrottlerConfiguration(configuration));
+        assertTrue(commandThrottler.tryAcquire(TEST_COMMAND));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reconfigure_shouldThrowIllegalArgumentException_whenCommandIdsChange() {
+        CommandThrottlerConfiguration reordered = new CommandThrottlerConfiguration();
+        reordered.addCommandThrottle("!other", TEST_COMMAND_THROTTLE_MILLIS);
+        reordered.addCommandThrottle(TEST_COMMAND, TEST_COMMAND_THROTTLE_MILLIS);
+        commandThrottler.reconfigure(reordered);
+    }
+
+    private CommandThrottler buildThrottler(ThrottleScope scope, ThrottlePolicy policy) {
+        CommandThrottlerConfiguration policyConfiguration = new CommandThrottlerConfiguration();
+        policyConfiguration.addCommandPolicy(TEST_COMMAND, scope, policy);
+        return new CommandThrottler(policyConfiguration, mockClock);
+    }
 }
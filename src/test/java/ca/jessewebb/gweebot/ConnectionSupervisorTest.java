@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.pircbotx.PircBotX;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class ConnectionSupervisorTest {
+
+    private BotMetrics metrics;
+    private ConnectionSupervisor supervisor;
+
+    @Before
+    public void setUp() {
+        metrics = new BotMetrics();
+        supervisor = new ConnectionSupervisor(new ReconnectBackoff(1l, 1l), 0l, new SystemClock(), metrics);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_shouldThrowIllegalArgumentException_whenMetricsIsNull() {
+        new ConnectionSupervisor(new ReconnectBackoff(1l, 1l), 0l, new SystemClock(), null);
+    }
+
+    @Test
+    public void start_shouldCountFailedAttemptsApartFromLostConnections() throws Exception {
+        final CountDownLatch reconnected = new CountDownLatch(1);
+        PircBotX bot = mock(PircBotX.class);
+        doThrow(new IOException("refused"))
+                .doThrow(new IOException("refused"))
+                .doNothing()
+                .doAnswer(new Answer<Void>() {
+                    @Override
+                    public Void answer(InvocationOnMock invocation) {
+                        reconnected.countDown();
+                        try {
+                            Thread.sleep(10000l);
+                        } catch (InterruptedException e) {
+                            // stopped by the test
+                        }
+                        return null;
+                    }
+                }).when(bot).startBot();
+        supervisor.addBot(bot);
+        supervisor.start();
+        assertTrue(reconnected.await(5, TimeUnit.SECONDS));
+        supervisor.stopAndWait();
+        assertEquals(2, metrics.getConnectionAttemptsFailed());
+        assertEquals(1, metrics.getConnectionsLost());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CountMinSketchTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_shouldThrowIllegalArgumentException_whenWidthIsNotPowerOfTwo() {
+        new CountMinSketch(100, 4);
+    }
+
+    @Test
+    public void estimate_shouldNeverUndercount() {
+        CountMinSketch sketch = new CountMinSketch(256, 4);
+        Random random = new Random(42);
+        long[] hashes = new long[1000];
+        for (int i = 0; i < hashes.length; i++) hashes[i] = random.nextLong();
+        for (int i = 0; i < hashes.length; i++) {
+            for (int count = 0; count <= i % 5; count++) sketch.add(hashes[i]);
+        }
+        for (int i = 0; i < hashes.length; i++) {
+            assertTrue(sketch.estimate(hashes[i]) >= i % 5 + 1);
+        }
+    }
+
+    @Test
+    public void estimate_shouldBeExact_whenHeavyHitterDominates() {
+        CountMinSketch sketch = new CountMinSketch(256, 4);
+        for (int i = 0; i < 500; i++) sketch.add(7l);
+        sketch.add(8l);
+        assertEquals(500, sketch.estimate(7l));
+    }
+
+    @Test
+    public void clear_shouldResetCounts() {
+        CountMinSketch sketch = new CountMinSketch(256, 4);
+        sketch.add(7l);
+        sketch.clear();
+        assertEquals(0, sketch.estimate(7l));
+    }
+}
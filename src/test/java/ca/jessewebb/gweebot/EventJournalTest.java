@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventJournalTest {
+
+    private static final long TEST_TIMESTAMP = 1400000000000l;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File journalFile;
+
+    @Before
+    public void setUp() {
+        journalFile = new File(temporaryFolder.getRoot(), "events.journal");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_shouldThrowIllegalArgumentException_whenFileIsNull() {
+        new EventJournal(null, 10);
+    }
+
+    @Test
+    public void next_shouldReturnEventsInOrder_whenJournalWasWritten() throws Exception {
+        EventJournal journal = new EventJournal(journalFile, 10);
+        journal.start();
+        journal.recordMessage("#test", "alice", "!time", TEST_TIMESTAMP);
+        journal.recordReply("#test", CommandResponse.action("v1.0"), TEST_TIMESTAMP + 5);
+        journal.shutdown();
+        assertEquals(2, journal.getWrittenCount());
+
+        EventJournalReader reader = new EventJournalReader(journalFile);
+        try {
+            JournalEvent message = reader.next();
+            assertEquals(JournalEvent.Type.MESSAGE, message.getType());
+            assertEquals(TEST_TIMESTAMP, message.getTimestamp());
+            assertEquals("#test", message.getChannel());
+            assertEquals("alice", message.getUser());
+            assertEquals("!time", message.getText());
+            JournalEvent reply = reader.next();
+            assertEquals(JournalEvent.Type.REPLY_ACTION, reply.getType());
+            assertEquals(TEST_TIMESTAMP + 5, reply.getTimestamp());
+            assertNull(reply.getUser());
+            assertEquals("v1.0", reply.getText());
+            assertNull(reader.next());
+            assertFalse(reader.isTruncated());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void start_shouldAppendToExistingJournal_whenFileExists() throws Exception {
+        EventJournal journal = new EventJournal(journalFile, 10);
+        journal.start();
+        journal.recordMessage("#test", "alice", "first", TEST_TIMESTAMP);
+        journal.shutdown();
+        journal = new EventJournal(journalFile, 10);
+        journal.start();
+        journal.recordMessage("#test", "bob", "second", TEST_TIMESTAMP + 1);
+        journal.shutdown();
+
+        EventJournalReader reader = new EventJournalReader(journalFile);
+        try {
+            assertEquals("first", reader.next().getText());
+            assertEquals("second", reader.next().getText());
+            assertNull(reader.next());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void next_shouldStopAtPartialRecord_whenJournalEndsMidRecord() throws Exception {
+        EventJournal journal = new EventJournal(journalFile, 10);
+        journal.start();
+        journal.recordMessage("#test", "alice", "kept", TEST_TIMESTAMP);
+        journal.recordMessage("#test", "alice", "cut short", TEST_TIMESTAMP + 1);
+        journal.shutdown();
+        RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+        try {
+            file.setLength(file.length() - 3);
+        } finally {
+            file.close();
+        }
+
+        EventJournalReader reader = new EventJournalReader(journalFile);
+        try {
+            assertEquals("kept", reader.next().getText());
+            assertNull(reader.next());
+            assertTrue(reader.isTruncated());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void constructor_shouldThrowIOException_whenFileIsNotAJournal() throws IOException {
+        FileOutputStream output = new FileOutputStream(journalFile);
+        try {
+            output.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+        } finally {
+            output.close();
+        }
+        new EventJournalReader(journalFile);
+    }
+
+    @Test
+    public void record_shouldReturnFalse_whenJournalIsNotStarted() {
+        EventJournal journal = new EventJournal(journalFile, 10);
+        assertFalse(journal.recordMessage("#test", "alice", "!time", TEST_TIMESTAMP));
+        assertEquals(1, journal.getDroppedCount());
+    }
+}
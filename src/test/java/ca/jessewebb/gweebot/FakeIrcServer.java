@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Just enough of an IRC server to register a bot, let it join channels and exchange channel messages with it. Lines
+ * the bot sends to a channel are handed to the {@link Listener}.
+ */
+public class FakeIrcServer {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SERVER_NAME = "fake.irc";
+
+    public interface Listener {
+        void onBotMessage(String channel, String text, long receivedNanos);
+    }
+
+    private final ServerSocket serverSocket;
+    private final List<Client> clients;
+    private final AtomicInteger connectionCount;
+    private final ConcurrentMap<String, Client> channelClients;
+    private volatile Listener listener;
+    private volatile String lastPassword;
+    private volatile boolean running;
+
+    public FakeIrcServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        clients = new CopyOnWriteArrayList<Client>();
+        connectionCount = new AtomicInteger();
+        channelClients = new ConcurrentHashMap<String, Client>();
+    }
+
+    public void start() {
+        running = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptClients();
+            }
+        }, "fake-irc-accept");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+        for (Client client : clients) client.close();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public String getLastPassword() {
+        return lastPassword;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Drops every connection as if the server had gone away, leaving the server accepting new ones.
+     */
+    public void disconnectClients() {
+        for (Client client : clients) client.close();
+    }
+
+    public int getJoinedChannelCount() {
+        return channelClients.size();
+    }
+
+    public boolean awaitJoinedChannels(int channelCount, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (channelClients.size() < channelCount) {
+            if (System.currentTimeMillis() >= deadline) return false;
+            Thread.sleep(10l);
+        }
+        return true;
+    }
+
+    /**
+     * Sends a channel message from {@code nick} to the connection that joined {@code channel}.
+     */
+    public boolean sendChannelMessage(String channel, String nick, String text) {
+        Client client = channelClients.get(channel.toLowerCase(Locale.ENGLISH));
+        if (client == null) return false;
+        client.write(":" + nick + "!" + nick + "@" + nick + ".users." + SERVER_NAME + " PRIVMSG " + channel + " :" + text);
+        return true;
+    }
+
+    private void acceptClients() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                final Client client = new Client(socket);
+                clients.add(client);
+                connectionCount.incrementAndGet();
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        client.readLines();
+                    }
+                }, "fake-irc-client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (running) throw new IllegalStateException("failed to accept connection", e);
+            }
+        }
+    }
+
+    private void handleLine(Client client, String line) {
+        String[] parts = line.split(" ", 3);
+        String command = parts[0].toUpperCase(Locale.ENGLISH);
+        if (command.equals("CAP")) {
+            if (parts.length > 1 && parts[1].equalsIgnoreCase("LS")) client.write(":" + SERVER_NAME + " CAP * LS :");
+        } else if (command.equals("PASS")) {
+            lastPassword = parts.length > 1 ? parts[1] : null;
+        } else if (command.equals("NICK")) {
+            client.nick = parts[1];
+        } else if (command.equals("USER")) {
+            String nick = client.nick;
+            client.write(":" + SERVER_NAME + " 001 " + nick + " :Welcome to the fake IRC server " + nick);
+            client.write(":" + SERVER_NAME + " 002 " + nick + " :Your host is " + SERVER_NAME);
+            client.write(":" + SERVER_NAME + " 003 " + nick + " :This server is rather new");
+            client.write(":" + SERVER_NAME + " 004 " + nick + " " + SERVER_NAME + " fake-1 o o");
+            client.write(":" + SERVER_NAME + " 375 " + nick + " :- Message of the day -");
+            client.write(":" + SERVER_NAME + " 376 " + nick + " :End of /MOTD command.");
+        } else if (command.equals("PING")) {
+            client.write(":" + SERVER_NAME + " PONG " + SERVER_NAME + " " + (parts.length > 1 ? parts[1] : ""));
+        } else if (command.equals("JOIN")) {
+            for (String channel : parts[1].split(",")) {
+                client.write(":" + client.nick + "!" + client.nick + "@" + SERVER_NAME + " JOIN " + channel);
+                channelClients.put(channel.toLowerCase(Locale.ENGLISH), client);
+            }
+        } else if (command.equals("PRIVMSG") && parts.length == 3) {
+            long receivedNanos = System.nanoTime();
+            String text = parts[2].startsWith(":") ? parts[2].substring(1) : parts[2];
+            Listener currentListener = listener;
+            if (currentListener != null) currentListener.onBotMessage(parts[1], text, receivedNanos);
+        }
+    }
+
+    private class Client {
+        private final Socket socket;
+        private final Writer writer;
+        private volatile String nick;
+
+        private Client(Socket socket) throws IOException {
+            this.socket = socket;
+            writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8));
+            nick = "*";
+        }
+
+        private void readLines() {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    handleLine(this, line);
+                }
+            } catch (IOException e) {
+                // the connection was closed
+            } finally {
+                close();
+            }
+        }
+
+        private synchronized void write(String line) {
+            try {
+                writer.write(line);
+                writer.write("\r\n");
+                writer.flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void close() {
+            List<String> channels = new ArrayList<String>();
+            for (Map.Entry<String, Client> entry : channelClients.entrySet()) {
+                if (entry.getValue() == this) channels.add(entry.getKey());
+            }
+            for (String channel : channels) channelClients.remove(channel, this);
+            clients.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FloodDetectorTest {
+
+    private static final String CHANNEL = "#test";
+    private static final String USER = "flooder";
+    private static final long START_MILLIS = 1000000l;
+    private static final int MAX_MESSAGES = 3;
+    private static final long WINDOW_MILLIS = 10000l;
+    private static final long PENALTY_MILLIS = 60000l;
+
+    private FloodDetectorConfiguration configuration;
+    private EpochClock mockClock;
+    private FloodDetector floodDetector;
+
+    @Before
+    public void setUp() {
+        configuration = new FloodDetectorConfiguration();
+        configuration.setMaxMessages(MAX_MESSAGES);
+        configuration.setWindowMillis(WINDOW_MILLIS);
+        configuration.setBucketCount(5);
+        configuration.setPenaltyMillis(PENALTY_MILLIS);
+        mockClock = mock(EpochClock.class);
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(START_MILLIS);
+        floodDetector = new FloodDetector(configuration, mockClock);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_shouldThrowIllegalArgumentException_whenConfigurationIsNull() {
+        new FloodDetector(null, mockClock);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void allow_shouldThrowIllegalArgumentException_whenUserIsNull() {
+        floodDetector.allow(CHANNEL, null);
+    }
+
+    @Test
+    public void allow_shouldReturnFalse_whenUserExceedsMaxMessagesWithinWindow() {
+        for (int message = 0; message < MAX_MESSAGES; message++) {
+            assertTrue(floodDetector.allow(CHANNEL, USER));
+        }
+        assertFalse(floodDetector.allow(CHANNEL, USER));
+        assertEquals(1, floodDetector.getFlaggedCount());
+    }
+
+    @Test
+    public void allow_shouldReturnTrue_whenEarlierMessagesHaveLeftTheWindow() {
+        for (int message = 0; message < MAX_MESSAGES; message++) {
+            assertTrue(floodDetector.allow(CHANNEL, USER));
+        }
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(START_MILLIS + WINDOW_MILLIS);
+        assertTrue(floodDetector.allow(CHANNEL, USER));
+    }
+
+    @Test
+    public void allow_shouldCountMessagesAcrossBuckets_whenTheyAreWithinWindow() {
+        for (int message = 0; message < MAX_MESSAGES; message++) {
+            when(mockClock.getCurrentEpochTimeMillis()).thenReturn(START_MILLIS + message * 2000l);
+            assertTrue(floodDetector.allow(CHANNEL, USER));
+        }
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(START_MILLIS + MAX_MESSAGES * 2000l);
+        assertFalse(floodDetector.allow(CHANNEL, USER));
+    }
+
+    @Test
+    public void allow_shouldRejectUntilPenaltyEnds_whenUserWasFlagged() {
+        for (int message = 0; message <= MAX_MESSAGES; message++) {
+            floodDetector.allow(CHANNEL, USER);
+        }
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(START_MILLIS + PENALTY_MILLIS - 1);
+        assertFalse(floodDetector.allow(CHANNEL, USER));
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(START_MILLIS + PENALTY_MILLIS);
+        assertTrue(floodDetector.allow(CHANNEL, USER));
+        assertEquals(1, floodDetector.getFlaggedCount());
+    }
+
+    @Test
+    public void allow_shouldNotAffectOtherUsersOrChannels_whenUserIsFlagged() {
+        for (int message = 0; message <= MAX_MESSAGES; message++) {
+            floodDetector.allow(CHANNEL, USER);
+        }
+        assertTrue(floodDetector.allow(CHANNEL, "someoneelse"));
+        assertTrue(floodDetector.allow("#other", USER));
+    }
+
+    @Test
+    public void allow_shouldReturnTrueWithoutTracking_whenMaxTrackedUsersIsReached() {
+        configuration.setMaxTrackedUsers(2);
+        floodDetector = new FloodDetector(configuration, mockClock);
+        floodDetector.allow(CHANNEL, "first");
+        floodDetector.allow(CHANNEL, "second");
+        for (int message = 0; message <= MAX_MESSAGES; message++) {
+            assertTrue(floodDetector.allow(CHANNEL, USER));
+        }
+        assertEquals(2, floodDetector.getTrackedUserCount());
+        assertEquals(MAX_MESSAGES + 1, floodDetector.getUntrackedCount());
+    }
+
+    @Test
+    public void allow_shouldTrackNewUser_whenIdleUserIsEvictedToMakeRoom() {
+        configuration.setMaxTrackedUsers(1);
+        floodDetector = new FloodDetector(configuration, mockClock);
+        floodDetector.allow(CHANNEL, "idle");
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(START_MILLIS + WINDOW_MILLIS);
+        assertTrue(floodDetector.allow(CHANNEL, USER));
+        assertEquals(1, floodDetector.getTrackedUserCount());
+        assertEquals(0, floodDetector.getUntrackedCount());
+    }
+
+    @Test
+    public void allow_shouldScanForRoomAtMostOncePerBucket_whenMaxTrackedUsersIsReached() {
+        configuration.setMaxTrackedUsers(1);
+        floodDetector = new FloodDetector(configuration, mockClock);
+        floodDetector.allow(CHANNEL, "idle");
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(START_MILLIS + WINDOW_MILLIS - 1000l);
+        floodDetector.allow(CHANNEL, "second");
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(START_MILLIS + WINDOW_MILLIS);
+        floodDetector.allow(CHANNEL, USER);
+        assertEquals(2, floodDetector.getUntrackedCount());
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(START_MILLIS + WINDOW_MILLIS + 1000l);
+        floodDetector.allow(CHANNEL, USER);
+        assertEquals(2, floodDetector.getUntrackedCount());
+        assertEquals(1, floodDetector.getTrackedUserCount());
+    }
+
+    @Test
+    public void evictIdle_shouldRemoveUsers_whenTheirMessagesHaveLeftTheWindow() {
+        floodDetector.allow(CHANNEL, "idle");
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(START_MILLIS + WINDOW_MILLIS - 2000l);
+        floodDetector.allow(CHANNEL, "active");
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(START_MILLIS + WINDOW_MILLIS);
+        floodDetector.evictIdle();
+        assertEquals(1, floodDetector.getTrackedUserCount());
+    }
+
+    @Test
+    public void allow_shouldEnqueueTimeoutOnce_whenTimeoutsAreEnabled() {
+        OutboundDispatcher mockDispatcher = mock(OutboundDispatcher.class);
+        configuration.setTimeoutSeconds(300);
+        floodDetector = new FloodDetector(configuration, mockClock, mockDispatcher);
+        for (int message = 0; message < MAX_MESSAGES + 3; message++) {
+            floodDetector.allow(CHANNEL, USER);
+        }
+        verify(mockDispatcher, times(1)).enqueue(eq(CHANNEL), any(CommandResponse.class), eq(OutboundPriority.HIGH), anyLong());
+    }
+
+    @Test
+    public void allow_shouldNotEnqueueTimeout_whenTimeoutsAreDisabled() {
+        OutboundDispatcher mockDispatcher = mock(OutboundDispatcher.class);
+        floodDetector = new FloodDetector(configuration, mockClock, mockDispatcher);
+        for (int message = 0; message < MAX_MESSAGES + 3; message++) {
+            floodDetector.allow(CHANNEL, USER);
+        }
+        verify(mockDispatcher, never()).enqueue(any(String.class), any(CommandResponse.class), any(OutboundPriority.class), anyLong());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the whole bot against a {@link FakeIrcServer}. The load can be raised from the command line, for example
+ * {@code mvn test -Dtest=GweeBotEndToEndTest -Dload.rate=5000 -Dload.seconds=30 -Dload.channels=500}.
+ */
+public class GweeBotEndToEndTest {
+    private static final Logger logger = LoggerFactory.getLogger(GweeBotEndToEndTest.class);
+
+    private static final String TEST_PASSWORD = "oauth:test";
+    private static final long JOIN_TIMEOUT_MILLIS = 10000l;
+
+    private FakeIrcServer server;
+    private ConnectionSupervisor supervisor;
+    private List<String> channels;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        server = new FakeIrcServer();
+        server.start();
+        channels = new ArrayList<String>();
+        int channelCount = Integer.getInteger("load.channels", 20);
+        for (int channel = 0; channel < channelCount; channel++) {
+            channels.add("#load" + channel);
+        }
+        supervisor = GweeBot.start(buildProperties(server.getPort(), channels), TEST_PASSWORD,
+                Collections.<Command>singletonList(new ProbeCommand()));
+        assertTrue("bot did not join every channel", server.awaitJoinedChannels(channelCount, JOIN_TIMEOUT_MILLIS));
+    }
+
+    @After
+    public void tearDown() {
+        supervisor.stop();
+        server.stop();
+    }
+
+    @Test
+    public void start_shouldRegisterWithConfiguredPassword_whenConnectingToServer() {
+        assertEquals(TEST_PASSWORD, server.getLastPassword());
+    }
+
+    @Test
+    public void start_shouldAnswerEveryProbeExactlyOnce_whenChatIsReplayedAtLoad() throws InterruptedException {
+        IrcLoadSimulator simulator = buildSimulator();
+        simulator.setChatWeight(3);
+        IrcLoadSimulator.Report report = simulator.run();
+        logger.info("Load simulation: {}", report);
+        assertEquals(0, report.getProbesUnanswered());
+        assertEquals(0, report.getDuplicateReplies());
+        assertTrue(report.getProbesSent() > 0);
+    }
+
+    @Test
+    public void start_shouldThrottleBuiltInCommands_whenTheyAreMixedIntoTheLoad() throws InterruptedException {
+        IrcLoadSimulator simulator = buildSimulator();
+        simulator.addCommand(VersionCommand.NAME, 1);
+        IrcLoadSimulator.Report report = simulator.run();
+        logger.info("Load simulation with throttled commands: {}", report);
+        assertEquals(0, report.getProbesUnanswered());
+        assertTrue(report.getOtherReplies() <= channels.size());
+    }
+
+    @Test
+    public void start_shouldReconnectAndRejoinEveryChannel_whenTheServerDropsTheConnections() throws InterruptedException {
+        int connections = server.getConnectionCount();
+        server.disconnectClients();
+        assertTrue("bot did not rejoin every channel", server.awaitJoinedChannels(channels.size(), JOIN_TIMEOUT_MILLIS));
+        assertEquals(connections * 2, server.getConnectionCount());
+        assertEquals(TEST_PASSWORD, server.getLastPassword());
+
+        IrcLoadSimulator.Report report = buildSimulator().run();
+        assertEquals(0, report.getProbesUnanswered());
+    }
+
+    private IrcLoadSimulator buildSimulator() {
+        IrcLoadSimulator simulator = new IrcLoadSimulator(server, channels);
+        simulator.setMessagesPerSecond(Integer.getInteger("load.rate", 200));
+        simulator.setDurationMillis(Integer.getInteger("load.seconds", 2) * 1000l);
+        simulator.setUserCount(Integer.getInteger("load.users", 500));
+        simulator.setDrainMillis(10000l);
+        return simulator;
+    }
+
+    private static Properties buildProperties(int port, List<String> channels) {
+        StringBuilder channelList = new StringBuilder();
+        for (String channel : channels) {
+            if (channelList.length() > 0) channelList.append(',');
+            channelList.append(channel);
+        }
+        Properties properties = new Properties();
+        properties.setProperty("botname", "LoadBot");
+        properties.setProperty("hostname", "127.0.0.1");
+        properties.setProperty("port", String.valueOf(port));
+        properties.setProperty("channels", channelList.toString());
+        properties.setProperty("connection.channels", System.getProperty("load.connection.channels", "10"));
+        properties.setProperty("send.limit", "1000000");
+        properties.setProperty("send.period.millis", "1000");
+        properties.setProperty("send.queue.size", "100000");
+        properties.setProperty("send.channel.queue.size", "100000");
+        properties.setProperty("send.max.delay.millis", "60000");
+        properties.setProperty("send.message.delay.millis", "0");
+        properties.setProperty("listener.queue.size", "100000");
+        properties.setProperty("listener.overflow.policy", "BLOCK");
+        properties.setProperty("throttle.snapshot.file", "");
+        properties.setProperty("metrics.jmx.enabled", "false");
+        properties.setProperty("reconnect.initial.delay.millis", "100");
+        properties.setProperty("join.limit", "100000");
+        properties.setProperty("join.batch.size", "50");
+        return properties;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HyperLogLogTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_shouldThrowIllegalArgumentException_whenPrecisionIsTooSmall() {
+        new HyperLogLog(3);
+    }
+
+    @Test
+    public void estimate_shouldReturnZero_whenNothingWasAdded() {
+        assertEquals(0, new HyperLogLog(10).estimate());
+    }
+
+    @Test
+    public void estimate_shouldIgnoreDuplicates() {
+        HyperLogLog hyperLogLog = new HyperLogLog(10);
+        Random random = new Random(42);
+        long[] hashes = new long[100];
+        for (int i = 0; i < hashes.length; i++) hashes[i] = random.nextLong();
+        for (int repeat = 0; repeat < 50; repeat++) {
+            for (long hash : hashes) hyperLogLog.add(hash);
+        }
+        assertWithin(100, hyperLogLog.estimate(), 0.1);
+    }
+
+    @Test
+    public void estimate_shouldStayWithinExpectedError_whenManyItemsAreAdded() {
+        HyperLogLog hyperLogLog = new HyperLogLog(10);
+        Random random = new Random(42);
+        for (int i = 0; i < 50000; i++) hyperLogLog.add(random.nextLong());
+        assertWithin(50000, hyperLogLog.estimate(), 0.1);
+    }
+
+    @Test
+    public void merge_shouldEstimateUnion() {
+        HyperLogLog first = new HyperLogLog(10);
+        HyperLogLog second = new HyperLogLog(10);
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            long hash = random.nextLong();
+            first.add(hash);
+            if (i % 2 == 0) second.add(hash);
+            second.add(random.nextLong());
+        }
+        first.merge(second);
+        assertWithin(10000, first.estimate(), 0.1);
+    }
+
+    private static void assertWithin(long expected, long actual, double tolerance) {
+        assertTrue("expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected * tolerance);
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays generated chat through a {@link FakeIrcServer} at a fixed rate and measures how the bot answers. Every
+ * generated {@code !probe} carries a unique id, so its reply can be timed and missing or repeated replies counted;
+ * replies to any other commands in the mix are only counted.
+ */
+public class IrcLoadSimulator implements FakeIrcServer.Listener {
+    private final FakeIrcServer server;
+    private final List<String> channels;
+    private final List<String> commands;
+    private final List<Integer> commandWeights;
+    private int userCount;
+    private int messagesPerSecond;
+    private long durationMillis;
+    private long drainMillis;
+    private int probeWeight;
+    private int chatWeight;
+    private long seed;
+
+    private final ConcurrentMap<Long, Long> pendingProbes;
+    private final AtomicLong duplicateReplies;
+    private final AtomicLong otherReplies;
+    private long[] latencies;
+    private int latencyCount;
+
+    public IrcLoadSimulator(FakeIrcServer server, List<String> channels) {
+        if (server == null) throw new IllegalArgumentException("server must not be null");
+        if (channels == null || channels.isEmpty()) throw new IllegalArgumentException("channels must not be empty");
+        this.server = server;
+        this.channels = new ArrayList<String>(channels);
+        commands = new ArrayList<String>();
+        commandWeights = new ArrayList<Integer>();
+        userCount = 100;
+        messagesPerSecond = 100;
+        durationMillis = 1000l;
+        drainMillis = 5000l;
+        probeWeight = 1;
+        chatWeight = 0;
+        seed = 42l;
+        pendingProbes = new ConcurrentHashMap<Long, Long>();
+        duplicateReplies = new AtomicLong();
+        otherReplies = new AtomicLong();
+    }
+
+    public void setUserCount(int userCount) {
+        if (userCount < 1) throw new IllegalArgumentException("userCount must be at least 1");
+        this.userCount = userCount;
+    }
+
+    public void setMessagesPerSecond(int messagesPerSecond) {
+        if (messagesPerSecond < 1) throw new IllegalArgumentException("messagesPerSecond must be at least 1");
+        this.messagesPerSecond = messagesPerSecond;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        if (durationMillis <= 0) throw new IllegalArgumentException("durationMillis must be positive");
+        this.durationMillis = durationMillis;
+    }
+
+    public void setDrainMillis(long drainMillis) {
+        if (drainMillis < 0) throw new IllegalArgumentException("drainMillis must not be negative");
+        this.drainMillis = drainMillis;
+    }
+
+    public void setProbeWeight(int probeWeight) {
+        if (probeWeight < 0) throw new IllegalArgumentException("probeWeight must not be negative");
+        this.probeWeight = probeWeight;
+    }
+
+    public void setChatWeight(int chatWeight) {
+        if (chatWeight < 0) throw new IllegalArgumentException("chatWeight must not be negative");
+        this.chatWeight = chatWeight;
+    }
+
+    public void addCommand(String command, int weight) {
+        if (command == null) throw new IllegalArgumentException("command must not be null");
+        if (weight < 1) throw new IllegalArgumentException("weight must be at least 1");
+        commands.add(command);
+        commandWeights.add(weight);
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public Report run() throws InterruptedException {
+        int totalWeight = probeWeight + chatWeight;
+        for (Integer weight : commandWeights) totalWeight += weight;
+        if (totalWeight == 0) throw new IllegalStateException("the message mix is empty");
+
+        long messageCount = Math.max(1l, messagesPerSecond * durationMillis / 1000l);
+        latencies = new long[(int) Math.min(messageCount, Integer.MAX_VALUE - 8)];
+        latencyCount = 0;
+        Random random = new Random(seed);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / messagesPerSecond;
+        long probesSent = 0;
+        long messagesSent = 0;
+        server.setListener(this);
+        long startNanos = System.nanoTime();
+        for (long message = 0; message < messageCount; message++) {
+            long waitNanos = startNanos + message * intervalNanos - System.nanoTime();
+            if (waitNanos > 0) LockSupport.parkNanos(waitNanos);
+
+            String channel = channels.get(random.nextInt(channels.size()));
+            String nick = "user" + random.nextInt(userCount);
+            int pick = random.nextInt(totalWeight);
+            String text;
+            if (pick < probeWeight) {
+                long probeId = probesSent++;
+                pendingProbes.put(probeId, System.nanoTime());
+                text = ProbeCommand.NAME + " " + probeId;
+            } else if (pick < probeWeight + chatWeight) {
+                text = "just chatting about nothing in particular " + message;
+            } else {
+                text = pickCommand(pick - probeWeight - chatWeight);
+            }
+            if (server.sendChannelMessage(channel, nick, text)) messagesSent++;
+        }
+        long sendNanos = System.nanoTime() - startNanos;
+
+        long drainDeadline = System.currentTimeMillis() + drainMillis;
+        while (!pendingProbes.isEmpty() && System.currentTimeMillis() < drainDeadline) {
+            Thread.sleep(10l);
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        server.setListener(null);
+
+        long[] sortedLatencies;
+        synchronized (this) {
+            sortedLatencies = Arrays.copyOf(latencies, latencyCount);
+        }
+        Arrays.sort(sortedLatencies);
+        return new Report(messagesSent, probesSent, pendingProbes.size(), duplicateReplies.get(), otherReplies.get(),
+                sendNanos, elapsedNanos, sortedLatencies);
+    }
+
+    @Override
+    public void onBotMessage(String channel, String text, long receivedNanos) {
+        if (!text.startsWith(ProbeCommand.REPLY_PREFIX)) {
+            otherReplies.incrementAndGet();
+            return;
+        }
+        long probeId;
+        try {
+            probeId = Long.parseLong(text.substring(ProbeCommand.REPLY_PREFIX.length()).trim());
+        } catch (NumberFormatException e) {
+            otherReplies.incrementAndGet();
+            return;
+        }
+        Long sentNanos = pendingProbes.remove(probeId);
+        if (sentNanos == null) {
+            duplicateReplies.incrementAndGet();
+            return;
+        }
+        synchronized (this) {
+            if (latencyCount < latencies.length) latencies[latencyCount++] = receivedNanos - sentNanos;
+        }
+    }
+
+    private String pickCommand(int pick) {
+        for (int command = 0; command < commands.size(); command++) {
+            pick -= commandWeights.get(command);
+            if (pick < 0) return commands.get(command);
+        }
+        throw new IllegalStateException("pick is outside the command weights");
+    }
+
+    public static class Report {
+        private final long messagesSent;
+        private final long probesSent;
+        private final long probesUnanswered;
+        private final long duplicateReplies;
+        private final long otherReplies;
+        private final long sendNanos;
+        private final long elapsedNanos;
+        private final long[] sortedLatencies;
+
+        private Report(long messagesSent, long probesSent, long probesUnanswered, long duplicateReplies,
+                       long otherReplies, long sendNanos, long elapsedNanos, long[] sortedLatencies) {
+            this.messagesSent = messagesSent;
+            this.probesSent = probesSent;
+            this.probesUnanswered = probesUnanswered;
+            this.duplicateReplies = duplicateReplies;
+            this.otherReplies = otherReplies;
+            this.sendNanos = sendNanos;
+            this.elapsedNanos = elapsedNanos;
+            this.sortedLatencies = sortedLatencies;
+        }
+
+        public long getMessagesSent() {
+            return messagesSent;
+        }
+
+        public long getProbesSent() {
+            return probesSent;
+        }
+
+        public long getProbesAnswered() {
+            return sortedLatencies.length;
+        }
+
+        public long getProbesUnanswered() {
+            return probesUnanswered;
+        }
+
+        public long getDuplicateReplies() {
+            return duplicateReplies;
+        }
+
+        public long getOtherReplies() {
+            return otherReplies;
+        }
+
+        public double getMessagesPerSecond() {
+            return messagesSent * 1e9 / Math.max(1l, sendNanos);
+        }
+
+        public double getRepliesPerSecond() {
+            return (sortedLatencies.length + otherReplies) * 1e9 / Math.max(1l, elapsedNanos);
+        }
+
+        public long getLatencyPercentileMicros(double percentile) {
+            if (sortedLatencies.length == 0) return 0;
+            int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+            index = Math.max(0, Math.min(sortedLatencies.length - 1, index));
+            return TimeUnit.NANOSECONDS.toMicros(sortedLatencies[index]);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("sent %d messages (%.0f/s) with %d probes; answered %d, unanswered %d, duplicated %d,"
+                            + " other replies %d (%.0f replies/s); probe latency p50 %dus p99 %dus max %dus",
+                    messagesSent, getMessagesPerSecond(), probesSent, getProbesAnswered(), probesUnanswered,
+                    duplicateReplies, otherReplies, getRepliesPerSecond(), getLatencyPercentileMicros(50),
+                    getLatencyPercentileMicros(99), getLatencyPercentileMicros(100));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class JournalReplayerTest {
+
+    private static final long TEST_TIMESTAMP = 1400000000000l;
+    private static final long CHANNEL_COOLDOWN_MILLIS = 10000l;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File journalFile;
+    private List<String> replies;
+    private JournalReplayer replayer;
+
+    @Before
+    public void setUp() {
+        journalFile = new File(temporaryFolder.getRoot(), "events.journal");
+        replies = new ArrayList<String>();
+        ReplayClock clock = new ReplayClock(0l);
+        BotMetrics metrics = new BotMetrics();
+        OutboundDispatcherConfiguration dispatcherConfiguration = new OutboundDispatcherConfiguration();
+        dispatcherConfiguration.setMessageLimit(100);
+        dispatcherConfiguration.setPeriodMillis(1l);
+        OutboundDispatcher outboundDispatcher = new OutboundDispatcher(new OutboundSender() {
+            @Override
+            public void send(String channel, CommandResponse response) {
+                replies.add(response.getText());
+            }
+        }, clock, dispatcherConfiguration, metrics);
+        CommandThrottlerConfiguration throttlerConfiguration = new CommandThrottlerConfiguration();
+        throttlerConfiguration.addCommandPolicy(VersionCommand.NAME, ThrottleScope.CHANNEL,
+                ThrottlePolicy.cooldown(CHANNEL_COOLDOWN_MILLIS));
+        CommandRegistry registry = new CommandRegistry();
+        registry.register(new VersionCommand());
+        registry.register(new ProbeCommand());
+        CommandListener listener = new CommandListener(registry, new CommandThrottler(throttlerConfiguration, clock),
+                outboundDispatcher, metrics);
+        replayer = new JournalReplayer(listener, clock, outboundDispatcher);
+    }
+
+    @Test
+    public void replay_shouldSendReplyForEveryCommand_whenCommandsAreNotThrottled() throws Exception {
+        writeJournal(JournalEvent.message("#test", "alice", "!probe 1", TEST_TIMESTAMP),
+                JournalEvent.message("#test", "bob", "hello there", TEST_TIMESTAMP + 1),
+                JournalEvent.reply("#test", CommandResponse.message("probe 1"), TEST_TIMESTAMP + 2),
+                JournalEvent.message("#test", "bob", "!probe 2", TEST_TIMESTAMP + 3));
+        JournalReplayer.Summary summary = replayer.replay(journalFile, false);
+        assertEquals(3, summary.getMessageCount());
+        assertEquals(1, summary.getRecordedReplyCount());
+        assertEquals(2, summary.getReplyCount());
+        assertEquals("probe 1", replies.get(0));
+        assertEquals("probe 2", replies.get(1));
+    }
+
+    @Test
+    public void replay_shouldThrottleByRecordedTime_whenReplayingFasterThanRecorded() throws Exception {
+        writeJournal(JournalEvent.message("#test", "alice", "!version", TEST_TIMESTAMP),
+                JournalEvent.message("#test", "bob", "!version", TEST_TIMESTAMP + CHANNEL_COOLDOWN_MILLIS / 2),
+                JournalEvent.message("#test", "carol", "!version", TEST_TIMESTAMP + CHANNEL_COOLDOWN_MILLIS));
+        JournalReplayer.Summary summary = replayer.replay(journalFile, false);
+        assertEquals(3, summary.getMessageCount());
+        assertEquals(2, summary.getReplyCount());
+    }
+
+    private void writeJournal(JournalEvent... events) throws Exception {
+        EventJournal journal = new EventJournal(journalFile, events.length);
+        journal.start();
+        for (JournalEvent event : events) journal.record(event);
+        journal.shutdown();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MessageSchedulerTest {
+
+    private static final String CHANNEL = "#test";
+    private static final String USER = "viewer";
+    private static final long START_MILLIS = 1000000l;
+    private static final long TICK_MILLIS = 100l;
+
+    private EpochClock mockClock;
+    private OutboundDispatcher mockDispatcher;
+    private TimerWheel wheel;
+    private MessageScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        mockClock = mock(EpochClock.class);
+        setTime(START_MILLIS);
+        mockDispatcher = mock(OutboundDispatcher.class);
+        when(mockDispatcher.enqueue(any(String.class), any(CommandResponse.class), any(OutboundPriority.class), anyLong()))
+                .thenReturn(true);
+        wheel = new TimerWheel(mockClock, TICK_MILLIS, 64);
+        scheduler = new MessageScheduler(wheel, mockClock);
+        scheduler.addChannel(CHANNEL, mockDispatcher);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void scheduleOnce_shouldThrowIllegalArgumentException_whenChannelIsNotJoined() {
+        scheduler.scheduleOnce("#elsewhere", CommandResponse.message("hi"), OutboundPriority.LOW, 1000l);
+    }
+
+    @Test
+    public void scheduleRepeating_shouldEnqueueMessageEveryInterval_untilCancelled() {
+        CommandResponse response = CommandResponse.message("announcement");
+        MessageScheduler.ScheduledMessage message =
+                scheduler.scheduleRepeating(CHANNEL, response, OutboundPriority.LOW, 1000l, 1000l);
+        advanceTo(START_MILLIS + 999l);
+        verify(mockDispatcher, never()).enqueue(eq(CHANNEL), eq(response), eq(OutboundPriority.LOW), anyLong());
+        advanceTo(START_MILLIS + 1100l);
+        advanceTo(START_MILLIS + 2100l);
+        advanceTo(START_MILLIS + 3100l);
+        verify(mockDispatcher, times(3)).enqueue(eq(CHANNEL), eq(response), eq(OutboundPriority.LOW), anyLong());
+        message.cancel();
+        advanceTo(START_MILLIS + 10000l);
+        verify(mockDispatcher, times(3)).enqueue(eq(CHANNEL), eq(response), eq(OutboundPriority.LOW), anyLong());
+        assertEquals(3, scheduler.getSentCount());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void remindCommand_shouldScheduleReminderForTheUser() {
+        RemindCommand command = new RemindCommand(scheduler, 10);
+        String message = RemindCommand.NAME + " 2 check the oven";
+        CommandResponse reply = command.execute(
+                new CommandInvocation(CHANNEL, USER, message, CommandInvocation.findCommandEnd(message)));
+        assertEquals("Okay viewer, I will remind you in 2 minutes", reply.getText());
+        advanceTo(START_MILLIS + 120000l + TICK_MILLIS);
+        ArgumentCaptor<CommandResponse> reminder = ArgumentCaptor.forClass(CommandResponse.class);
+        verify(mockDispatcher).enqueue(eq(CHANNEL), reminder.capture(), eq(OutboundPriority.NORMAL), anyLong());
+        assertEquals(USER + ": reminder: check the oven", reminder.getValue().getText());
+    }
+
+    @Test
+    public void remindCommand_shouldRefuse_whenTooManyRemindersArePending() {
+        RemindCommand command = new RemindCommand(scheduler, 1);
+        String message = RemindCommand.NAME + " 5 stretch";
+        CommandInvocation invocation = new CommandInvocation(CHANNEL, USER, message, CommandInvocation.findCommandEnd(message));
+        command.execute(invocation);
+        assertEquals("Too many reminders are pending, try again later", command.execute(invocation).getText());
+        assertEquals(1, scheduler.getPendingCount());
+    }
+
+    private void advanceTo(long millis) {
+        setTime(millis);
+        wheel.runDueTasks();
+    }
+
+    private void setTime(long millis) {
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(millis);
+    }
+}
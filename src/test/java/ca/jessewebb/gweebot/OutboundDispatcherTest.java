@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OutboundDispatcherTest {
+
+    private static final String TEST_CHANNEL = "#test";
+    private static final String OTHER_CHANNEL = "#other";
+    private static final int TEST_MESSAGE_LIMIT = 3;
+    private static final long TEST_PERIOD_MILLIS = 1000l;
+    private static final int TEST_MAX_QUEUE_SIZE = 4;
+    private static final long TEST_MAX_DELAY_MILLIS = 5000l;
+
+    private EpochClock mockClock;
+    private long mockEpochTimeMillis;
+    private List<String> sentTexts;
+    private List<String> undeliveredTexts;
+    private boolean failSends;
+    private OutboundDispatcher outboundDispatcher;
+
+    @Before
+    public void setUp() {
+        mockClock = mock(EpochClock.class);
+        mockEpochTimeMillis = System.currentTimeMillis();
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        sentTexts = new ArrayList<String>();
+        undeliveredTexts = new ArrayList<String>();
+        OutboundSender sender = new OutboundSender() {
+            @Override
+            public void send(String channel, CommandResponse response) {
+                if (failSends) throw new IllegalStateException("not connected");
+                sentTexts.add(response.getText());
+            }
+        };
+        OutboundDispatcherConfiguration configuration = new OutboundDispatcherConfiguration();
+        configuration.setMessageLimit(TEST_MESSAGE_LIMIT);
+        configuration.setPeriodMillis(TEST_PERIOD_MILLIS);
+        configuration.setMaxQueueSize(TEST_MAX_QUEUE_SIZE);
+        configuration.setMaxDelayMillis(TEST_MAX_DELAY_MILLIS);
+        outboundDispatcher = new OutboundDispatcher(sender, mockClock, configuration);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_shouldThrowIllegalArgumentException_whenSenderIsNull() {
+        new OutboundDispatcher(null, mockClock, new OutboundDispatcherConfiguration());
+    }
+
+    @Test
+    public void dispatchNext_shouldReturnFalse_whenNothingIsQueued() {
+        assertFalse(outboundDispatcher.dispatchNext());
+    }
+
+    @Test
+    public void dispatchNext_shouldSendHigherPriorityFirst_whenSeveralPrioritiesAreQueued() {
+        enqueue("low", OutboundPriority.LOW);
+        enqueue("normal", OutboundPriority.NORMAL);
+        enqueue("high", OutboundPriority.HIGH);
+        dispatchAll();
+        assertEquals(Arrays.asList("high", "normal", "low"), sentTexts);
+    }
+
+    @Test
+    public void enqueue_shouldCoalesceDuplicate_whenSameReplyIsAlreadyPending() {
+        enqueue("reply", OutboundPriority.NORMAL);
+        enqueue("reply", OutboundPriority.NORMAL);
+        dispatchAll();
+        assertEquals(Arrays.asList("reply"), sentTexts);
+        assertEquals(1, outboundDispatcher.getCoalescedCount());
+    }
+
+    @Test
+    public void dispatchNext_shouldStopSending_whenMessageLimitIsReachedWithinPeriod() {
+        for (int i = 0; i < TEST_MESSAGE_LIMIT + 1; i++) {
+            enqueue("reply" + i, OutboundPriority.NORMAL);
+        }
+        dispatchAll();
+        assertEquals(TEST_MESSAGE_LIMIT, sentTexts.size());
+        assertEquals(TEST_PERIOD_MILLIS, outboundDispatcher.getBudgetDelay());
+
+        advanceClock(TEST_PERIOD_MILLIS);
+        dispatchAll();
+        assertEquals(TEST_MESSAGE_LIMIT + 1, sentTexts.size());
+    }
+
+    @Test
+    public void dispatchNext_shouldDropReply_whenItIsOlderThanMaxDelay() {
+        enqueue("stale", OutboundPriority.NORMAL);
+        advanceClock(TEST_MAX_DELAY_MILLIS + 1l);
+        enqueue("fresh", OutboundPriority.NORMAL);
+        dispatchAll();
+        assertEquals(Arrays.asList("fresh"), sentTexts);
+        assertEquals(1, outboundDispatcher.getExpiredCount());
+    }
+
+    @Test
+    public void enqueue_shouldDropOldestLowerPriorityReply_whenQueueIsFull() {
+        enqueue("low0", OutboundPriority.LOW);
+        enqueue("low1", OutboundPriority.LOW);
+        enqueue("normal0", OutboundPriority.NORMAL);
+        enqueue("normal1", OutboundPriority.NORMAL);
+        assertTrue(enqueue("high", OutboundPriority.HIGH));
+        assertEquals(TEST_MAX_QUEUE_SIZE, outboundDispatcher.getQueueSize());
+        advanceClock(TEST_PERIOD_MILLIS);
+        dispatchAll();
+        assertEquals(Arrays.asList("high", "normal0", "normal1"), sentTexts);
+        advanceClock(TEST_PERIOD_MILLIS);
+        dispatchAll();
+        assertEquals(Arrays.asList("high", "normal0", "normal1", "low1"), sentTexts);
+    }
+
+    @Test
+    public void dispatchNext_shouldRunUndeliveredCallback_whenReplyExpires() {
+        enqueueTracked("stale", OutboundPriority.NORMAL);
+        advanceClock(TEST_MAX_DELAY_MILLIS + 1l);
+        dispatchAll();
+        assertEquals(Arrays.asList("stale"), undeliveredTexts);
+    }
+
+    @Test
+    public void dispatchNext_shouldRunUndeliveredCallback_whenSendFails() {
+        enqueueTracked("reply", OutboundPriority.NORMAL);
+        failSends = true;
+        dispatchAll();
+        assertEquals(Arrays.asList("reply"), undeliveredTexts);
+        assertEquals(1, outboundDispatcher.getFailedCount());
+    }
+
+    @Test
+    public void dispatchNext_shouldRunEveryCoalescedCallback_whenReplyExpires() {
+        enqueueTracked("stale", OutboundPriority.NORMAL);
+        enqueueTracked("stale", OutboundPriority.NORMAL);
+        advanceClock(TEST_MAX_DELAY_MILLIS + 1l);
+        dispatchAll();
+        assertEquals(Arrays.asList("stale", "stale"), undeliveredTexts);
+        assertEquals(1, outboundDispatcher.getCoalescedCount());
+    }
+
+    @Test
+    public void dispatchNext_shouldRunEveryCoalescedCallback_whenSendFails() {
+        enqueueTracked("reply", OutboundPriority.NORMAL);
+        enqueueTracked("reply", OutboundPriority.NORMAL);
+        failSends = true;
+        dispatchAll();
+        assertEquals(Arrays.asList("reply", "reply"), undeliveredTexts);
+    }
+
+    @Test
+    public void dispatchNext_shouldNotRunUndeliveredCallback_whenReplyIsSent() {
+        enqueueTracked("reply", OutboundPriority.NORMAL);
+        dispatchAll();
+        assertEquals(Arrays.asList("reply"), sentTexts);
+        assertTrue(undeliveredTexts.isEmpty());
+    }
+
+    @Test
+    public void enqueue_shouldRunUndeliveredCallback_whenReplyIsDroppedForHigherPriority() {
+        enqueueTracked("low", OutboundPriority.LOW);
+        for (int i = 1; i < TEST_MAX_QUEUE_SIZE; i++) {
+            enqueue("normal" + i, OutboundPriority.NORMAL);
+        }
+        assertTrue(enqueue("high", OutboundPriority.HIGH));
+        assertEquals(Arrays.asList("low"), undeliveredTexts);
+    }
+
+    @Test
+    public void enqueue_shouldNotRunUndeliveredCallback_whenReplyIsRejected() {
+        for (int i = 0; i < TEST_MAX_QUEUE_SIZE; i++) {
+            enqueue("reply" + i, OutboundPriority.NORMAL);
+        }
+        assertFalse(enqueueTracked("overflow", OutboundPriority.NORMAL));
+        assertTrue(undeliveredTexts.isEmpty());
+    }
+
+    @Test
+    public void enqueue_shouldReturnFalse_whenQueueIsFullOfEqualOrHigherPriorityReplies() {
+        for (int i = 0; i < TEST_MAX_QUEUE_SIZE; i++) {
+            enqueue("reply" + i, OutboundPriority.NORMAL);
+        }
+        assertFalse(enqueue("overflow", OutboundPriority.NORMAL));
+        assertEquals(1, outboundDispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void dispatchNext_shouldAlternateChannels_whenOneChannelHasMoreReplies() {
+        enqueue("busy0", OutboundPriority.NORMAL);
+        enqueue("busy1", OutboundPriority.NORMAL);
+        enqueue(OTHER_CHANNEL, "quiet", OutboundPriority.NORMAL);
+        dispatchAll();
+        assertEquals(Arrays.asList("busy0", "quiet", "busy1"), sentTexts);
+    }
+
+    @Test
+    public void enqueue_shouldReturnFalse_whenChannelQueueIsFull() {
+        OutboundDispatcherConfiguration configuration = new OutboundDispatcherConfiguration();
+        configuration.setMaxChannelQueueSize(2);
+        outboundDispatcher = new OutboundDispatcher(mock(OutboundSender.class), mockClock, configuration);
+        assertTrue(enqueue("reply0", OutboundPriority.NORMAL));
+        assertTrue(enqueue("reply1", OutboundPriority.NORMAL));
+        assertFalse(enqueue("reply2", OutboundPriority.NORMAL));
+        assertTrue(enqueue(OTHER_CHANNEL, "reply2", OutboundPriority.NORMAL));
+        assertEquals(2, outboundDispatcher.getQueueSize(TEST_CHANNEL));
+        assertEquals(1, outboundDispatcher.getQueueSize(OTHER_CHANNEL));
+    }
+
+    @Test
+    public void enqueue_shouldDropFromBusiestChannel_whenQueueIsFull() {
+        enqueue(OTHER_CHANNEL, "quiet", OutboundPriority.LOW);
+        enqueue("busy0", OutboundPriority.LOW);
+        enqueue("busy1", OutboundPriority.LOW);
+        enqueue("busy2", OutboundPriority.LOW);
+        assertTrue(enqueue("high", OutboundPriority.HIGH));
+        assertEquals(1, outboundDispatcher.getQueueSize(OTHER_CHANNEL));
+        assertEquals(3, outboundDispatcher.getQueueSize(TEST_CHANNEL));
+    }
+
+    private boolean enqueue(String channel, String text, OutboundPriority priority) {
+        return outboundDispatcher.enqueue(channel, CommandResponse.message(text), priority, mockEpochTimeMillis);
+    }
+
+    private boolean enqueueTracked(final String text, OutboundPriority priority) {
+        return outboundDispatcher.enqueue(TEST_CHANNEL, CommandResponse.message(text), priority, mockEpochTimeMillis,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        undeliveredTexts.add(text);
+                    }
+                });
+    }
+
+    private boolean enqueue(String text, OutboundPriority priority) {
+        return outboundDispatcher.enqueue(TEST_CHANNEL, CommandResponse.message(text), priority, mockEpochTimeMillis);
+    }
+
+    private void dispatchAll() {
+        while (outboundDispatcher.dispatchNext()) ;
+    }
+
+    private void advanceClock(long millis) {
+        mockEpochTimeMillis += millis;
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReconnectBackoffTest {
+
+    private static final long INITIAL_DELAY_MILLIS = 1000l;
+    private static final long MAX_DELAY_MILLIS = 60000l;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_shouldThrowIllegalArgumentException_whenMaxDelayIsLessThanInitialDelay() {
+        new ReconnectBackoff(INITIAL_DELAY_MILLIS, INITIAL_DELAY_MILLIS - 1);
+    }
+
+    @Test
+    public void getDelayMillis_shouldDoubleCeiling_withEveryAttempt() {
+        ReconnectBackoff backoff = new ReconnectBackoff(INITIAL_DELAY_MILLIS, MAX_DELAY_MILLIS, fixedRandom(Math.nextAfter(1.0, 0.0)));
+        assertEquals(1000l, backoff.getDelayMillis(0));
+        assertEquals(2000l, backoff.getDelayMillis(1));
+        assertEquals(4000l, backoff.getDelayMillis(2));
+        assertEquals(32000l, backoff.getDelayMillis(5));
+    }
+
+    @Test
+    public void getDelayMillis_shouldNotExceedMaxDelay_whenAttemptsKeepFailing() {
+        ReconnectBackoff backoff = new ReconnectBackoff(INITIAL_DELAY_MILLIS, MAX_DELAY_MILLIS, fixedRandom(Math.nextAfter(1.0, 0.0)));
+        assertEquals(MAX_DELAY_MILLIS, backoff.getDelayMillis(6));
+        assertEquals(MAX_DELAY_MILLIS, backoff.getDelayMillis(100));
+        assertEquals(MAX_DELAY_MILLIS, backoff.getDelayMillis(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void getDelayMillis_shouldStayInUpperHalfOfCeiling_whenJittered() {
+        ReconnectBackoff backoff = new ReconnectBackoff(INITIAL_DELAY_MILLIS, MAX_DELAY_MILLIS, new Random(42l));
+        for (int attempt = 0; attempt < 10; attempt++) {
+            long ceiling = Math.min(MAX_DELAY_MILLIS, INITIAL_DELAY_MILLIS << attempt);
+            for (int sample = 0; sample < 100; sample++) {
+                long delay = backoff.getDelayMillis(attempt);
+                assertTrue(delay >= ceiling / 2 && delay <= ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void getDelayMillis_shouldReturnLowerBound_whenRandomIsZero() {
+        ReconnectBackoff backoff = new ReconnectBackoff(INITIAL_DELAY_MILLIS, MAX_DELAY_MILLIS, fixedRandom(0.0));
+        assertEquals(500l, backoff.getDelayMillis(0));
+        assertEquals(30000l, backoff.getDelayMillis(10));
+    }
+
+    private static Random fixedRandom(double value) {
+        Random random = mock(Random.class);
+        when(random.nextDouble()).thenReturn(value);
+        return random;
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RemoteThrottleStoreTest {
+
+    private static final String TEST_COMMAND = "!test";
+    private static final String TEST_CHANNEL = "#test";
+    private static final long TEST_COMMAND_THROTTLE_MILLIS = 1000l;
+    private static final long TEST_TIMEOUT_MILLIS = 2000l;
+
+    private EpochClock mockClock;
+    private long mockEpochTimeMillis;
+    private CommandThrottlerConfiguration configuration;
+    private ThrottleStoreServer server;
+    private RemoteThrottleStore firstStore;
+    private RemoteThrottleStore secondStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mockClock = mock(EpochClock.class);
+        mockEpochTimeMillis = System.currentTimeMillis();
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        configuration = new CommandThrottlerConfiguration();
+        configuration.addCommandThrottle(TEST_COMMAND, TEST_COMMAND_THROTTLE_MILLIS);
+        configuration.addCommandPolicy(TEST_COMMAND, ThrottleScope.CHANNEL, ThrottlePolicy.cooldown(TEST_COMMAND_THROTTLE_MILLIS));
+        server = new ThrottleStoreServer("127.0.0.1", 0, mockClock);
+        server.start();
+        firstStore = startStore(server.getPort());
+        secondStore = startStore(server.getPort());
+    }
+
+    @After
+    public void tearDown() {
+        firstStore.shutdown();
+        secondStore.shutdown();
+        server.stop();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_shouldThrowIllegalArgumentException_whenConfigurationIsNull() {
+        new RemoteThrottleStore(null, "127.0.0.1", 1);
+    }
+
+    @Test
+    public void tryAcquire_shouldReturnFalse_whenAnotherBotUsedCommand() {
+        CommandThrottler first = new CommandThrottler(configuration, mockClock, firstStore);
+        CommandThrottler second = new CommandThrottler(configuration, mockClock, secondStore);
+        assertTrue(first.tryAcquire(TEST_COMMAND, TEST_CHANNEL, null));
+        assertFalse(second.tryAcquire(TEST_COMMAND, TEST_CHANNEL, null));
+    }
+
+    @Test
+    public void tryAcquire_shouldReturnTrue_whenSharedCooldownHasPassed() {
+        CommandThrottler first = new CommandThrottler(configuration, mockClock, firstStore);
+        CommandThrottler second = new CommandThrottler(configuration, mockClock, secondStore);
+        assertTrue(first.tryAcquire(TEST_COMMAND, TEST_CHANNEL, null));
+        advanceClock(TEST_COMMAND_THROTTLE_MILLIS);
+        assertTrue(second.tryAcquire(TEST_COMMAND, TEST_CHANNEL, null));
+        assertFalse(first.tryAcquire(TEST_COMMAND, TEST_CHANNEL, null));
+    }
+
+    @Test
+    public void tryAcquire_shouldAcquireEveryScopeInOneOperation() {
+        CommandThrottler first = new CommandThrottler(configuration, mockClock, firstStore);
+        assertTrue(first.tryAcquire(TEST_COMMAND, TEST_CHANNEL, null));
+        assertEquals(1, server.getOperationCount());
+        assertEquals(1, firstStore.getRoundTripCount());
+    }
+
+    @Test
+    public void tryAcquire_shouldLeaveChannelFree_whenGlobalCooldownIsRunning() {
+        configuration = new CommandThrottlerConfiguration();
+        configuration.addCommandThrottle(TEST_COMMAND, TEST_COMMAND_THROTTLE_MILLIS);
+        configuration.addCommandPolicy(TEST_COMMAND, ThrottleScope.CHANNEL, ThrottlePolicy.cooldown(5 * TEST_COMMAND_THROTTLE_MILLIS));
+        RemoteThrottleStore store = startStore(server.getPort());
+        RemoteThrottleStore otherStore = startStore(server.getPort());
+        try {
+            CommandThrottler throttler = new CommandThrottler(configuration, mockClock, store);
+            CommandThrottler other = new CommandThrottler(configuration, mockClock, otherStore);
+            assertTrue(throttler.tryAcquire(TEST_COMMAND, TEST_CHANNEL, null));
+            assertFalse(other.tryAcquire(TEST_COMMAND, "#other", null));
+            advanceClock(TEST_COMMAND_THROTTLE_MILLIS);
+            assertTrue(other.tryAcquire(TEST_COMMAND, "#other", null));
+        } finally {
+            store.shutdown();
+            otherStore.shutdown();
+        }
+    }
+
+    @Test
+    public void tryAcquire_shouldRejectFromNearCache_whenCachedStateIsThrottled() {
+        CommandThrottler first = new CommandThrottler(configuration, mockClock, firstStore);
+        assertTrue(first.tryAcquire(TEST_COMMAND, TEST_CHANNEL, null));
+        long operations = server.getOperationCount();
+        for (int i = 0; i < 100; i++) {
+            assertFalse(first.tryAcquire(TEST_COMMAND, TEST_CHANNEL, null));
+        }
+        assertEquals(operations, server.getOperationCount());
+        assertEquals(100, firstStore.getNearCacheRejectionCount());
+    }
+
+    @Test
+    public void release_shouldLetOtherBotAnswer_whenReplyWasNotSent() throws InterruptedException {
+        CommandThrottler first = new CommandThrottler(configuration, mockClock, firstStore);
+        CommandThrottler second = new CommandThrottler(configuration, mockClock, secondStore);
+        assertTrue(first.tryAcquire(TEST_COMMAND, TEST_CHANNEL, null));
+        first.release(TEST_COMMAND, TEST_CHANNEL, null);
+        waitForOperations(3);
+        assertTrue(second.tryAcquire(TEST_COMMAND, TEST_CHANNEL, null));
+    }
+
+    @Test
+    public void tryAcquire_shouldThrottleLocally_whenServerIsUnreachable() throws IOException {
+        ServerSocket unusedSocket = new ServerSocket(0);
+        int unusedPort = unusedSocket.getLocalPort();
+        unusedSocket.close();
+        RemoteThrottleStore store = startStore(unusedPort);
+        try {
+            CommandThrottler throttler = new CommandThrottler(configuration, mockClock, store);
+            assertTrue(throttler.tryAcquire(TEST_COMMAND, TEST_CHANNEL, null));
+            assertFalse(throttler.tryAcquire(TEST_COMMAND, TEST_CHANNEL, null));
+            assertTrue(store.getFallbackCount() > 0);
+        } finally {
+            store.shutdown();
+        }
+    }
+
+    @Test
+    public void tryAcquire_shouldRefundServerGrant_whenReplyArrivesAfterTimeout() throws Exception {
+        SlowThrottleStoreServer slowServer = new SlowThrottleStoreServer(500l);
+        RemoteThrottleStore store = new RemoteThrottleStore(configuration, "127.0.0.1", slowServer.getPort(), 50l);
+        store.start();
+        try {
+            CommandThrottler throttler = new CommandThrottler(configuration, mockClock, store);
+            assertTrue(throttler.tryAcquire(TEST_COMMAND, TEST_CHANNEL, null));
+            assertEquals(1, store.getFallbackCount());
+            long deadline = System.currentTimeMillis() + TEST_TIMEOUT_MILLIS;
+            while (slowServer.count(ThrottleStoreProtocol.REFUND) < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10l);
+            }
+            assertEquals(1, slowServer.count(ThrottleStoreProtocol.ACQUIRE));
+            assertEquals(2, slowServer.count(ThrottleStoreProtocol.REFUND));
+        } finally {
+            store.shutdown();
+            slowServer.close();
+        }
+    }
+
+    private RemoteThrottleStore startStore(int port) {
+        RemoteThrottleStore store = new RemoteThrottleStore(configuration, "127.0.0.1", port, TEST_TIMEOUT_MILLIS);
+        store.start();
+        return store;
+    }
+
+    private void waitForOperations(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TEST_TIMEOUT_MILLIS;
+        while (server.getOperationCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10l);
+        }
+    }
+
+    private void advanceClock(long millis) {
+        mockEpochTimeMillis += millis;
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+    }
+
+    /**
+     * Grants everything, but holds back the reply to the first batch so the client gives up waiting for it.
+     */
+    private static class SlowThrottleStoreServer implements Runnable {
+        private final long firstReplyDelayMillis;
+        private final ServerSocket serverSocket;
+        private final List<Byte> operations;
+
+        private SlowThrottleStoreServer(long firstReplyDelayMillis) throws IOException {
+            this.firstReplyDelayMillis = firstReplyDelayMillis;
+            serverSocket = new ServerSocket(0);
+            operations = new CopyOnWriteArrayList<Byte>();
+            Thread thread = new Thread(this, "slow-throttle-store");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private long count(byte operation) {
+            long count = 0;
+            for (Byte received : operations) {
+                if (received == operation) count++;
+            }
+            return count;
+        }
+
+        private void close() throws IOException {
+            serverSocket.close();
+        }
+
+        @Override
+        public void run() {
+            try {
+                Socket connection = serverSocket.accept();
+                DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+                long delayMillis = firstReplyDelayMillis;
+                while (true) {
+                    int size = ThrottleStoreProtocol.readBatchSize(in);
+                    int[] stateCounts = new int[size];
+                    for (int index = 0; index < size; index++) {
+                        byte operation = in.readByte();
+                        operations.add(operation);
+                        in.readUTF();
+                        stateCounts[index] = operation == ThrottleStoreProtocol.ACQUIRE ? ThrottleStoreProtocol.readScopeCount(in) : 1;
+                        for (int part = 0; part < stateCounts[index]; part++) {
+                            ThrottleStoreProtocol.readScope(in);
+                            if (in.readBoolean()) in.readUTF();
+                            ThrottleStoreProtocol.readPolicy(in);
+                        }
+                        in.readLong();
+                    }
+                    Thread.sleep(delayMillis);
+                    delayMillis = 0l;
+                    out.writeInt(size);
+                    for (int stateCount : stateCounts) {
+                        out.writeBoolean(true);
+                        for (int part = 0; part < stateCount; part++) out.writeLong(0l);
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // closed by the test
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
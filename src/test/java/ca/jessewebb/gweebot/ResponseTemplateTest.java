@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseTemplateTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compile_shouldThrowIllegalArgumentException_whenPatternIsNull() {
+        ResponseTemplate.compile(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compile_shouldThrowIllegalArgumentException_whenPlaceholderIsUnterminated() {
+        ResponseTemplate.compile("Hello {user");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compile_shouldThrowIllegalArgumentException_whenPlaceholderIsEmpty() {
+        ResponseTemplate.compile("Hello {}");
+    }
+
+    @Test
+    public void compile_shouldCollectVariablesInOrder() {
+        ResponseTemplate template = ResponseTemplate.compile("{user} asked for {command} in {channel}");
+        assertEquals(Arrays.asList("user", "command", "channel"), template.getVariables());
+        assertFalse(template.isStatic());
+    }
+
+    @Test
+    public void render_shouldReturnSameInstance_whenTemplateIsStatic() {
+        ResponseTemplate template = ResponseTemplate.compile("no placeholders here");
+        assertTrue(template.isStatic());
+        assertSame(template.render(null), template.render(null));
+        assertEquals("no placeholders here", template.render(null));
+    }
+
+    @Test
+    public void render_shouldSubstituteValues() {
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("user", "jesse");
+        values.put("channel", "#gweebot");
+        assertEquals("hi jesse, welcome to #gweebot!", ResponseTemplate.compile("hi {user}, welcome to {channel}!").render(values));
+    }
+
+    @Test
+    public void render_shouldWriteLiteralBrace_whenBraceIsDoubled() {
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("user", "jesse");
+        assertEquals("{user} is jesse", ResponseTemplate.compile("{{user} is {user}").render(values));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void render_shouldThrowIllegalArgumentException_whenValueIsMissing() {
+        ResponseTemplate.compile("hi {user}").render(new HashMap<String, String>());
+    }
+
+    @Test
+    public void getTemplate_shouldReturnCachedTemplate_whenPatternWasCompiledBefore() {
+        ResponseTemplateCache cache = new ResponseTemplateCache();
+        assertSame(cache.getTemplate("hi {user}"), cache.getTemplate("hi {user}"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void getTemplate_shouldNotGrowCache_whenMaxSizeIsReached() {
+        ResponseTemplateCache cache = new ResponseTemplateCache(1);
+        cache.getTemplate("first {a}");
+        assertEquals("b", cache.getTemplate("{b}").getVariables().get(0));
+        assertEquals(1, cache.size());
+    }
+}
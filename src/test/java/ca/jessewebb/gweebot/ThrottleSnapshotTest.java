@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ThrottleSnapshotTest {
+
+    private static final String TEST_COMMAND = "!test";
+    private static final String TEST_CHANNEL = "#test";
+    private static final String TEST_USER = "tester";
+    private static final long GLOBAL_COOLDOWN_MILLIS = 1000l;
+    private static final long CHANNEL_COOLDOWN_MILLIS = 5000l;
+    private static final long USER_COOLDOWN_MILLIS = 10000l;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private EpochClock mockClock;
+    private long mockEpochTimeMillis;
+    private File snapshotFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mockClock = mock(EpochClock.class);
+        mockEpochTimeMillis = System.currentTimeMillis();
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+        snapshotFile = new File(temporaryFolder.getRoot(), "throttle.snapshot");
+    }
+
+    @Test
+    public void read_shouldReturnWrittenEntries() throws IOException {
+        CommandThrottler throttler = buildThrottler();
+        assertTrue(throttler.tryAcquire(TEST_COMMAND, TEST_CHANNEL, TEST_USER));
+        ThrottleSnapshot.write(snapshotFile, throttler.exportState(), mockEpochTimeMillis);
+
+        List<ThrottleStateEntry> entries = ThrottleSnapshot.read(snapshotFile, mockEpochTimeMillis);
+        assertEquals(3, entries.size());
+    }
+
+    @Test
+    public void restoreState_shouldKeepCooldownsRunning_whenRestoredIntoNewThrottler() throws IOException {
+        CommandThrottler throttler = buildThrottler();
+        assertTrue(throttler.tryAcquire(TEST_COMMAND, TEST_CHANNEL, TEST_USER));
+        ThrottleSnapshot.write(snapshotFile, throttler.exportState(), mockEpochTimeMillis);
+
+        advanceClock(CHANNEL_COOLDOWN_MILLIS - 1l);
+        CommandThrottler restarted = buildThrottler();
+        for (ThrottleStateEntry entry : ThrottleSnapshot.read(snapshotFile, mockEpochTimeMillis)) {
+            restarted.restoreState(entry);
+        }
+        assertFalse(restarted.tryAcquire(TEST_COMMAND, TEST_CHANNEL, "someone-else"));
+        assertTrue(restarted.tryAcquire(TEST_COMMAND, "#other", TEST_USER));
+
+        advanceClock(GLOBAL_COOLDOWN_MILLIS);
+        assertFalse(restarted.tryAcquire(TEST_COMMAND, TEST_CHANNEL, TEST_USER));
+        assertTrue(restarted.tryAcquire(TEST_COMMAND, TEST_CHANNEL, "someone-else"));
+    }
+
+    @Test
+    public void read_shouldSkipExpiredEntries() throws IOException {
+        CommandThrottler throttler = buildThrottler();
+        assertTrue(throttler.tryAcquire(TEST_COMMAND, TEST_CHANNEL, TEST_USER));
+        ThrottleSnapshot.write(snapshotFile, throttler.exportState(), mockEpochTimeMillis);
+
+        List<ThrottleStateEntry> entries = ThrottleSnapshot.read(snapshotFile, mockEpochTimeMillis + CHANNEL_COOLDOWN_MILLIS);
+        assertEquals(1, entries.size());
+        assertEquals(ThrottleScope.USER, entries.get(0).getScope());
+        assertEquals(TEST_CHANNEL, entries.get(0).getChannel());
+        assertEquals(TEST_USER, entries.get(0).getUser());
+    }
+
+    @Test
+    public void exportState_shouldSkipIdleEntries() {
+        CommandThrottler throttler = buildThrottler();
+        assertTrue(throttler.tryAcquire(TEST_COMMAND, TEST_CHANNEL, TEST_USER));
+        advanceClock(USER_COOLDOWN_MILLIS);
+        assertTrue(throttler.exportState().isEmpty());
+    }
+
+    @Test
+    public void restoreState_shouldReturnFalse_whenCommandIsNoLongerThrottled() {
+        CommandThrottler throttler = buildThrottler();
+        ThrottleStateEntry entry = new ThrottleStateEntry("!removed", ThrottleScope.GLOBAL, null, null, mockEpochTimeMillis + 1000l);
+        assertFalse(throttler.restoreState(entry));
+    }
+
+    @Test
+    public void write_shouldReplaceExistingSnapshot() throws IOException {
+        CommandThrottler throttler = buildThrottler();
+        assertTrue(throttler.tryAcquire(TEST_COMMAND, TEST_CHANNEL, TEST_USER));
+        ThrottleSnapshot.write(snapshotFile, throttler.exportState(), mockEpochTimeMillis);
+        ThrottleSnapshot.write(snapshotFile, Collections.<ThrottleStateEntry>emptyList(), mockEpochTimeMillis);
+        assertTrue(ThrottleSnapshot.read(snapshotFile, mockEpochTimeMillis).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_shouldThrowIOException_whenFileIsNotASnapshot() throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(snapshotFile);
+        try {
+            outputStream.write("not a snapshot at all".getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+        ThrottleSnapshot.read(snapshotFile, mockEpochTimeMillis);
+    }
+
+    @Test(expected = IOException.class)
+    public void read_shouldThrowIOException_whenFileIsTruncated() throws IOException {
+        CommandThrottler throttler = buildThrottler();
+        assertTrue(throttler.tryAcquire(TEST_COMMAND, TEST_CHANNEL, TEST_USER));
+        ThrottleSnapshot.write(snapshotFile, throttler.exportState(), mockEpochTimeMillis);
+        RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+        try {
+            file.setLength(file.length() - 4);
+        } finally {
+            file.close();
+        }
+        ThrottleSnapshot.read(snapshotFile, mockEpochTimeMillis);
+    }
+
+    private CommandThrottler buildThrottler() {
+        CommandThrottlerConfiguration configuration = new CommandThrottlerConfiguration();
+        configuration.addCommandThrottle(TEST_COMMAND, GLOBAL_COOLDOWN_MILLIS);
+        configuration.addCommandPolicy(TEST_COMMAND, ThrottleScope.CHANNEL, ThrottlePolicy.cooldown(CHANNEL_COOLDOWN_MILLIS));
+        configuration.addCommandPolicy(TEST_COMMAND, ThrottleScope.USER, ThrottlePolicy.cooldown(USER_COOLDOWN_MILLIS));
+        return new CommandThrottler(configuration, mockClock);
+    }
+
+    private void advanceClock(long millis) {
+        mockEpochTimeMillis += millis;
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(mockEpochTimeMillis);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TimeCommandTest {
+
+    private static final long NOW = 1400000000000l;
+
+    private EpochClock mockClock;
+    private TimeCommand timeCommand;
+    private CommandInvocation invocation;
+
+    @Before
+    public void setUp() {
+        mockClock = mock(EpochClock.class);
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(NOW);
+        timeCommand = new TimeCommand(mockClock);
+        invocation = new CommandInvocation("#test", "tester", TimeCommand.NAME, TimeCommand.NAME.length());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_shouldThrowIllegalArgumentException_whenClockIsNull() {
+        new TimeCommand(null);
+    }
+
+    @Test
+    public void execute_shouldRespondWithFormattedTime() {
+        String expected = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(NOW));
+        CommandResponse response = timeCommand.execute(invocation);
+        assertEquals(CommandResponse.Type.MESSAGE, response.getType());
+        assertEquals(expected, response.getText());
+    }
+
+    @Test
+    public void execute_shouldReuseResponse_whenCalledWithinSameSecond() {
+        CommandResponse first = timeCommand.execute(invocation);
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(NOW + 999l);
+        assertSame(first, timeCommand.execute(invocation));
+    }
+
+    @Test
+    public void execute_shouldRenderNewResponse_whenSecondChanges() {
+        CommandResponse first = timeCommand.execute(invocation);
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(NOW + 1000l);
+        CommandResponse second = timeCommand.execute(invocation);
+        assertNotSame(first, second);
+        assertEquals(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(NOW + 1000l)), second.getText());
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TimerWheelTest {
+
+    private static final long START_MILLIS = 1000000l;
+    private static final long TICK_MILLIS = 100l;
+    private static final int WHEEL_SIZE = 8;
+
+    private EpochClock mockClock;
+    private TimerWheel wheel;
+    private List<String> fired;
+
+    @Before
+    public void setUp() {
+        mockClock = mock(EpochClock.class);
+        setTime(START_MILLIS);
+        wheel = new TimerWheel(mockClock, TICK_MILLIS, WHEEL_SIZE);
+        fired = new ArrayList<String>();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_shouldThrowIllegalArgumentException_whenWheelSizeIsNotAPowerOfTwo() {
+        new TimerWheel(mockClock, TICK_MILLIS, 6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void schedule_shouldThrowIllegalArgumentException_whenDelayIsNegative() {
+        wheel.schedule(record("task"), -1l);
+    }
+
+    @Test
+    public void runDueTasks_shouldNotRunTask_beforeItsDeadline() {
+        wheel.schedule(record("task"), 250l);
+        setTime(START_MILLIS + 249l);
+        wheel.runDueTasks();
+        assertTrue(fired.isEmpty());
+        assertEquals(1, wheel.getPendingCount());
+    }
+
+    @Test
+    public void runDueTasks_shouldRunTask_withinOneTickAfterItsDeadline() {
+        wheel.schedule(record("task"), 250l);
+        setTime(START_MILLIS + 250l + TICK_MILLIS);
+        wheel.runDueTasks();
+        assertEquals(1, fired.size());
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    public void runDueTasks_shouldWaitExtraRounds_whenDelayIsLongerThanTheWheel() {
+        long delay = TICK_MILLIS * WHEEL_SIZE * 3 + 50l;
+        wheel.schedule(record("late"), delay);
+        wheel.schedule(record("early"), 50l);
+        setTime(START_MILLIS + TICK_MILLIS * WHEEL_SIZE * 3);
+        wheel.runDueTasks();
+        assertEquals(1, fired.size());
+        assertEquals("early", fired.get(0));
+        setTime(START_MILLIS + delay + TICK_MILLIS);
+        wheel.runDueTasks();
+        assertEquals(2, fired.size());
+        assertEquals("late", fired.get(1));
+    }
+
+    @Test
+    public void runDueTasks_shouldRunTasksInDeadlineOrder_whenSeveralAreDue() {
+        wheel.schedule(record("third"), 500l);
+        wheel.schedule(record("first"), 100l);
+        wheel.schedule(record("second"), 300l);
+        setTime(START_MILLIS + 1000l);
+        wheel.runDueTasks();
+        assertEquals(3, fired.size());
+        assertEquals("first", fired.get(0));
+        assertEquals("second", fired.get(1));
+        assertEquals("third", fired.get(2));
+    }
+
+    @Test
+    public void cancel_shouldKeepTaskFromRunning() {
+        TimerWheel.Timeout timeout = wheel.schedule(record("cancelled"), 200l);
+        wheel.schedule(record("kept"), 200l);
+        setTime(START_MILLIS + 100l);
+        wheel.runDueTasks();
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        setTime(START_MILLIS + 1000l);
+        wheel.runDueTasks();
+        assertEquals(1, fired.size());
+        assertEquals("kept", fired.get(0));
+        assertTrue(timeout.isCancelled());
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    public void cancel_shouldReturnFalse_whenTaskHasAlreadyRun() {
+        TimerWheel.Timeout timeout = wheel.schedule(record("task"), 0l);
+        setTime(START_MILLIS + TICK_MILLIS);
+        wheel.runDueTasks();
+        assertFalse(timeout.cancel());
+        assertTrue(timeout.isExpired());
+    }
+
+    @Test
+    public void runDueTasks_shouldRunTaskScheduledByAnotherTask_onALaterTick() {
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fired.add("outer");
+                wheel.schedule(record("inner"), 0l);
+            }
+        }, 0l);
+        setTime(START_MILLIS + TICK_MILLIS);
+        wheel.runDueTasks();
+        assertEquals(1, fired.size());
+        setTime(START_MILLIS + TICK_MILLIS * 2);
+        wheel.runDueTasks();
+        assertEquals(2, fired.size());
+        assertEquals("inner", fired.get(1));
+    }
+
+    @Test
+    public void runDueTasks_shouldKeepRunningTasks_whenATaskThrows() {
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("boom");
+            }
+        }, 0l);
+        wheel.schedule(record("task"), 0l);
+        setTime(START_MILLIS + TICK_MILLIS);
+        wheel.runDueTasks();
+        assertEquals(1, fired.size());
+    }
+
+    @Test
+    public void runDueTasks_shouldRunEveryTask_whenManyAreScheduled() {
+        int taskCount = 100000;
+        final int[] runCount = new int[1];
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                runCount[0]++;
+            }
+        };
+        List<TimerWheel.Timeout> timeouts = new ArrayList<TimerWheel.Timeout>();
+        for (int index = 0; index < taskCount; index++) {
+            timeouts.add(wheel.schedule(task, index % 5000));
+        }
+        for (int index = 0; index < taskCount; index += 2) {
+            timeouts.get(index).cancel();
+        }
+        setTime(START_MILLIS + 5000l + TICK_MILLIS);
+        wheel.runDueTasks();
+        assertEquals(taskCount / 2, runCount[0]);
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    private Runnable record(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                fired.add(name);
+            }
+        };
+    }
+
+    private void setTime(long millis) {
+        when(mockClock.getCurrentEpochTimeMillis()).thenReturn(millis);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2014 Jesse Webb
+ *
+ * This file is part of gweebot.
+ *
+ * gweebot is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * gweebot is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with gweebot.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.jessewebb.gweebot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TopKTrackerTest {
+
+    @Test
+    public void offer_shouldKeepBiggestCandidates_whenTrackerIsFull() {
+        TopKTracker tracker = new TopKTracker(2);
+        tracker.offer(1l, 5l, "one", 0, 3);
+        tracker.offer(2l, 1l, "two", 0, 3);
+        tracker.offer(3l, 3l, "three", 0, 5);
+        tracker.offer(4l, 2l, "four", 0, 4);
+        assertEquals(2, tracker.size());
+        assertEquals("one", tracker.getItem(0));
+        assertEquals("three", tracker.getItem(1));
+    }
+
+    @Test
+    public void offer_shouldOnlyCopyItemText_whenItemBecomesCandidate() {
+        TopKTracker tracker = new TopKTracker(1);
+        String message = "hello Kappa world";
+        tracker.offer(1l, 1l, message, 6, 11);
+        tracker.offer(1l, 2l, message, 6, 11);
+        assertEquals(1, tracker.size());
+        assertEquals("kappa", tracker.getItem(0));
+    }
+}